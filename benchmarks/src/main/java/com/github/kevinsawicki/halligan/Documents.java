@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package com.github.kevinsawicki.halligan;
+
+import static com.github.kevinsawicki.halligan.DefaultGsonFactory.GSON_FACTORY;
+
+import com.google.gson.stream.JsonReader;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+/**
+ * Synthetic HAL documents used by the benchmarks
+ */
+class Documents {
+
+  /**
+   * Document shaped like a typical API response: a handful of properties,
+   * links, and two embedded resources
+   */
+  static final String SMALL = small();
+
+  /**
+   * Document with a single resource holding many properties and links
+   */
+  static final String WIDE = wide(500, 50);
+
+  /**
+   * Document with embedded resources nested many levels deep
+   */
+  static final String DEEP = deep(32, 4);
+
+  /**
+   * Get document for shape name
+   *
+   * @param shape
+   * @return document
+   */
+  static String forShape(final String shape) {
+    if ("small".equals(shape))
+      return SMALL;
+    if ("wide".equals(shape))
+      return WIDE;
+    if ("deep".equals(shape))
+      return DEEP;
+    throw new IllegalArgumentException("Unknown document shape: " + shape);
+  }
+
+  /**
+   * Parse document into a new resource
+   *
+   * @param json
+   * @return resource
+   * @throws IOException
+   */
+  static Resource parse(final String json) throws IOException {
+    JsonReader reader = new JsonReader(new StringReader(json));
+    try {
+      return new Resource(GSON_FACTORY).parse(reader);
+    } finally {
+      reader.close();
+    }
+  }
+
+  private static StringBuilder link(final StringBuilder json,
+      final String rel, final String href) {
+    return json.append('"').append(rel).append("\":{\"href\":\"").append(href)
+        .append("\"}");
+  }
+
+  private static StringBuilder order(final StringBuilder json, final int id) {
+    json.append("{\"_links\":{");
+    link(json, "self", "/orders/" + id).append(',');
+    link(json, "customer", "/customers/" + (7800 + id));
+    json.append("},\"total\":").append(30 + id).append(".25");
+    json.append(",\"currency\":\"USD\",\"status\":\"shipped\"}");
+    return json;
+  }
+
+  private static String small() {
+    StringBuilder json = new StringBuilder("{\"_links\":{");
+    link(json, "self", "/orders").append(',');
+    link(json, "next", "/orders?page=2").append(',');
+    json.append("\"find\":{\"href\":\"/orders{?id}\",\"templated\":true}},");
+    json.append("\"currentlyProcessing\":14,\"shippedToday\":20,");
+    json.append("\"ratio\":4.5,\"open\":true,\"name\":\"Orders\",");
+    json.append("\"_embedded\":{\"orders\":[");
+    order(json, 123).append(',');
+    order(json, 124);
+    return json.append("]}}").toString();
+  }
+
+  private static String wide(final int properties, final int links) {
+    StringBuilder json = new StringBuilder("{\"_links\":{");
+    link(json, "self", "/wide");
+    for (int i = 0; i < links; i++)
+      link(json.append(','), "rel" + i, "/wide/links/" + i);
+    json.append('}');
+    for (int i = 0; i < properties; i++) {
+      json.append(",\"property").append(i).append("\":");
+      switch (i % 4) {
+      case 0:
+        json.append(i);
+        break;
+      case 1:
+        json.append(i).append(".5");
+        break;
+      case 2:
+        json.append(i % 3 == 0);
+        break;
+      default:
+        json.append("\"value ").append(i).append('"');
+      }
+    }
+    return json.append('}').toString();
+  }
+
+  private static String deep(final int depth, final int siblings) {
+    StringBuilder json = new StringBuilder();
+    for (int level = 0; level < depth; level++) {
+      json.append("{\"_links\":{");
+      link(json, "self", "/levels/" + level);
+      json.append("},\"level\":").append(level);
+      json.append(",\"_embedded\":{\"items\":[");
+      for (int i = 0; i < siblings; i++) {
+        if (i > 0)
+          json.append(',');
+        order(json, level * siblings + i);
+      }
+      json.append("],\"child\":");
+    }
+    json.append("{\"level\":").append(depth).append('}');
+    for (int level = 0; level < depth; level++)
+      json.append("}}");
+    return json.toString();
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package com.github.kevinsawicki.halligan;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks of {@link Resource} property, link, and embedded getters
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GetterBenchmark {
+
+  private Resource small;
+
+  private Resource wide;
+
+  /**
+   * Parse resources to read from
+   *
+   * @throws IOException
+   */
+  @Setup
+  public void setUp() throws IOException {
+    small = Documents.parse(Documents.SMALL);
+    wide = Documents.parse(Documents.WIDE);
+  }
+
+  /**
+   * Read typed properties
+   *
+   * @param hole
+   */
+  @Benchmark
+  public void properties(final Blackhole hole) {
+    hole.consume(small.getInt("currentlyProcessing"));
+    hole.consume(small.getDouble("ratio"));
+    hole.consume(small.getBoolean("open"));
+    hole.consume(small.getString("name"));
+  }
+
+  /**
+   * Read properties from a resource with many properties
+   *
+   * @param hole
+   */
+  @Benchmark
+  public void wideProperties(final Blackhole hole) {
+    hole.consume(wide.getInt("property0"));
+    hole.consume(wide.getDouble("property249"));
+    hole.consume(wide.getString("property499"));
+  }
+
+  /**
+   * Read link URIs
+   *
+   * @param hole
+   */
+  @Benchmark
+  public void links(final Blackhole hole) {
+    hole.consume(small.getSelfUri());
+    hole.consume(small.getNextUri());
+    hole.consume(small.getLinkUri("find"));
+  }
+
+  /**
+   * Read embedded resources and their properties
+   *
+   * @param hole
+   */
+  @Benchmark
+  public void embedded(final Blackhole hole) {
+    for (Resource order : small.getResources("orders")) {
+      hole.consume(order.getDouble("total"));
+      hole.consume(order.getLinkUri("customer"));
+    }
+  }
+}
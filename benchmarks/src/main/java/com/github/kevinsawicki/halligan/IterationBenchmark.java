@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package com.github.kevinsawicki.halligan;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of {@link ResourceIterator} paging through an in-process server
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IterationBenchmark {
+
+  /**
+   * Number of pages to iterate over
+   */
+  @Param({ "10" })
+  public int pages;
+
+  /**
+   * Number of items embedded in each page
+   */
+  @Param({ "20", "200" })
+  public int items;
+
+  private SyntheticHalServer server;
+
+  /**
+   * Start server
+   *
+   * @throws Exception
+   */
+  @Setup
+  public void setUp() throws Exception {
+    server = new SyntheticHalServer().pages(pages).pageSize(items).open();
+  }
+
+  /**
+   * Stop server
+   *
+   * @throws Exception
+   */
+  @TearDown
+  public void tearDown() throws Exception {
+    server.close();
+  }
+
+  /**
+   * Iterate over all pages counting the embedded items
+   *
+   * @return item count
+   * @throws Exception
+   */
+  @Benchmark
+  public int iterate() throws Exception {
+    int count = 0;
+    ResourceIterator iterator = new ResourceIterator(new Resource(
+        server.getFirstPageUrl()));
+    while (iterator.hasNext())
+      count += iterator.next().getResourceCount("items");
+    return count;
+  }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package com.github.kevinsawicki.halligan;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the {@link Link} href expansion variants
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LinkBenchmark {
+
+  private Link plain;
+
+  private Link template;
+
+  private Map<String, Object> values;
+
+  /**
+   * Create links and template values
+   */
+  @Setup
+  public void setUp() {
+    plain = new Link("/orders/123", null, null, null, false, null, null);
+    template = new Link("/orders{?id,status}", null, null, null, true, null,
+        null);
+    values = new HashMap<String, Object>();
+    values.put("id", 123);
+    values.put("status", "shipped");
+  }
+
+  /**
+   * Expand href that is not templated
+   *
+   * @return href
+   */
+  @Benchmark
+  public String plain() {
+    return plain.expandHref();
+  }
+
+  /**
+   * Expand templated href without values
+   *
+   * @return href
+   */
+  @Benchmark
+  public String templateEmpty() {
+    return template.expandHref();
+  }
+
+  /**
+   * Expand templated href with a single named value
+   *
+   * @return href
+   */
+  @Benchmark
+  public String templateNamed() {
+    return template.expandHref("id", 123);
+  }
+
+  /**
+   * Expand templated href with name/value pairs
+   *
+   * @return href
+   */
+  @Benchmark
+  public String templatePairs() {
+    return template.expandHref("id", 123, "status", "shipped");
+  }
+
+  /**
+   * Expand templated href with a map of values
+   *
+   * @return href
+   */
+  @Benchmark
+  public String templateMap() {
+    return template.expandHref(values);
+  }
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package com.github.kevinsawicki.halligan;
+
+import static com.github.kevinsawicki.halligan.DefaultGsonFactory.GSON_FACTORY;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load test that crawls a {@link SyntheticHalServer} with a configurable
+ * number of concurrent clients
+ * <p>
+ * Each client pages through the collection using the next link and follows
+ * the child links of every embedded item down to the configured depth. One
+ * line is reported per concurrency level with the request throughput,
+ * request latency percentiles, and heap usage.
+ * <p>
+ * Options are given as <code>--name value</code> pairs:
+ * <ul>
+ * <li>concurrency: comma-separated client counts, defaults to 1,4,16</li>
+ * <li>pages: collection pages, defaults to 10</li>
+ * <li>page-size: items per page, defaults to 20</li>
+ * <li>depth: node levels below each item, defaults to 1</li>
+ * <li>fanout: child links per item and node, defaults to 2</li>
+ * <li>latency: milliseconds added to each response, defaults to 0</li>
+ * <li>jitter: maximum random milliseconds added to latency, defaults to 0</li>
+ * <li>warmup: seconds to run before measuring, defaults to 2</li>
+ * <li>duration: seconds to measure, defaults to 10</li>
+ * </ul>
+ */
+public class LoadTest {
+
+  private static class Client implements Runnable {
+
+    private final String url;
+
+    private final int depth;
+
+    private final int fanout;
+
+    private final long deadline;
+
+    private final Histogram latencies;
+
+    private final AtomicLong errors;
+
+    private Client(final String url, final int depth, final int fanout,
+        final long deadline, final Histogram latencies,
+        final AtomicLong errors) {
+      this.url = url;
+      this.depth = depth;
+      this.fanout = fanout;
+      this.deadline = deadline;
+      this.latencies = latencies;
+      this.errors = errors;
+    }
+
+    private boolean expired() {
+      return System.nanoTime() - deadline >= 0;
+    }
+
+    private void record(final long start) {
+      latencies.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime()
+          - start));
+    }
+
+    private void crawl(final Resource node, final int level) throws Exception {
+      if (level >= depth)
+        return;
+      for (int i = 0; i < fanout && !expired(); i++) {
+        final long start = System.nanoTime();
+        final Resource child = node.load("child" + i);
+        record(start);
+        crawl(child, level + 1);
+      }
+    }
+
+    public void run() {
+      final RequestPolicy policy = new RequestPolicy();
+      while (!expired())
+        try {
+          long start = System.nanoTime();
+          Resource page = new Resource(GSON_FACTORY, policy, url);
+          record(start);
+          while (!expired()) {
+            for (Resource item : page.getResources("items"))
+              crawl(item, 0);
+            if (!page.hasNext() || expired())
+              break;
+            start = System.nanoTime();
+            page = page.next();
+            record(start);
+          }
+        } catch (Exception e) {
+          errors.incrementAndGet();
+        }
+    }
+  }
+
+  private static long option(final String[] args, final String name,
+      final long defaultValue) {
+    final String value = option(args, name);
+    return value != null ? Long.parseLong(value) : defaultValue;
+  }
+
+  private static String option(final String[] args, final String name) {
+    for (int i = 0; i < args.length - 1; i++)
+      if (args[i].equals("--" + name))
+        return args[i + 1];
+    return null;
+  }
+
+  private static long heapUsed() {
+    return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+  }
+
+  private static long heapPeak() {
+    long peak = 0;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+      if (pool.getType() == MemoryType.HEAP)
+        peak += pool.getPeakUsage().getUsed();
+    return peak;
+  }
+
+  private static void resetHeapPeak() {
+    System.gc();
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+      if (pool.getType() == MemoryType.HEAP)
+        pool.resetPeakUsage();
+  }
+
+  private static double millis(final long micros) {
+    return micros / 1000D;
+  }
+
+  private static double megabytes(final long bytes) {
+    return bytes / (1024D * 1024D);
+  }
+
+  private final SyntheticHalServer server;
+
+  private final long warmup;
+
+  private final long duration;
+
+  /**
+   * Create load test against server
+   *
+   * @param server
+   * @param warmup
+   *          seconds to run before measuring
+   * @param duration
+   *          seconds to measure
+   */
+  public LoadTest(final SyntheticHalServer server, final long warmup,
+      final long duration) {
+    this.server = server;
+    this.warmup = warmup;
+    this.duration = duration;
+  }
+
+  private void drive(final int concurrency, final long seconds,
+      final Histogram latencies, final AtomicLong errors)
+      throws InterruptedException {
+    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+    final ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+    for (int i = 0; i < concurrency; i++)
+      executor.execute(new Client(server.getFirstPageUrl(), server.getDepth(),
+          server.getFanout(), deadline, latencies, errors));
+    executor.shutdown();
+    executor.awaitTermination(seconds + 60, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Print report header
+   *
+   * @param out
+   */
+  public static void printHeader(final PrintStream out) {
+    out.printf("%11s %10s %10s %9s %9s %9s %9s %7s %9s %9s%n", "concurrency",
+        "requests", "req/s", "p50 ms", "p90 ms", "p99 ms", "max ms",
+        "errors", "heap MB", "peak MB");
+  }
+
+  /**
+   * Run load test at concurrency level and print the results
+   *
+   * @param concurrency
+   * @param out
+   * @throws InterruptedException
+   */
+  public void run(final int concurrency, final PrintStream out)
+      throws InterruptedException {
+    if (warmup > 0)
+      drive(concurrency, warmup, new Histogram(), new AtomicLong());
+
+    final Histogram latencies = new Histogram();
+    final AtomicLong errors = new AtomicLong();
+    resetHeapPeak();
+    final long start = System.nanoTime();
+    drive(concurrency, duration, latencies, errors);
+    final double elapsed = (System.nanoTime() - start) / 1e9D;
+
+    out.printf("%11d %10d %10.1f %9.2f %9.2f %9.2f %9.2f %7d %9.1f %9.1f%n",
+        concurrency, latencies.getCount(), latencies.getCount() / elapsed,
+        millis(latencies.getPercentile(50)),
+        millis(latencies.getPercentile(90)),
+        millis(latencies.getPercentile(99)), millis(latencies.getMax()),
+        errors.get(), megabytes(heapUsed()), megabytes(heapPeak()));
+  }
+
+  /**
+   * Run load test
+   *
+   * @param args
+   * @throws Exception
+   */
+  public static void main(final String... args) throws Exception {
+    final List<Integer> levels = new ArrayList<Integer>();
+    final String concurrency = option(args, "concurrency");
+    for (String level : (concurrency != null ? concurrency : "1,4,16")
+        .split(","))
+      levels.add(Integer.valueOf(level.trim()));
+
+    final SyntheticHalServer server = new SyntheticHalServer()
+        .pages((int) option(args, "pages", 10))
+        .pageSize((int) option(args, "page-size", 20))
+        .depth((int) option(args, "depth", 1))
+        .fanout((int) option(args, "fanout", 2))
+        .latency(option(args, "latency", 0), option(args, "jitter", 0));
+    server.open();
+    try {
+      final LoadTest test = new LoadTest(server, option(args, "warmup", 2),
+          option(args, "duration", 10));
+      printHeader(System.out);
+      for (int level : levels)
+        test.run(level, System.out);
+    } finally {
+      server.close();
+    }
+  }
+}
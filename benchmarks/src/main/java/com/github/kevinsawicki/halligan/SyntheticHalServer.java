@@ -0,0 +1,321 @@
+/*
+ * Copyright (c) 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package com.github.kevinsawicki.halligan;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Connector;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.server.nio.SelectChannelConnector;
+
+/**
+ * In-process HTTP server serving a synthetic graph of HAL documents
+ * <p>
+ * The graph is a paginated collection at <code>/pages/{page}</code> where
+ * each page embeds a configurable number of items and links to the following
+ * page. Every item is the root of a tree of nodes at
+ * <code>/nodes/{level}/{id}</code> where each node links to
+ * <code>fanout</code> children using the <code>child0</code>,
+ * <code>child1</code>, ... relations until the configured depth is reached.
+ * <p>
+ * Collection pages are rendered once when the server is opened so that the
+ * server contributes as little as possible to measured client time. Latency
+ * can be injected into every response to model a remote server.
+ */
+public class SyntheticHalServer {
+
+  private int pages = 10;
+
+  private int pageSize = 20;
+
+  private int depth;
+
+  private int fanout;
+
+  private long latency;
+
+  private long jitter;
+
+  private byte[][] rendered;
+
+  private Server server;
+
+  private String url;
+
+  private final AtomicLong requests = new AtomicLong();
+
+  /**
+   * Set number of collection pages
+   *
+   * @param pages
+   * @return this server
+   */
+  public SyntheticHalServer pages(final int pages) {
+    if (pages < 1)
+      throw new IllegalArgumentException("Pages must be at least 1");
+    this.pages = pages;
+    return this;
+  }
+
+  /**
+   * Set number of items embedded in each collection page
+   *
+   * @param pageSize
+   * @return this server
+   */
+  public SyntheticHalServer pageSize(final int pageSize) {
+    if (pageSize < 0)
+      throw new IllegalArgumentException("Page size cannot be negative");
+    this.pageSize = pageSize;
+    return this;
+  }
+
+  /**
+   * Set number of node levels below each item
+   *
+   * @param depth
+   * @return this server
+   */
+  public SyntheticHalServer depth(final int depth) {
+    if (depth < 0)
+      throw new IllegalArgumentException("Depth cannot be negative");
+    this.depth = depth;
+    return this;
+  }
+
+  /**
+   * Set number of child links from each item and node
+   *
+   * @param fanout
+   * @return this server
+   */
+  public SyntheticHalServer fanout(final int fanout) {
+    if (fanout < 0)
+      throw new IllegalArgumentException("Fanout cannot be negative");
+    this.fanout = fanout;
+    return this;
+  }
+
+  /**
+   * Set latency added to every response
+   *
+   * @param latency
+   *          base delay in milliseconds
+   * @param jitter
+   *          maximum random delay in milliseconds added to the base delay
+   * @return this server
+   */
+  public SyntheticHalServer latency(final long latency, final long jitter) {
+    if (latency < 0 || jitter < 0)
+      throw new IllegalArgumentException("Latency cannot be negative");
+    this.latency = latency;
+    this.jitter = jitter;
+    return this;
+  }
+
+  /**
+   * Get number of child links from each item and node
+   *
+   * @return fanout
+   */
+  public int getFanout() {
+    return fanout;
+  }
+
+  /**
+   * Get number of node levels below each item
+   *
+   * @return depth
+   */
+  public int getDepth() {
+    return depth;
+  }
+
+  /**
+   * Get number of requests served since the server was opened
+   *
+   * @return request count
+   */
+  public long getRequestCount() {
+    return requests.get();
+  }
+
+  /**
+   * Get URL of first collection page
+   *
+   * @return URL
+   */
+  public String getFirstPageUrl() {
+    return url + "/pages/0";
+  }
+
+  private StringBuilder children(final StringBuilder json, final int level,
+      final long id) {
+    if (level >= depth)
+      return json;
+    for (int i = 0; i < fanout; i++)
+      json.append(",\"child").append(i).append("\":{\"href\":\"/nodes/")
+          .append(level + 1).append('/').append(id * fanout + i)
+          .append("\"}");
+    return json;
+  }
+
+  private StringBuilder node(final StringBuilder json, final int level,
+      final long id) {
+    json.append("{\"_links\":{\"self\":{\"href\":\"/nodes/").append(level)
+        .append('/').append(id).append("\"}");
+    children(json, level, id).append("},\"id\":").append(id);
+    json.append(",\"level\":").append(level);
+    json.append(",\"name\":\"node ").append(id).append('"');
+    return json.append(",\"price\":").append(id % 100).append(".99}");
+  }
+
+  private byte[] page(final int page) {
+    StringBuilder json = new StringBuilder("{\"_links\":{");
+    json.append("\"self\":{\"href\":\"/pages/").append(page).append("\"}");
+    if (page + 1 < pages)
+      json.append(",\"next\":{\"href\":\"/pages/").append(page + 1)
+          .append("\"}");
+    json.append("},\"page\":").append(page);
+    json.append(",\"_embedded\":{\"items\":[");
+    for (int i = 0; i < pageSize; i++) {
+      if (i > 0)
+        json.append(',');
+      node(json, 0, (long) page * pageSize + i);
+    }
+    return bytes(json.append("]}}"));
+  }
+
+  private static byte[] bytes(final StringBuilder json) {
+    try {
+      return json.toString().getBytes("UTF-8");
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static int parse(final String value) {
+    try {
+      return Integer.parseInt(value);
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  private byte[] render(final String target) {
+    if (target.startsWith("/pages/")) {
+      final int page = parse(target.substring(7));
+      return page >= 0 && page < pages ? rendered[page] : null;
+    }
+    if (target.startsWith("/nodes/")) {
+      final int slash = target.indexOf('/', 7);
+      if (slash == -1)
+        return null;
+      final int level = parse(target.substring(7, slash));
+      final long id;
+      try {
+        id = Long.parseLong(target.substring(slash + 1));
+      } catch (NumberFormatException e) {
+        return null;
+      }
+      if (level < 0 || level > depth || id < 0)
+        return null;
+      return bytes(node(new StringBuilder(), level, id));
+    }
+    return null;
+  }
+
+  private void delay(final Random random) {
+    long delay = latency;
+    if (jitter > 0)
+      delay += (long) (random.nextDouble() * jitter);
+    if (delay > 0)
+      try {
+        Thread.sleep(delay);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+  }
+
+  /**
+   * Start server on an ephemeral port
+   *
+   * @return this server
+   * @throws Exception
+   */
+  public SyntheticHalServer open() throws Exception {
+    rendered = new byte[pages][];
+    for (int page = 0; page < pages; page++)
+      rendered[page] = page(page);
+    requests.set(0);
+
+    final Random random = new Random();
+    server = new Server();
+    server.setHandler(new AbstractHandler() {
+
+      public void handle(final String target, final Request baseRequest,
+          final HttpServletRequest request, final HttpServletResponse response)
+          throws IOException, ServletException {
+        baseRequest.setHandled(true);
+        requests.incrementAndGet();
+        delay(random);
+        final byte[] body = render(target);
+        if (body == null) {
+          response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+          return;
+        }
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType("application/hal+json; charset=UTF-8");
+        response.setContentLength(body.length);
+        final OutputStream output = response.getOutputStream();
+        output.write(body);
+      }
+    });
+    final Connector connector = new SelectChannelConnector();
+    connector.setPort(0);
+    server.setConnectors(new Connector[] { connector });
+    server.start();
+    url = "http://localhost:" + connector.getLocalPort();
+    return this;
+  }
+
+  /**
+   * Stop server
+   *
+   * @throws Exception
+   */
+  public void close() throws Exception {
+    if (server != null) {
+      server.stop();
+      server = null;
+    }
+  }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package com.github.kevinsawicki.halligan;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Unmodifiable map of string keys stored in sorted parallel arrays
+ * <p>
+ * Keys are found with a binary search so the map has no per-entry objects or
+ * hash table overhead.
+ *
+ * @param <V>
+ */
+final class ArrayMap<V> extends AbstractMap<String, V> implements
+    Serializable {
+
+  private static final long serialVersionUID = 5386328497393165432L;
+
+  private final String[] keys;
+
+  private final Object[] values;
+
+  /**
+   * Create map with a copy of the entries in the given map
+   *
+   * @param map
+   */
+  ArrayMap(final Map<String, ? extends V> map) {
+    keys = map.keySet().toArray(new String[map.size()]);
+    Arrays.sort(keys);
+    values = new Object[keys.length];
+    for (int i = 0; i < keys.length; i++)
+      values[i] = map.get(keys[i]);
+  }
+
+  private int indexOf(final Object key) {
+    return key instanceof String ? Arrays.binarySearch(keys, (String) key)
+        : -1;
+  }
+
+  @Override
+  public int size() {
+    return keys.length;
+  }
+
+  @Override
+  public boolean containsKey(final Object key) {
+    return indexOf(key) >= 0;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public V get(final Object key) {
+    final int index = indexOf(key);
+    return index >= 0 ? (V) values[index] : null;
+  }
+
+  @Override
+  public Set<Entry<String, V>> entrySet() {
+    return new AbstractSet<Entry<String, V>>() {
+
+      @Override
+      public int size() {
+        return keys.length;
+      }
+
+      @Override
+      public Iterator<Entry<String, V>> iterator() {
+        return new Iterator<Entry<String, V>>() {
+
+          private int index;
+
+          public boolean hasNext() {
+            return index < keys.length;
+          }
+
+          public Entry<String, V> next() {
+            if (!hasNext())
+              throw new NoSuchElementException();
+            return new ArrayEntry(index++);
+          }
+
+          public void remove() {
+            throw new UnsupportedOperationException();
+          }
+        };
+      }
+    };
+  }
+
+  private class ArrayEntry implements Entry<String, V> {
+
+    private final int index;
+
+    ArrayEntry(final int index) {
+      this.index = index;
+    }
+
+    public String getKey() {
+      return keys[index];
+    }
+
+    @SuppressWarnings("unchecked")
+    public V getValue() {
+      return (V) values[index];
+    }
+
+    public V setValue(final V value) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+      if (!(obj instanceof Entry))
+        return false;
+      final Entry<?, ?> other = (Entry<?, ?>) obj;
+      final Object value = values[index];
+      return keys[index].equals(other.getKey())
+          && (value == null ? other.getValue() == null : value.equals(other
+              .getValue()));
+    }
+
+    @Override
+    public int hashCode() {
+      final Object value = values[index];
+      return keys[index].hashCode() ^ (value != null ? value.hashCode() : 0);
+    }
+
+    @Override
+    public String toString() {
+      return keys[index] + '=' + values[index];
+    }
+  }
+}
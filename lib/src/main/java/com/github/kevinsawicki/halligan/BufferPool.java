@@ -0,0 +1,249 @@
+/*
+ * Copyright (c) 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package com.github.kevinsawicki.halligan;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Per-thread pool of the buffers and decoders used to read response bodies
+ * <p>
+ * Each thread retains at most one buffer of each kind and one decoder.
+ * Taking an item removes it from the pool until it is released, so nested
+ * reads on the same thread never share an item. Buffers that have grown
+ * beyond {@link #MAX_RETAINED} are dropped when released so a single large
+ * response does not stay pinned to a thread.
+ */
+final class BufferPool {
+
+  /**
+   * Default size of byte and char buffers
+   */
+  static final int BUFFER_SIZE = 8192;
+
+  /**
+   * Largest buffer retained in a pool
+   */
+  static final int MAX_RETAINED = 64 * 1024;
+
+  /**
+   * Growable byte buffer holding a complete response body
+   */
+  static final class Body extends ByteArrayOutputStream {
+
+    private Body(final int size) {
+      super(size);
+    }
+
+    /**
+     * Get backing array, valid up to {@link #size()}
+     *
+     * @return array
+     */
+    byte[] array() {
+      return buf;
+    }
+
+    /**
+     * Read stream to the end directly into this buffer
+     *
+     * @param input
+     * @throws IOException
+     */
+    void readFrom(final InputStream input) throws IOException {
+      readFrom(input, null);
+    }
+
+    /**
+     * Read stream to the end directly into this buffer, checking the deadline
+     * before each read
+     *
+     * @param input
+     * @param deadline
+     *          or null if none
+     * @throws IOException
+     */
+    void readFrom(final InputStream input, final Deadline deadline)
+        throws IOException {
+      int read;
+      do {
+        if (deadline != null)
+          deadline.check();
+        if (count == buf.length) {
+          // Probe for the end before growing a buffer that was presized
+          // to the exact body length
+          final int next = input.read();
+          if (next == -1)
+            return;
+          final byte[] grown = new byte[buf.length * 2];
+          System.arraycopy(buf, 0, grown, 0, count);
+          buf = grown;
+          buf[count++] = (byte) next;
+        }
+        read = input.read(buf, count, buf.length - count);
+        if (read > 0)
+          count += read;
+      } while (read != -1);
+    }
+  }
+
+  private static final ThreadLocal<BufferPool> POOLS = new ThreadLocal<BufferPool>() {
+
+    @Override
+    protected BufferPool initialValue() {
+      return new BufferPool();
+    }
+  };
+
+  private static BufferPool pool() {
+    return POOLS.get();
+  }
+
+  /**
+   * Take byte buffer of at least the given size
+   *
+   * @param size
+   * @return buffer
+   */
+  static byte[] takeBytes(final int size) {
+    final BufferPool pool = pool();
+    final byte[] bytes = pool.bytes;
+    if (bytes != null && bytes.length >= size) {
+      pool.bytes = null;
+      return bytes;
+    }
+    return new byte[Math.max(size, BUFFER_SIZE)];
+  }
+
+  /**
+   * Release byte buffer back to this thread's pool
+   *
+   * @param bytes
+   */
+  static void release(final byte[] bytes) {
+    final BufferPool pool = pool();
+    if (bytes.length <= MAX_RETAINED
+        && (pool.bytes == null || pool.bytes.length < bytes.length))
+      pool.bytes = bytes;
+  }
+
+  /**
+   * Take char buffer of at least the given size
+   *
+   * @param size
+   * @return buffer
+   */
+  static char[] takeChars(final int size) {
+    final BufferPool pool = pool();
+    final char[] chars = pool.chars;
+    if (chars != null && chars.length >= size) {
+      pool.chars = null;
+      return chars;
+    }
+    return new char[Math.max(size, BUFFER_SIZE)];
+  }
+
+  /**
+   * Release char buffer back to this thread's pool
+   *
+   * @param chars
+   */
+  static void release(final char[] chars) {
+    final BufferPool pool = pool();
+    if (chars.length <= MAX_RETAINED
+        && (pool.chars == null || pool.chars.length < chars.length))
+      pool.chars = chars;
+  }
+
+  /**
+   * Take empty body buffer with room for at least the expected size
+   * <p>
+   * The pooled body is used when it is large enough, otherwise a body of the
+   * expected size is allocated even when it is too large to be retained.
+   *
+   * @param expected
+   *          expected body size or 0 if unknown
+   * @return body
+   */
+  static Body takeBody(final int expected) {
+    final BufferPool pool = pool();
+    final Body body = pool.body;
+    if (body != null) {
+      pool.body = null;
+      if (body.array().length >= expected)
+        return body;
+      return new Body(Math.max(expected, body.array().length));
+    }
+    return new Body(Math.max(expected, BUFFER_SIZE));
+  }
+
+  /**
+   * Release body buffer back to this thread's pool
+   *
+   * @param body
+   */
+  static void release(final Body body) {
+    if (body.array().length > MAX_RETAINED)
+      return;
+    body.reset();
+    pool().body = body;
+  }
+
+  /**
+   * Take decoder for charset that replaces malformed input
+   *
+   * @param charset
+   * @return decoder
+   */
+  static CharsetDecoder takeDecoder(final Charset charset) {
+    final BufferPool pool = pool();
+    final CharsetDecoder decoder = pool.decoder;
+    if (decoder != null && decoder.charset().equals(charset)) {
+      pool.decoder = null;
+      return decoder.reset();
+    }
+    return charset.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+  }
+
+  /**
+   * Release decoder back to this thread's pool
+   *
+   * @param decoder
+   */
+  static void release(final CharsetDecoder decoder) {
+    pool().decoder = decoder;
+  }
+
+  private byte[] bytes;
+
+  private char[] chars;
+
+  private Body body;
+
+  private CharsetDecoder decoder;
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package com.github.kevinsawicki.halligan;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+
+/**
+ * Loader of the resources linked to by each resource in a collection
+ * <p>
+ * Resources linking to the same URI share a single request and distinct URIs
+ * are requested concurrently up to the configured limit on the executor of
+ * the {@link RequestPolicy} of the linking resources. Each loaded resource
+ * is attached to the resources that link to it so that later calls to
+ * {@link Resource#load(String)} return it without another request.
+ */
+public class BulkLoader {
+
+  private static IOException unwrap(final ExecutionException e) {
+    Throwable cause = e.getCause();
+    if (cause instanceof IOException)
+      return (IOException) cause;
+    if (cause instanceof RuntimeException)
+      throw (RuntimeException) cause;
+    if (cause instanceof Error)
+      throw (Error) cause;
+    IOException ioException = new IOException("Loading resource failed");
+    ioException.initCause(cause);
+    return ioException;
+  }
+
+  private final int concurrency;
+
+  /**
+   * Create loader that issues at most the given number of concurrent requests
+   *
+   * @param concurrency
+   */
+  public BulkLoader(final int concurrency) {
+    if (concurrency < 1)
+      throw new IllegalArgumentException("Concurrency must be at least 1");
+    this.concurrency = concurrency;
+  }
+
+  /**
+   * Load the resource linked to with the given name from every resource in the
+   * collection
+   * <p>
+   * Resources without the link or that already have it loaded are skipped.
+   *
+   * @param resources
+   * @param linkName
+   * @return map of requested URIs to newly loaded resources
+   * @throws IOException
+   */
+  public Map<String, Resource> load(final Collection<Resource> resources,
+      final String linkName) throws IOException {
+    final Map<String, List<Resource>> linking = new LinkedHashMap<String, List<Resource>>();
+    if (resources != null)
+      for (Resource resource : resources) {
+        if (resource.getLoaded(linkName) != null)
+          continue;
+        String uri = resource.getLinkUri(linkName);
+        if (uri == null || uri.length() == 0)
+          continue;
+        uri = resource.resolveUri(uri);
+        List<Resource> sources = linking.get(uri);
+        if (sources == null) {
+          sources = new ArrayList<Resource>(1);
+          linking.put(uri, sources);
+        }
+        sources.add(resource);
+      }
+
+    final Map<String, Resource> loaded = fetch(linkName, linking);
+    for (Entry<String, Resource> entry : loaded.entrySet())
+      for (Resource source : linking.get(entry.getKey()))
+        source.attach(linkName, entry.getValue());
+    return loaded;
+  }
+
+  /**
+   * Load the resources linked to with the given name from the resource
+   * <p>
+   * Every link of the relation is requested and links to the same URI are
+   * only requested once.
+   *
+   * @param resource
+   * @param linkName
+   * @return map of requested URIs to loaded resources in link order
+   * @throws IOException
+   */
+  public Map<String, Resource> loadLinks(final Resource resource,
+      final String linkName) throws IOException {
+    final Map<String, List<Resource>> linking = new LinkedHashMap<String, List<Resource>>();
+    final List<Resource> sources = Collections.singletonList(resource);
+    for (Link link : resource.getLinks(linkName)) {
+      String uri = link.expandHref();
+      if (uri != null && uri.length() > 0)
+        linking.put(resource.resolveUri(uri), sources);
+    }
+    return fetch(linkName, linking);
+  }
+
+  private Map<String, Resource> fetch(final String linkName,
+      final Map<String, List<Resource>> linking) throws IOException {
+    final Map<String, Resource> loaded = new LinkedHashMap<String, Resource>();
+    if (linking.isEmpty())
+      return loaded;
+
+    if (concurrency == 1 || linking.size() == 1) {
+      for (Entry<String, List<Resource>> entry : linking.entrySet()) {
+        String uri = entry.getKey();
+        loaded.put(uri, entry.getValue().get(0)
+            .requestResource(linkName, uri));
+      }
+      return loaded;
+    }
+
+    final Iterator<Entry<String, List<Resource>>> entries = linking
+        .entrySet().iterator();
+    final CompletionService<Resource> completion = new ExecutorCompletionService<Resource>(
+        linking.values().iterator().next().get(0).getPolicy().getExecutor());
+    final Map<Future<Resource>, String> pending = new HashMap<Future<Resource>, String>();
+    final Map<String, Resource> results = new HashMap<String, Resource>();
+    try {
+      while (entries.hasNext() || !pending.isEmpty()) {
+        while (entries.hasNext() && pending.size() < concurrency) {
+          final Entry<String, List<Resource>> entry = entries.next();
+          final String uri = entry.getKey();
+          final Resource source = entry.getValue().get(0);
+          pending.put(completion.submit(new Callable<Resource>() {
+
+            public Resource call() throws Exception {
+              return source.requestResource(linkName, uri);
+            }
+          }), uri);
+        }
+        final Future<Resource> done = completion.take();
+        results.put(pending.remove(done), done.get());
+      }
+    } catch (ExecutionException e) {
+      throw unwrap(e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted loading resources");
+    } finally {
+      for (Future<Resource> future : pending.keySet())
+        future.cancel(true);
+    }
+    for (String uri : linking.keySet())
+      loaded.put(uri, results.get(uri));
+    return loaded;
+  }
+}
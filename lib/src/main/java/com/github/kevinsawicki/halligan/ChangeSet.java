@@ -0,0 +1,320 @@
+/*
+ * Copyright (c) 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package com.github.kevinsawicki.halligan;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Changes found when refreshing a resource
+ * <p>
+ * Embedded resources are matched between the current and refreshed
+ * resource by the href of their self link or, when they don't have one, by
+ * their content. Matched resources that are unchanged are kept as is,
+ * matched resources with changes are updated in place, and resources
+ * without a match are added or removed.
+ * <p>
+ * Changes are reported at every level of embedding: a resource is modified
+ * when its own properties or links changed, and resources added to or
+ * removed from a modified or unchanged resource are reported individually.
+ * <p>
+ * Every resource kept from the current graph has its raw JSON span moved to
+ * the refreshed response so no span refers to the previous response.
+ */
+public class ChangeSet {
+
+  private static boolean linkEquals(final Link link1, final Link link2) {
+    return link1.templated == link2.templated && equals(link1.href, link2.href)
+        && equals(link1.hreflang, link2.hreflang)
+        && equals(link1.name, link2.name)
+        && equals(link1.profile, link2.profile)
+        && equals(link1.title, link2.title) && equals(link1.type, link2.type)
+        && link1.properties.equals(link2.properties);
+  }
+
+  private static boolean equals(final Object value1, final Object value2) {
+    return value1 == null ? value2 == null : value1.equals(value2);
+  }
+
+  private static boolean linksEqual(final Map<String, Link> links1,
+      final Map<String, Link> links2) {
+    if (links1.size() != links2.size())
+      return false;
+    for (Entry<String, Link> entry : links1.entrySet()) {
+      final Link other = links2.get(entry.getKey());
+      if (other == null || !linkEquals(entry.getValue(), other))
+        return false;
+    }
+    return true;
+  }
+
+  private static boolean linkArraysEqual(final Resource resource1,
+      final Resource resource2) {
+    final Map<String, Link[]> arrays1 = resource1.linkArrays();
+    final Map<String, Link[]> arrays2 = resource2.linkArrays();
+    final int size1 = arrays1 != null ? arrays1.size() : 0;
+    final int size2 = arrays2 != null ? arrays2.size() : 0;
+    if (size1 != size2)
+      return false;
+    if (size1 == 0)
+      return true;
+    for (Entry<String, Link[]> entry : arrays1.entrySet()) {
+      final Link[] array1 = entry.getValue();
+      final Link[] array2 = arrays2.get(entry.getKey());
+      if (array2 == null || array1.length != array2.length)
+        return false;
+      for (int i = 0; i < array1.length; i++)
+        if (!linkEquals(array1[i], array2[i]))
+          return false;
+    }
+    return true;
+  }
+
+  private static boolean contentEquals(final Resource resource1,
+      final Resource resource2) {
+    if (!resource1.properties.equals(resource2.properties)
+        || !linksEqual(resource1.links, resource2.links)
+        || !linkArraysEqual(resource1, resource2)
+        || !resource1.resources.keySet().equals(resource2.resources.keySet()))
+      return false;
+    for (Entry<String, List<Resource>> entry : resource1.resources.entrySet()) {
+      final String name = entry.getKey();
+      final List<Resource> children1 = entry.getValue();
+      final List<Resource> children2 = resource2.resources.get(name);
+      if (children1.size() != children2.size()
+          || resource1.isEmbeddedObject(name) != resource2
+              .isEmbeddedObject(name))
+        return false;
+      for (int i = 0; i < children1.size(); i++)
+        if (!contentEquals(children1.get(i), children2.get(i)))
+          return false;
+    }
+    return true;
+  }
+
+  private static int contentHash(final Resource resource) {
+    int hash = resource.properties.hashCode();
+    for (Entry<String, Link> entry : resource.links.entrySet()) {
+      final Link link = entry.getValue();
+      hash += entry.getKey().hashCode()
+          ^ (link.href != null ? link.href.hashCode() : 0);
+    }
+    final Map<String, Link[]> arrays = resource.linkArrays();
+    if (arrays != null)
+      for (Entry<String, Link[]> entry : arrays.entrySet()) {
+        int array = entry.getKey().hashCode();
+        for (Link link : entry.getValue())
+          array = 31 * array + (link.href != null ? link.href.hashCode() : 0);
+        hash += array;
+      }
+    for (Entry<String, List<Resource>> entry : resource.resources.entrySet()) {
+      int children = entry.getKey().hashCode();
+      for (Resource child : entry.getValue())
+        children = 31 * children + contentHash(child);
+      hash += children;
+    }
+    return hash;
+  }
+
+  private static Object identity(final Resource resource) {
+    final Link self = resource.links.get("self");
+    if (self != null && self.href != null)
+      return self.href;
+    return Integer.valueOf(contentHash(resource));
+  }
+
+  private final List<Resource> added = new ArrayList<Resource>();
+
+  private final List<Resource> removed = new ArrayList<Resource>();
+
+  private final List<Resource> modified = new ArrayList<Resource>();
+
+  /**
+   * Merge refreshed resource into current resource recording all changes
+   *
+   * @param current
+   * @param refreshed
+   * @return this change set
+   */
+  ChangeSet merge(final Resource current, final Resource refreshed) {
+    current.code = refreshed.code;
+    current.prefix = refreshed.prefix;
+    current.setRaw(refreshed.raw, refreshed.rawStart, refreshed.rawEnd);
+    current.clearIndexes();
+
+    final boolean propertiesChanged = !current.properties
+        .equals(refreshed.properties);
+    final boolean linksChanged = !linksEqual(current.links, refreshed.links)
+        || !linkArraysEqual(current, refreshed);
+    if (propertiesChanged) {
+      current.properties.clear();
+      current.properties.putAll(refreshed.properties);
+    }
+    if (linksChanged) {
+      current.links.clear();
+      current.links.putAll(refreshed.links);
+      current.setLinkArrays(refreshed.linkArrays());
+      current.clearLoaded();
+    }
+    if (propertiesChanged || linksChanged)
+      modified.add(current);
+
+    final Map<String, List<Resource>> resources = new HashMap<String, List<Resource>>();
+    for (Entry<String, List<Resource>> entry : refreshed.resources.entrySet()) {
+      final String name = entry.getKey();
+      final List<Resource> existing = current.resources.remove(name);
+      final List<Resource> children = mergeChildren(existing,
+          entry.getValue());
+      final boolean object = refreshed.isEmbeddedObject(name);
+      if (object)
+        resources.put(name, Collections.singletonList(children.get(0)));
+      else
+        resources.put(name, children);
+      current.setEmbeddedObject(name, object);
+    }
+    for (Entry<String, List<Resource>> entry : current.resources.entrySet()) {
+      removed.addAll(entry.getValue());
+      current.setEmbeddedObject(entry.getKey(), false);
+    }
+    current.resources.clear();
+    current.resources.putAll(resources);
+    return this;
+  }
+
+  /**
+   * Point the raw spans of the kept resource and all its embedded resources
+   * at the refreshed text so the previous response can be released
+   * <p>
+   * Both resources must have equal content and therefore the same embedded
+   * resources in the same order.
+   *
+   * @param current
+   * @param refreshed
+   */
+  private static void rebaseRaw(final Resource current,
+      final Resource refreshed) {
+    current.setRaw(refreshed.raw, refreshed.rawStart, refreshed.rawEnd);
+    for (Entry<String, List<Resource>> entry : current.resources.entrySet()) {
+      final List<Resource> children = entry.getValue();
+      final List<Resource> refreshedChildren = refreshed.resources.get(entry
+          .getKey());
+      for (int i = 0; i < children.size(); i++)
+        rebaseRaw(children.get(i), refreshedChildren.get(i));
+    }
+  }
+
+  private List<Resource> mergeChildren(final List<Resource> existing,
+      final List<Resource> refreshed) {
+    final Map<Object, LinkedList<Resource>> candidates = new HashMap<Object, LinkedList<Resource>>();
+    if (existing != null)
+      for (Resource child : existing) {
+        final Object identity = identity(child);
+        LinkedList<Resource> matches = candidates.get(identity);
+        if (matches == null) {
+          matches = new LinkedList<Resource>();
+          candidates.put(identity, matches);
+        }
+        matches.add(child);
+      }
+
+    final List<Resource> merged = new ArrayList<Resource>(refreshed.size());
+    for (Resource child : refreshed) {
+      final Object identity = identity(child);
+      final LinkedList<Resource> matches = candidates.get(identity);
+      Resource match = null;
+      if (matches != null)
+        if (identity instanceof String) {
+          match = matches.removeFirst();
+          merge(match, child);
+        } else
+          for (Iterator<Resource> iter = matches.iterator(); iter.hasNext();) {
+            final Resource candidate = iter.next();
+            if (contentEquals(candidate, child)) {
+              iter.remove();
+              rebaseRaw(candidate, child);
+              match = candidate;
+              break;
+            }
+          }
+      if (matches != null && matches.isEmpty())
+        candidates.remove(identity);
+      if (match == null) {
+        added.add(child);
+        match = child;
+      }
+      merged.add(match);
+    }
+    for (List<Resource> unmatched : candidates.values())
+      removed.addAll(unmatched);
+    return merged;
+  }
+
+  /**
+   * Get resources that were added
+   *
+   * @return non-null but possibly empty list of resources
+   */
+  public List<Resource> getAdded() {
+    return Collections.unmodifiableList(added);
+  }
+
+  /**
+   * Get resources that were removed
+   *
+   * @return non-null but possibly empty list of resources
+   */
+  public List<Resource> getRemoved() {
+    return Collections.unmodifiableList(removed);
+  }
+
+  /**
+   * Get resources with changed properties or links
+   * <p>
+   * Modified resources are the existing instances updated in place.
+   *
+   * @return non-null but possibly empty list of resources
+   */
+  public List<Resource> getModified() {
+    return Collections.unmodifiableList(modified);
+  }
+
+  /**
+   * Were no changes found?
+   *
+   * @return true if nothing was added, removed, or modified
+   */
+  public boolean isEmpty() {
+    return added.isEmpty() && removed.isEmpty() && modified.isEmpty();
+  }
+
+  @Override
+  public String toString() {
+    return "added=" + added.size() + ", removed=" + removed.size()
+        + ", modified=" + modified.size();
+  }
+}
@@ -0,0 +1,348 @@
+/*
+ * Copyright (c) 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package com.github.kevinsawicki.halligan;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Collector of embedded resource properties into primitive arrays
+ * <p>
+ * Each requested property path is collected into its own column with one
+ * value per resource. Paths are compiled once into a {@link ResourcePath}
+ * when the column is added. Columns grow in fixed size chunks as resources are
+ * added and are copied into a single contiguous array when requested.
+ * <p>
+ * Missing values are stored as -1 in long and double columns, matching
+ * {@link Resource#getLong(String)} and {@link Resource#getDouble(String)},
+ * and as -1 identifiers in string columns. Since -1 is also a legal value,
+ * every column records which rows have a value; use
+ * {@link #isPresent(String, int)} or {@link #getPresent(String)} to skip
+ * missing values when aggregating a column.
+ * <p>
+ * This class is not thread-safe.
+ */
+public class ColumnCollector {
+
+  private static final int CHUNK_SIZE = 4096;
+
+  private static abstract class Column {
+
+    final ResourcePath path;
+
+    final BitSet present = new BitSet();
+
+    Column(final String path) {
+      this.path = ResourcePath.compile(path);
+    }
+
+    abstract void add(Object value, int index);
+  }
+
+  private static class LongColumn extends Column {
+
+    final List<long[]> chunks = new ArrayList<long[]>();
+
+    LongColumn(final String path) {
+      super(path);
+    }
+
+    void add(final Object value, final int index) {
+      if (index % CHUNK_SIZE == 0)
+        chunks.add(new long[CHUNK_SIZE]);
+      final long[] chunk = chunks.get(index / CHUNK_SIZE);
+      if (value instanceof Number) {
+        chunk[index % CHUNK_SIZE] = ((Number) value).longValue();
+        present.set(index);
+      } else
+        chunk[index % CHUNK_SIZE] = -1;
+    }
+
+    long[] toArray(final int size) {
+      final long[] values = new long[size];
+      for (int i = 0, offset = 0; offset < size; i++, offset += CHUNK_SIZE)
+        System.arraycopy(chunks.get(i), 0, values, offset,
+            Math.min(CHUNK_SIZE, size - offset));
+      return values;
+    }
+  }
+
+  private static class DoubleColumn extends Column {
+
+    final List<double[]> chunks = new ArrayList<double[]>();
+
+    DoubleColumn(final String path) {
+      super(path);
+    }
+
+    void add(final Object value, final int index) {
+      if (index % CHUNK_SIZE == 0)
+        chunks.add(new double[CHUNK_SIZE]);
+      final double[] chunk = chunks.get(index / CHUNK_SIZE);
+      if (value instanceof Number) {
+        chunk[index % CHUNK_SIZE] = ((Number) value).doubleValue();
+        present.set(index);
+      } else
+        chunk[index % CHUNK_SIZE] = -1;
+    }
+
+    double[] toArray(final int size) {
+      final double[] values = new double[size];
+      for (int i = 0, offset = 0; offset < size; i++, offset += CHUNK_SIZE)
+        System.arraycopy(chunks.get(i), 0, values, offset,
+            Math.min(CHUNK_SIZE, size - offset));
+      return values;
+    }
+  }
+
+  private static class StringColumn extends Column {
+
+    final List<int[]> chunks = new ArrayList<int[]>();
+
+    final StringDictionary dictionary = new StringDictionary();
+
+    StringColumn(final String path) {
+      super(path);
+    }
+
+    void add(final Object value, final int index) {
+      if (index % CHUNK_SIZE == 0)
+        chunks.add(new int[CHUNK_SIZE]);
+      int id = -1;
+      if (value != null) {
+        id = dictionary.add(value.toString());
+        present.set(index);
+      }
+      chunks.get(index / CHUNK_SIZE)[index % CHUNK_SIZE] = id;
+    }
+
+    int[] toArray(final int size) {
+      final int[] values = new int[size];
+      for (int i = 0, offset = 0; offset < size; i++, offset += CHUNK_SIZE)
+        System.arraycopy(chunks.get(i), 0, values, offset,
+            Math.min(CHUNK_SIZE, size - offset));
+      return values;
+    }
+  }
+
+  private final String name;
+
+  private final Map<String, Column> columns = new LinkedHashMap<String, Column>();
+
+  private int size;
+
+  /**
+   * Create collector of resources embedded with the given name
+   *
+   * @param name
+   */
+  public ColumnCollector(final String name) {
+    this.name = name;
+  }
+
+  private ColumnCollector addColumn(final String path, final Column column) {
+    if (size > 0)
+      throw new IllegalStateException(
+          "Columns must be added before collecting resources");
+    if (columns.containsKey(path))
+      throw new IllegalArgumentException("Path already collected: " + path);
+    columns.put(path, column);
+    return this;
+  }
+
+  private <C extends Column> C getColumn(final String path,
+      final Class<C> type) {
+    final Column column = columns.get(path);
+    if (!type.isInstance(column))
+      throw new IllegalArgumentException("No " + type.getSimpleName()
+          + " for path: " + path);
+    return type.cast(column);
+  }
+
+  /**
+   * Collect values of property path as longs
+   *
+   * @param path
+   * @return this collector
+   */
+  public ColumnCollector longColumn(final String path) {
+    return addColumn(path, new LongColumn(path));
+  }
+
+  /**
+   * Collect values of property path as doubles
+   *
+   * @param path
+   * @return this collector
+   */
+  public ColumnCollector doubleColumn(final String path) {
+    return addColumn(path, new DoubleColumn(path));
+  }
+
+  /**
+   * Collect values of property path as dictionary encoded strings
+   *
+   * @param path
+   * @return this collector
+   */
+  public ColumnCollector stringColumn(final String path) {
+    return addColumn(path, new StringColumn(path));
+  }
+
+  /**
+   * Add values of resource to each column
+   *
+   * @param resource
+   * @return this collector
+   */
+  public ColumnCollector add(final Resource resource) {
+    for (Column column : columns.values())
+      column.add(column.path.getValue(resource), size);
+    size++;
+    return this;
+  }
+
+  /**
+   * Add all resources embedded in the given resource and all pages that
+   * follow it
+   * <p>
+   * Only the collected values are kept, so columns can be built from a
+   * crawl of more resources than would fit on the heap as parsed pages.
+   *
+   * @param resource
+   * @return this collector
+   * @throws IOException
+   */
+  public ColumnCollector collect(final Resource resource) throws IOException {
+    ResourceIterator.visitEmbedded(resource, name,
+        new ResourceIterator.Visitor() {
+
+          public void visit(final Resource item) {
+            add(item);
+          }
+        });
+    return this;
+  }
+
+  /**
+   * Get number of resources collected
+   *
+   * @return size
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Get collected property paths
+   *
+   * @return non-null but possibly empty set of paths
+   */
+  public Set<String> getPaths() {
+    return Collections.unmodifiableSet(columns.keySet());
+  }
+
+  /**
+   * Does the given row have a value in the column?
+   *
+   * @param path
+   * @param row
+   * @return true if present, false if the value was missing
+   */
+  public boolean isPresent(final String path, final int row) {
+    if (row < 0 || row >= size)
+      throw new IndexOutOfBoundsException("Row: " + row + ", size: " + size);
+    return getColumn(path, Column.class).present.get(row);
+  }
+
+  /**
+   * Get rows that have a value in the column
+   *
+   * @param path
+   * @return copy of the set of rows with a value
+   */
+  public BitSet getPresent(final String path) {
+    return (BitSet) getColumn(path, Column.class).present.clone();
+  }
+
+  /**
+   * Get values of long column
+   *
+   * @param path
+   * @return array with one value per resource
+   */
+  public long[] getLongs(final String path) {
+    return getColumn(path, LongColumn.class).toArray(size);
+  }
+
+  /**
+   * Get values of double column
+   *
+   * @param path
+   * @return array with one value per resource
+   */
+  public double[] getDoubles(final String path) {
+    return getColumn(path, DoubleColumn.class).toArray(size);
+  }
+
+  /**
+   * Get dictionary identifiers of string column
+   *
+   * @param path
+   * @return array with one identifier per resource
+   */
+  public int[] getStringIds(final String path) {
+    return getColumn(path, StringColumn.class).toArray(size);
+  }
+
+  /**
+   * Get dictionary of string column indexed by identifier
+   *
+   * @param path
+   * @return distinct values in the order they were collected
+   */
+  public String[] getDictionary(final String path) {
+    return getColumn(path, StringColumn.class).dictionary.toArray();
+  }
+
+  /**
+   * Get values of string column
+   *
+   * @param path
+   * @return array with one value per resource
+   */
+  public String[] getStrings(final String path) {
+    final StringColumn column = getColumn(path, StringColumn.class);
+    final int[] ids = column.toArray(size);
+    final String[] values = new String[size];
+    for (int i = 0; i < size; i++)
+      if (ids[i] != -1)
+        values[i] = column.dictionary.get(ids[i]);
+    return values;
+  }
+}
@@ -0,0 +1,401 @@
+/*
+ * Copyright (c) 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package com.github.kevinsawicki.halligan;
+
+import java.io.InterruptedIOException;
+import java.util.LinkedList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limiter of concurrent requests per host that adapts each host's limit to the
+ * observed latency and error rate
+ * <p>
+ * Limits grow additively while responses arrive within a tolerance of the
+ * host's baseline latency and shrink multiplicatively when responses slow
+ * down or fail. The baseline is the fastest latency seen within the last one
+ * to two baseline windows, so a single unusually fast response stops
+ * counting once its window has passed. A limit shrinks at most once per
+ * round trip: only requests started after the last decrease can shrink it
+ * again. Requests waiting for a permit are queued per host and granted
+ * permits in the order they arrived.
+ */
+public class ConcurrencyLimiter {
+
+  /**
+   * Permit to make a request to a host
+   */
+  public static class Permit {
+
+    private final HostLimit limit;
+
+    private final long start = System.nanoTime();
+
+    private boolean released;
+
+    private Permit(final HostLimit limit) {
+      this.limit = limit;
+    }
+  }
+
+  private static class Waiter {
+
+    private final Condition condition;
+
+    private boolean granted;
+
+    private Waiter(final Condition condition) {
+      this.condition = condition;
+    }
+  }
+
+  private class HostLimit {
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final LinkedList<Waiter> waiters = new LinkedList<Waiter>();
+
+    private double limit = initialLimit;
+
+    private long windowMin = Long.MAX_VALUE;
+
+    private long previousMin = Long.MAX_VALUE;
+
+    private long windowStart = System.nanoTime();
+
+    private long lastDecrease = windowStart;
+
+    private int inFlight;
+
+    private Permit acquire(long timeout) throws InterruptedIOException {
+      lock.lock();
+      try {
+        if (waiters.isEmpty() && inFlight < (int) limit) {
+          inFlight++;
+          return new Permit(this);
+        }
+        Waiter waiter = new Waiter(lock.newCondition());
+        waiters.addLast(waiter);
+        try {
+          while (!waiter.granted)
+            if (timeout < 0)
+              waiter.condition.await();
+            else if (timeout > 0)
+              timeout = Math.max(0, waiter.condition.awaitNanos(timeout));
+            else {
+              waiters.remove(waiter);
+              throw new InterruptedIOException("Timed out waiting for permit");
+            }
+        } catch (InterruptedException e) {
+          if (waiter.granted)
+            release(0, -1, true);
+          else
+            waiters.remove(waiter);
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException("Interrupted waiting for permit");
+        }
+        return new Permit(this);
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    private void release(final long start, final long latency,
+        final boolean success) {
+      lock.lock();
+      try {
+        if (latency >= 0)
+          adjust(start, latency, success);
+        inFlight--;
+        while (!waiters.isEmpty() && inFlight < (int) limit) {
+          Waiter waiter = waiters.removeFirst();
+          waiter.granted = true;
+          inFlight++;
+          waiter.condition.signal();
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    private long baseline(final long latency) {
+      final long now = System.nanoTime();
+      final long elapsed = now - windowStart;
+      if (elapsed >= baselineWindow) {
+        previousMin = elapsed < 2 * baselineWindow ? windowMin
+            : Long.MAX_VALUE;
+        windowMin = Long.MAX_VALUE;
+        windowStart = now;
+      }
+      if (latency < windowMin)
+        windowMin = latency;
+      return Math.min(windowMin, previousMin);
+    }
+
+    private void decrease(final long start, final double backoff) {
+      if (start - lastDecrease < 0)
+        return;
+      limit = Math.max(minLimit, limit * backoff);
+      lastDecrease = System.nanoTime();
+    }
+
+    private void adjust(final long start, final long latency,
+        final boolean success) {
+      if (!success) {
+        decrease(start, errorBackoff);
+        return;
+      }
+      if (latency > baseline(latency) * tolerance)
+        decrease(start, latencyBackoff);
+      else if (inFlight * 2 >= limit)
+        limit = Math.min(maxLimit, limit + 1 / limit);
+    }
+
+    private int getWaiting() {
+      lock.lock();
+      try {
+        return waiters.size();
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    private int getLimit() {
+      lock.lock();
+      try {
+        return (int) limit;
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  /**
+   * Get the host and port of the given URL
+   *
+   * @param url
+   * @return host
+   */
+  static String getHost(final String url) {
+    int start = url.indexOf("://");
+    start = start != -1 ? start + 3 : 0;
+    int end = url.length();
+    for (int i = start; i < end; i++) {
+      char c = url.charAt(i);
+      if (c == '/' || c == '?' || c == '#') {
+        end = i;
+        break;
+      }
+    }
+    return url.substring(start, end);
+  }
+
+  private final ConcurrentMap<String, HostLimit> limits = new ConcurrentHashMap<String, HostLimit>();
+
+  private final int initialLimit;
+
+  private final int minLimit;
+
+  private final int maxLimit;
+
+  private double tolerance = 2;
+
+  private double latencyBackoff = 0.9;
+
+  private double errorBackoff = 0.5;
+
+  private long baselineWindow = TimeUnit.SECONDS.toNanos(10);
+
+  /**
+   * Create limiter starting at 4 concurrent requests per host and adapting
+   * between 1 and 256
+   */
+  public ConcurrencyLimiter() {
+    this(4, 1, 256);
+  }
+
+  /**
+   * Create limiter with given initial, minimum and maximum concurrent requests
+   * per host
+   *
+   * @param initialLimit
+   * @param minLimit
+   * @param maxLimit
+   */
+  public ConcurrencyLimiter(final int initialLimit, final int minLimit,
+      final int maxLimit) {
+    if (minLimit < 1 || initialLimit < minLimit || maxLimit < initialLimit)
+      throw new IllegalArgumentException("Invalid limits");
+    this.initialLimit = initialLimit;
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+  }
+
+  /**
+   * Set the multiple of the baseline latency above which responses are
+   * considered slow
+   *
+   * @param tolerance
+   * @return this limiter
+   */
+  public ConcurrencyLimiter tolerance(final double tolerance) {
+    if (tolerance < 1)
+      throw new IllegalArgumentException("Tolerance must be at least 1");
+    this.tolerance = tolerance;
+    return this;
+  }
+
+  /**
+   * Set how long the fastest latency in a window is used as the baseline
+   * <p>
+   * The baseline is the fastest latency of the current and the previous
+   * window.
+   *
+   * @param window
+   * @param unit
+   * @return this limiter
+   */
+  public ConcurrencyLimiter baselineWindow(final long window,
+      final TimeUnit unit) {
+    if (window <= 0)
+      throw new IllegalArgumentException("Window must be greater than zero");
+    baselineWindow = unit.toNanos(window);
+    return this;
+  }
+
+  /**
+   * Set the factors the limit is multiplied by after slow and failed responses
+   *
+   * @param latencyBackoff
+   * @param errorBackoff
+   * @return this limiter
+   */
+  public ConcurrencyLimiter backoff(final double latencyBackoff,
+      final double errorBackoff) {
+    if (latencyBackoff <= 0 || latencyBackoff > 1 || errorBackoff <= 0
+        || errorBackoff > 1)
+      throw new IllegalArgumentException("Backoff must be between 0 and 1");
+    this.latencyBackoff = latencyBackoff;
+    this.errorBackoff = errorBackoff;
+    return this;
+  }
+
+  private HostLimit getHostLimit(final String host) {
+    HostLimit limit = limits.get(host);
+    if (limit == null) {
+      limit = new HostLimit();
+      HostLimit existing = limits.putIfAbsent(host, limit);
+      if (existing != null)
+        limit = existing;
+    }
+    return limit;
+  }
+
+  /**
+   * Get the current limit of concurrent requests to the given host
+   *
+   * @param host
+   * @return limit
+   */
+  public int getLimit(final String host) {
+    HostLimit limit = limits.get(host);
+    return limit != null ? limit.getLimit() : initialLimit;
+  }
+
+  /**
+   * Get the number of requests waiting for a permit to the given host
+   *
+   * @param host
+   * @return number of waiting requests
+   */
+  public int getWaiting(final String host) {
+    HostLimit limit = limits.get(host);
+    return limit != null ? limit.getWaiting() : 0;
+  }
+
+  /**
+   * Wait for a permit to make a request to the given host
+   *
+   * @param host
+   * @return permit that must be released
+   * @throws InterruptedIOException
+   */
+  public Permit acquire(final String host) throws InterruptedIOException {
+    return getHostLimit(host).acquire(-1);
+  }
+
+  /**
+   * Wait up to the given timeout for a permit to make a request to the given
+   * host
+   *
+   * @param host
+   * @param timeout
+   * @param unit
+   * @return permit that must be released
+   * @throws InterruptedIOException
+   *           if interrupted or no permit was granted before the timeout
+   */
+  public Permit acquire(final String host, final long timeout,
+      final TimeUnit unit) throws InterruptedIOException {
+    return getHostLimit(host).acquire(Math.max(0, unit.toNanos(timeout)));
+  }
+
+  /**
+   * Release permit after the request completed
+   *
+   * @param permit
+   * @param success
+   *          false if the request failed or the host reported being overloaded
+   */
+  public void release(final Permit permit, final boolean success) {
+    release(permit, System.nanoTime() - permit.start, success);
+  }
+
+  /**
+   * Release permit for a request that was never made
+   *
+   * @param permit
+   */
+  void cancel(final Permit permit) {
+    release(permit, -1, true);
+  }
+
+  /**
+   * Release permit after a request with the given latency completed
+   *
+   * @param permit
+   * @param latency
+   *          in nanoseconds
+   * @param success
+   */
+  void release(final Permit permit, final long latency, final boolean success) {
+    synchronized (permit) {
+      if (permit.released)
+        return;
+      permit.released = true;
+    }
+    permit.limit.release(permit.start, latency, success);
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package com.github.kevinsawicki.halligan;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Point in time by which a chain of requests must complete
+ * <p>
+ * A deadline is attached to a {@link RequestPolicy} using
+ * {@link RequestPolicy#withDeadline(Deadline)} and then applies to every
+ * resource requested with that policy, including linked, next, and bulk loaded
+ * resources. Timeouts of each request are reduced to the time remaining and
+ * requests are no longer started once the deadline has passed.
+ * <p>
+ * The deadline is also checked each time more of a response body is read or
+ * decoded for the parser, so a body that trickles in fails with an
+ * {@link InterruptedIOException} instead of running past the deadline. A
+ * single blocking read is still only bounded by the read timeout.
+ */
+public class Deadline {
+
+  /**
+   * Create deadline the given duration from now
+   *
+   * @param duration
+   * @param unit
+   * @return deadline
+   */
+  public static Deadline after(final long duration, final TimeUnit unit) {
+    return new Deadline(System.nanoTime() + unit.toNanos(duration));
+  }
+
+  private final long nanoTime;
+
+  private Deadline(final long nanoTime) {
+    this.nanoTime = nanoTime;
+  }
+
+  /**
+   * Get time remaining until this deadline
+   *
+   * @param unit
+   * @return time remaining, zero or negative if the deadline has passed
+   */
+  public long remaining(final TimeUnit unit) {
+    return unit.convert(nanoTime - System.nanoTime(), NANOSECONDS);
+  }
+
+  /**
+   * Has this deadline passed?
+   *
+   * @return true if passed, false otherwise
+   */
+  public boolean isExpired() {
+    return nanoTime - System.nanoTime() <= 0;
+  }
+
+  /**
+   * Throw an exception if this deadline has passed
+   *
+   * @throws InterruptedIOException
+   */
+  void check() throws InterruptedIOException {
+    if (isExpired())
+      throw new InterruptedIOException("Deadline exceeded");
+  }
+
+  /**
+   * Get the given timeout reduced to the time remaining
+   *
+   * @param timeout
+   *          in milliseconds, 0 for no timeout
+   * @return timeout in milliseconds
+   * @throws InterruptedIOException
+   *           if less than a millisecond remains
+   */
+  int timeout(final int timeout) throws InterruptedIOException {
+    long remaining = remaining(TimeUnit.MILLISECONDS);
+    if (remaining < 1)
+      throw new InterruptedIOException("Deadline exceeded");
+    if (timeout > 0 && timeout < remaining)
+      return timeout;
+    return (int) Math.min(Integer.MAX_VALUE, remaining);
+  }
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package com.github.kevinsawicki.halligan;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+
+/**
+ * Reader that decodes bytes directly into the caller's char buffer using
+ * buffers and a decoder taken from the {@link BufferPool}
+ * <p>
+ * This replaces an {@link java.io.InputStreamReader} wrapped in a
+ * {@link java.io.BufferedReader}, both of which allocate their own buffers,
+ * since {@link com.google.gson.stream.JsonReader} already buffers its input.
+ * Pooled items are released when the reader is closed.
+ */
+class DecodingReader extends Reader {
+
+  private final InputStream stream;
+
+  private final CharsetDecoder decoder;
+
+  private final ByteBuffer bytes;
+
+  private final byte[] pooled;
+
+  private final BufferPool.Body body;
+
+  private char[] lastArray;
+
+  private CharBuffer lastBuffer;
+
+  private char[] pair;
+
+  private boolean hasLeftover;
+
+  private char leftover;
+
+  private boolean eof;
+
+  private boolean finished;
+
+  private boolean closed;
+
+  private long bytesRead;
+
+  private Deadline deadline;
+
+  /**
+   * Look up charset by name
+   *
+   * @param name
+   * @return charset
+   * @throws UnsupportedEncodingException
+   *           if the name is illegal or the charset isn't supported
+   */
+  static Charset charset(final String name)
+      throws UnsupportedEncodingException {
+    try {
+      return Charset.forName(name);
+    } catch (IllegalArgumentException e) {
+      UnsupportedEncodingException exception = new UnsupportedEncodingException(
+          name);
+      exception.initCause(e);
+      throw exception;
+    }
+  }
+
+  /**
+   * Create reader over stream
+   *
+   * @param stream
+   * @param charset
+   * @param bufferSize
+   *          minimum size of the byte buffer
+   */
+  DecodingReader(final InputStream stream, final Charset charset,
+      final int bufferSize) {
+    this.stream = stream;
+    decoder = BufferPool.takeDecoder(charset);
+    pooled = BufferPool.takeBytes(bufferSize);
+    bytes = ByteBuffer.wrap(pooled);
+    bytes.limit(0);
+    body = null;
+  }
+
+  /**
+   * Create reader over bytes
+   *
+   * @param source
+   * @param charset
+   */
+  DecodingReader(final ByteBuffer source, final Charset charset) {
+    this(source, charset, null);
+  }
+
+  /**
+   * Create reader over body that releases the body when closed
+   *
+   * @param body
+   * @param charset
+   */
+  DecodingReader(final BufferPool.Body body, final Charset charset) {
+    this(ByteBuffer.wrap(body.array(), 0, body.size()), charset, body);
+  }
+
+  private DecodingReader(final ByteBuffer source, final Charset charset,
+      final BufferPool.Body body) {
+    stream = null;
+    decoder = BufferPool.takeDecoder(charset);
+    pooled = null;
+    bytes = source;
+    this.body = body;
+    eof = true;
+  }
+
+  private CharBuffer wrap(final char[] array, final int offset,
+      final int length) {
+    if (array != lastArray) {
+      lastArray = array;
+      lastBuffer = CharBuffer.wrap(array);
+    }
+    lastBuffer.limit(offset + length);
+    lastBuffer.position(offset);
+    return lastBuffer;
+  }
+
+  private boolean fill() throws IOException {
+    if (stream == null)
+      return false;
+    bytes.compact();
+    try {
+      final int read = stream.read(pooled, bytes.position(), bytes.remaining());
+      if (read > 0) {
+        bytes.position(bytes.position() + read);
+        bytesRead += read;
+      }
+      return read != -1;
+    } finally {
+      bytes.flip();
+    }
+  }
+
+  private int decode(final char[] buffer, final int offset, final int length)
+      throws IOException {
+    final CharBuffer out = wrap(buffer, offset, length);
+    while (out.position() == offset && !finished) {
+      final CoderResult result = decoder.decode(bytes, out, eof);
+      if (result.isError())
+        result.throwException();
+      if (result.isOverflow())
+        break;
+      if (eof) {
+        decoder.flush(out);
+        finished = true;
+      } else if (!fill())
+        eof = true;
+    }
+    final int read = out.position() - offset;
+    return read == 0 && finished ? -1 : read;
+  }
+
+  /**
+   * Set deadline checked before each read
+   *
+   * @param deadline
+   *          or null if none
+   */
+  void setDeadline(final Deadline deadline) {
+    this.deadline = deadline;
+  }
+
+  /**
+   * Get number of bytes read from the stream so far
+   *
+   * @return byte count or 0 when reading from a buffer
+   */
+  long getBytesRead() {
+    return bytesRead;
+  }
+
+  @Override
+  public int read(final char[] buffer, final int offset, final int length)
+      throws IOException {
+    if (closed)
+      throw new IOException("Reader closed");
+    if (deadline != null)
+      deadline.check();
+    if (length == 0)
+      return 0;
+    if (hasLeftover) {
+      hasLeftover = false;
+      buffer[offset] = leftover;
+      return 1;
+    }
+    if (length > 1)
+      return decode(buffer, offset, length);
+
+    // Decode into a pair so a surrogate pair can be split across reads
+    if (pair == null)
+      pair = new char[2];
+    final int read = decode(pair, 0, 2);
+    if (read == -1)
+      return -1;
+    buffer[offset] = pair[0];
+    if (read == 2) {
+      leftover = pair[1];
+      hasLeftover = true;
+    }
+    return 1;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed)
+      return;
+    closed = true;
+    BufferPool.release(decoder);
+    if (pooled != null)
+      BufferPool.release(pooled);
+    if (body != null)
+      BufferPool.release(body);
+    if (stream != null)
+      stream.close();
+  }
+}
@@ -44,7 +44,7 @@ public class DefaultGsonFactory implements GsonFactory, JsonDeserializer<Link> {
    */
   public static final DefaultGsonFactory GSON_FACTORY = new DefaultGsonFactory();
 
-  private transient Gson gson;
+  private transient volatile Gson gson;
 
   /**
    * Create default builder
@@ -55,10 +55,23 @@ public class DefaultGsonFactory implements GsonFactory, JsonDeserializer<Link> {
     return new GsonBuilder().registerTypeAdapter(Link.class, this);
   }
 
+  /**
+   * Get shared {@link Gson} instance
+   * <p>
+   * The instance is created once on first use and safely published to all
+   * threads.
+   *
+   * @return gson
+   */
   public Gson getGson() {
-    if (gson == null)
-      gson = createBuilder().create();
-    return gson;
+    Gson current = gson;
+    if (current == null)
+      synchronized (this) {
+        current = gson;
+        if (current == null)
+          gson = current = createBuilder().create();
+      }
+    return current;
   }
 
   public Link deserialize(JsonElement json, Type typeOfT,
@@ -0,0 +1,726 @@
+/*
+ * Copyright (c) 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package com.github.kevinsawicki.halligan;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persistent cache of HAL responses stored in append-only segment files
+ * <p>
+ * Each response body is stored with its status code, charset, and the
+ * validators needed to make conditional requests. An in-memory index maps
+ * each URI to its latest record and is rebuilt by scanning the segment files
+ * when a cache is opened, so cached responses survive restarts. Bodies are
+ * read through memory-mapped segments without copying them onto the heap.
+ * <p>
+ * Replaced and removed records are reclaimed by compacting segments in the
+ * background once they are mostly garbage. Entries obtained before their
+ * segment was compacted remain readable: the segment's mapping is retained
+ * until the last entry referring to it is garbage collected.
+ * <p>
+ * A cache is used when loading resources by configuring it on a
+ * {@link RequestPolicy} with {@link RequestPolicy#cache(DiskCache)}.
+ */
+public class DiskCache implements Closeable {
+
+  /**
+   * Cached response
+   */
+  public static class Entry {
+
+    private final Segment segment;
+
+    private final int recordOffset;
+
+    private final int recordLength;
+
+    private final int bodyOffset;
+
+    private final int bodyLength;
+
+    private final int code;
+
+    private final long stored;
+
+    private final long lastModified;
+
+    private final String etag;
+
+    private final String charset;
+
+    private Entry(final Segment segment, final int recordOffset,
+        final int recordLength, final int bodyOffset, final int bodyLength,
+        final int code, final long stored, final long lastModified,
+        final String etag, final String charset) {
+      this.segment = segment;
+      this.recordOffset = recordOffset;
+      this.recordLength = recordLength;
+      this.bodyOffset = bodyOffset;
+      this.bodyLength = bodyLength;
+      this.code = code;
+      this.stored = stored;
+      this.lastModified = lastModified;
+      this.etag = etag;
+      this.charset = charset;
+    }
+
+    /**
+     * Get HTTP status code of the cached response
+     *
+     * @return code
+     */
+    public int code() {
+      return code;
+    }
+
+    /**
+     * Get ETag of the cached response
+     *
+     * @return ETag or null if none
+     */
+    public String getETag() {
+      return etag;
+    }
+
+    /**
+     * Get Last-Modified time of the cached response
+     *
+     * @return time in milliseconds or 0 if none
+     */
+    public long getLastModified() {
+      return lastModified;
+    }
+
+    /**
+     * Get time the response was stored
+     *
+     * @return time in milliseconds
+     */
+    public long getStored() {
+      return stored;
+    }
+
+    /**
+     * Get charset of the cached response body
+     *
+     * @return charset
+     */
+    public String getCharset() {
+      return charset;
+    }
+
+    /**
+     * Get length of the cached response body
+     *
+     * @return length in bytes
+     */
+    public int getLength() {
+      return bodyLength;
+    }
+
+    /**
+     * Get read-only view of the cached response body
+     *
+     * @return buffer
+     * @throws IOException
+     */
+    public ByteBuffer getBody() throws IOException {
+      return segment.slice(bodyOffset, bodyLength);
+    }
+
+    /**
+     * Open stream over the cached response body
+     *
+     * @return stream
+     * @throws IOException
+     */
+    public InputStream openBody() throws IOException {
+      final ByteBuffer body = getBody();
+      return new InputStream() {
+
+        public int read() {
+          return body.hasRemaining() ? body.get() & 0xFF : -1;
+        }
+
+        public int read(final byte[] buffer, final int offset,
+            final int length) {
+          if (length == 0)
+            return 0;
+          if (!body.hasRemaining())
+            return -1;
+          int read = Math.min(length, body.remaining());
+          body.get(buffer, offset, read);
+          return read;
+        }
+
+        public int available() {
+          return body.remaining();
+        }
+      };
+    }
+  }
+
+  private static class Segment {
+
+    private final int id;
+
+    private final File file;
+
+    private final RandomAccessFile access;
+
+    private final FileChannel channel;
+
+    private volatile MappedByteBuffer map;
+
+    private volatile int size;
+
+    private int live;
+
+    private volatile boolean retired;
+
+    private Segment(final int id, final File file) throws IOException {
+      this.id = id;
+      this.file = file;
+      access = new RandomAccessFile(file, "rw");
+      channel = access.getChannel();
+      size = (int) channel.size();
+    }
+
+    private ByteBuffer slice(final int offset, final int length)
+        throws IOException {
+      MappedByteBuffer mapped = map;
+      if (mapped == null || mapped.capacity() < offset + length)
+        synchronized (this) {
+          mapped = map;
+          if (mapped == null || mapped.capacity() < offset + length) {
+            if (retired)
+              throw new IOException("Segment was compacted: " + file);
+            mapped = channel.map(MapMode.READ_ONLY, 0, size);
+            map = mapped;
+          }
+        }
+      ByteBuffer slice = mapped.duplicate();
+      slice.limit(offset + length);
+      slice.position(offset);
+      return slice.slice();
+    }
+
+    private void append(final ByteBuffer record) throws IOException {
+      int position = size;
+      while (record.hasRemaining())
+        position += channel.write(record, position);
+      size = position;
+    }
+
+    /**
+     * Close segment's file while keeping a mapping of its complete contents
+     * for entries that still refer to it
+     * <p>
+     * A mapping stays valid after its channel is closed and is released when
+     * this segment is no longer reachable.
+     *
+     * @throws IOException
+     */
+    private synchronized void retire() throws IOException {
+      if (size > 0 && (map == null || map.capacity() < size))
+        map = channel.map(MapMode.READ_ONLY, 0, size);
+      retired = true;
+      access.close();
+    }
+
+    private void close() throws IOException {
+      map = null;
+      access.close();
+    }
+  }
+
+  private static final int MAGIC = 0x48434331;
+
+  private static final byte PUT = 1;
+
+  private static final byte REMOVE = 2;
+
+  private static final int HEADER_LENGTH = 4 + 1 + 4;
+
+  private static final String CHARSET = "UTF-8";
+
+  private static final String PREFIX = "segment-";
+
+  private static final String SUFFIX = ".dat";
+
+  private static byte[] getBytes(final String value)
+      throws UnsupportedEncodingException {
+    return value != null ? value.getBytes(CHARSET) : null;
+  }
+
+  private static int getLength(final byte[] bytes) {
+    return 4 + (bytes != null ? bytes.length : 0);
+  }
+
+  private static void putBytes(final ByteBuffer buffer, final byte[] bytes) {
+    if (bytes != null) {
+      buffer.putInt(bytes.length);
+      buffer.put(bytes);
+    } else
+      buffer.putInt(-1);
+  }
+
+  private static String getString(final ByteBuffer buffer)
+      throws IOException {
+    int length = buffer.getInt();
+    if (length == -1)
+      return null;
+    if (length < 0 || length > buffer.remaining())
+      throw new IOException("Invalid string length: " + length);
+    byte[] bytes = new byte[length];
+    buffer.get(bytes);
+    return new String(bytes, CHARSET);
+  }
+
+  private final Map<String, Entry> index = new ConcurrentHashMap<String, Entry>();
+
+  private final Map<Integer, Segment> segments = new ConcurrentHashMap<Integer, Segment>();
+
+  private final File directory;
+
+  private final int segmentSize;
+
+  private final ExecutorService compactor = Executors
+      .newSingleThreadExecutor(new DaemonThreadFactory("halligan-cache"));
+
+  private final Object compactLock = new Object();
+
+  private Segment active;
+
+  private long maxAge;
+
+  private boolean compacting;
+
+  private final List<File> pendingDeletes = new ArrayList<File>();
+
+  /**
+   * Open cache in the given directory using 64 MB segments
+   *
+   * @param directory
+   * @throws IOException
+   */
+  public DiskCache(final File directory) throws IOException {
+    this(directory, 64 * 1024 * 1024);
+  }
+
+  /**
+   * Open cache in the given directory using segments of the given size
+   *
+   * @param directory
+   * @param segmentSize
+   *          size in bytes after which a new segment is started
+   * @throws IOException
+   */
+  public DiskCache(final File directory, final int segmentSize)
+      throws IOException {
+    if (segmentSize < 1024)
+      throw new IllegalArgumentException("Segment size must be at least 1 KB");
+    if (!directory.isDirectory() && !directory.mkdirs())
+      throw new IOException("Unable to create cache directory: " + directory);
+    this.directory = directory;
+    this.segmentSize = segmentSize;
+
+    String[] names = directory.list(new FilenameFilter() {
+
+      public boolean accept(final File dir, final String name) {
+        return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+      }
+    });
+    Arrays.sort(names);
+    int lastId = 0;
+    for (String name : names) {
+      int id;
+      try {
+        id = Integer.parseInt(name.substring(PREFIX.length(), name.length()
+            - SUFFIX.length()));
+      } catch (NumberFormatException e) {
+        continue;
+      }
+      Segment segment = new Segment(id, new File(directory, name));
+      segments.put(id, segment);
+      load(segment);
+      lastId = Math.max(lastId, id);
+    }
+    active = segments.get(lastId);
+    if (active == null || active.size >= segmentSize)
+      active = createSegment(lastId + 1);
+  }
+
+  /**
+   * Serve cached responses younger than the given age without making a
+   * request
+   *
+   * @param maxAge
+   * @param unit
+   * @return this cache
+   */
+  public DiskCache maxAge(final long maxAge, final TimeUnit unit) {
+    this.maxAge = unit.toMillis(maxAge);
+    return this;
+  }
+
+  /**
+   * Get age under which cached responses are used without making a request
+   *
+   * @return age in milliseconds, 0 if responses are always revalidated
+   */
+  public long getMaxAge() {
+    return maxAge;
+  }
+
+  /**
+   * Is the given entry young enough to use without revalidating it?
+   *
+   * @param entry
+   * @return true if fresh, false otherwise
+   */
+  public boolean isFresh(final Entry entry) {
+    return maxAge > 0 && System.currentTimeMillis() - entry.stored < maxAge;
+  }
+
+  private Segment createSegment(final int id) throws IOException {
+    String name = Integer.toString(id);
+    while (name.length() < 8)
+      name = '0' + name;
+    Segment segment = new Segment(id, new File(directory, PREFIX + name
+        + SUFFIX));
+    segments.put(id, segment);
+    return segment;
+  }
+
+  private void load(final Segment segment) throws IOException {
+    int offset = 0;
+    if (segment.size > 0) {
+      ByteBuffer buffer = segment.slice(0, segment.size);
+      while (buffer.remaining() >= HEADER_LENGTH) {
+        int start = buffer.position();
+        if (buffer.getInt() != MAGIC)
+          break;
+        byte type = buffer.get();
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining())
+          break;
+        ByteBuffer record = buffer.slice();
+        record.limit(length);
+        buffer.position(buffer.position() + length);
+        try {
+          String uri = getString(record);
+          if (type == PUT)
+            index(uri, read(segment, start, record));
+          else if (type == REMOVE)
+            unindex(uri);
+        } catch (IOException e) {
+          buffer.position(start);
+          break;
+        } catch (RuntimeException e) {
+          buffer.position(start);
+          break;
+        }
+        offset = buffer.position();
+      }
+    }
+    if (offset < segment.size) {
+      segment.map = null;
+      segment.channel.truncate(offset);
+      segment.size = offset;
+    }
+  }
+
+  private Entry read(final Segment segment, final int recordOffset,
+      final ByteBuffer record) throws IOException {
+    int code = record.getInt();
+    long stored = record.getLong();
+    long lastModified = record.getLong();
+    String etag = getString(record);
+    String charset = getString(record);
+    int bodyLength = record.getInt();
+    if (bodyLength < 0 || bodyLength != record.remaining())
+      throw new IOException("Invalid body length: " + bodyLength);
+    int bodyOffset = recordOffset + HEADER_LENGTH + record.position();
+    return new Entry(segment, recordOffset, HEADER_LENGTH + record.limit(),
+        bodyOffset, bodyLength, code, stored, lastModified, etag, charset);
+  }
+
+  private void index(final String uri, final Entry entry) {
+    unindex(uri);
+    index.put(uri, entry);
+    entry.segment.live += entry.recordLength;
+  }
+
+  private void unindex(final String uri) {
+    Entry previous = index.remove(uri);
+    if (previous != null)
+      previous.segment.live -= previous.recordLength;
+  }
+
+  /**
+   * Get cached response for URI
+   *
+   * @param uri
+   * @return entry or null if none
+   */
+  public Entry get(final String uri) {
+    return index.get(uri);
+  }
+
+  /**
+   * Get number of cached responses
+   *
+   * @return count
+   */
+  public int size() {
+    return index.size();
+  }
+
+  /**
+   * Get number of segment files
+   *
+   * @return count
+   */
+  public int getSegmentCount() {
+    return segments.size();
+  }
+
+  /**
+   * Store response for URI, replacing any response previously stored for it
+   *
+   * @param uri
+   * @param code
+   * @param etag
+   * @param lastModified
+   * @param charset
+   * @param body
+   * @param offset
+   * @param length
+   * @return stored entry
+   * @throws IOException
+   */
+  public Entry put(final String uri, final int code, final String etag,
+      final long lastModified, final String charset, final byte[] body,
+      final int offset, final int length) throws IOException {
+    byte[] uriBytes = getBytes(uri);
+    byte[] etagBytes = getBytes(etag);
+    byte[] charsetBytes = getBytes(charset);
+    int recordLength = getLength(uriBytes) + 4 + 8 + 8 + getLength(etagBytes)
+        + getLength(charsetBytes) + 4 + length;
+    ByteBuffer record = ByteBuffer.allocate(HEADER_LENGTH + recordLength);
+    record.putInt(MAGIC);
+    record.put(PUT);
+    record.putInt(recordLength);
+    putBytes(record, uriBytes);
+    long stored = System.currentTimeMillis();
+    record.putInt(code);
+    record.putLong(stored);
+    record.putLong(lastModified);
+    putBytes(record, etagBytes);
+    putBytes(record, charsetBytes);
+    record.putInt(length);
+    record.put(body, offset, length);
+    record.flip();
+
+    Entry entry;
+    synchronized (this) {
+      Segment segment = prepareAppend();
+      int recordOffset = segment.size;
+      segment.append(record);
+      entry = new Entry(segment, recordOffset, record.limit(), recordOffset
+          + record.limit() - length, length, code, stored, lastModified, etag,
+          charset);
+      index(uri, entry);
+    }
+    scheduleCompaction();
+    return entry;
+  }
+
+  /**
+   * Remove cached response for URI
+   *
+   * @param uri
+   * @throws IOException
+   */
+  public void remove(final String uri) throws IOException {
+    byte[] uriBytes = getBytes(uri);
+    ByteBuffer record = ByteBuffer.allocate(HEADER_LENGTH
+        + getLength(uriBytes));
+    record.putInt(MAGIC);
+    record.put(REMOVE);
+    record.putInt(getLength(uriBytes));
+    putBytes(record, uriBytes);
+    record.flip();
+    synchronized (this) {
+      if (index.get(uri) == null)
+        return;
+      prepareAppend().append(record);
+      unindex(uri);
+    }
+    scheduleCompaction();
+  }
+
+  private Segment prepareAppend() throws IOException {
+    if (active == null)
+      throw new IOException("Cache is closed");
+    if (active.size >= segmentSize)
+      active = createSegment(active.id + 1);
+    return active;
+  }
+
+  private void scheduleCompaction() {
+    synchronized (this) {
+      if (compacting || active == null || getGarbageSegments().isEmpty())
+        return;
+      compacting = true;
+    }
+    compactor.execute(new Runnable() {
+
+      public void run() {
+        try {
+          compact();
+        } catch (IOException ignored) {
+          // Ignored, compaction will be retried after the next write
+        } finally {
+          synchronized (DiskCache.this) {
+            compacting = false;
+          }
+        }
+      }
+    });
+  }
+
+  /**
+   * Get the oldest segments that are mostly garbage
+   * <p>
+   * Only the oldest segments are compacted since removal records in a segment
+   * must be kept for as long as older segments that may contain the removed
+   * responses exist.
+   *
+   * @return segments
+   */
+  private synchronized List<Segment> getGarbageSegments() {
+    Integer[] ids = segments.keySet().toArray(new Integer[segments.size()]);
+    Arrays.sort(ids);
+    List<Segment> garbage = new ArrayList<Segment>();
+    for (Integer id : ids) {
+      Segment segment = segments.get(id);
+      if (segment == active || segment.live * 2 >= segment.size)
+        break;
+      garbage.add(segment);
+    }
+    return garbage;
+  }
+
+  /**
+   * Copy the live records out of the oldest segments that are mostly garbage
+   * and delete those segments
+   *
+   * @throws IOException
+   */
+  public void compact() throws IOException {
+    synchronized (compactLock) {
+      deletePending();
+      for (Segment segment : getGarbageSegments())
+        compact(segment);
+    }
+  }
+
+  private void compact(final Segment segment) throws IOException {
+    for (Map.Entry<String, Entry> mapping : index.entrySet()) {
+      Entry entry = mapping.getValue();
+      if (entry.segment != segment)
+        continue;
+      ByteBuffer record = segment.slice(entry.recordOffset,
+          entry.recordLength);
+      synchronized (this) {
+        if (index.get(mapping.getKey()) != entry)
+          continue;
+        Segment target = prepareAppend();
+        int offset = target.size;
+        target.append(record);
+        index(mapping.getKey(), new Entry(target, offset,
+            entry.recordLength, offset + entry.bodyOffset
+                - entry.recordOffset, entry.bodyLength, entry.code,
+            entry.stored, entry.lastModified, entry.etag, entry.charset));
+      }
+    }
+    synchronized (this) {
+      segments.remove(segment.id);
+      segment.retire();
+      if (!segment.file.delete())
+        pendingDeletes.add(segment.file);
+    }
+  }
+
+  /**
+   * Retry deleting compacted segment files that couldn't be deleted while
+   * they were mapped
+   */
+  private synchronized void deletePending() {
+    for (Iterator<File> files = pendingDeletes.iterator(); files.hasNext();)
+      if (files.next().delete())
+        files.remove();
+  }
+
+  /**
+   * Close the cache and its segment files
+   *
+   * @throws IOException
+   */
+  public void close() throws IOException {
+    compactor.shutdown();
+    try {
+      compactor.awaitTermination(10, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    synchronized (this) {
+      active = null;
+      for (Segment segment : segments.values())
+        segment.close();
+      segments.clear();
+      index.clear();
+    }
+    deletePending();
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package com.github.kevinsawicki.halligan;
+
+/**
+ * Listener of request, parse, and iteration metrics
+ * <p>
+ * All methods do nothing by default so adapters to other metrics systems
+ * only need to override the methods they record. Metrics are only collected
+ * when an instance is set with {@link RequestPolicy#metrics(HalMetrics)}.
+ * Methods may be called concurrently from many threads.
+ */
+public abstract class HalMetrics {
+
+  /**
+   * Request attempt received a response code
+   * <p>
+   * Called for every attempt including retries and hedged requests.
+   *
+   * @param url
+   * @param code
+   * @param connectNanos
+   *          time taken to connect
+   * @param firstByteNanos
+   *          time from connecting until the response code was received
+   */
+  public void requestCompleted(String url, int code, long connectNanos,
+      long firstByteNanos) {
+    // Does nothing by default
+  }
+
+  /**
+   * Document was read and parsed
+   *
+   * @param url
+   * @param bytes
+   *          size of the response body
+   * @param readNanos
+   *          time taken to read the response body
+   * @param parseNanos
+   *          time taken to parse the response body
+   * @param resources
+   *          number of resources parsed including the document itself
+   * @param links
+   *          number of links parsed
+   */
+  public void documentParsed(String url, long bytes, long readNanos,
+      long parseNanos, int resources, int links) {
+    // Does nothing by default
+  }
+
+  /**
+   * Iteration through next links reached the last page
+   *
+   * @param pages
+   *          number of pages iterated through
+   */
+  public void iterationCompleted(int pages) {
+    // Does nothing by default
+  }
+}
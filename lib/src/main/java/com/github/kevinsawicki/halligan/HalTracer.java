@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package com.github.kevinsawicki.halligan;
+
+/**
+ * Listener of spans started and ended while navigating resources
+ * <p>
+ * Spans are created when following a link, when fetching and parsing a
+ * document, and for each page requested by a {@link ResourceIterator}. Spans
+ * started while another span is active on the same thread are linked to it
+ * as their parent.
+ * <p>
+ * All methods do nothing by default. Spans are only created when an instance
+ * is set with {@link RequestPolicy#tracer(HalTracer)}. Methods may be called
+ * concurrently from many threads.
+ */
+public abstract class HalTracer {
+
+  /**
+   * Span was started
+   *
+   * @param span
+   */
+  public void spanStarted(TraceSpan span) {
+    // Does nothing by default
+  }
+
+  /**
+   * Span was ended
+   *
+   * @param span
+   */
+  public void spanEnded(TraceSpan span) {
+    // Does nothing by default
+  }
+}
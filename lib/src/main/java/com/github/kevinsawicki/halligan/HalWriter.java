@@ -0,0 +1,371 @@
+/*
+ * Copyright (c) 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package com.github.kevinsawicki.halligan;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Writer of resources as application/hal+json
+ * <p>
+ * Resources are streamed directly to a {@link JsonWriter} without building
+ * an intermediate tree. Each resource is written as its <code>_links</code>
+ * followed by its properties and then its <code>_embedded</code> resources.
+ * Link relations, property names, and embedded relations are written in
+ * sorted order with the self link first so the same resource is always
+ * written the same way. Nested map values are written in their iteration
+ * order.
+ * <p>
+ * Unmodified resources parsed with {@link RequestPolicy#retainRaw(boolean)}
+ * enabled are written by copying their original JSON text and so keep the
+ * original key order and formatting.
+ */
+public class HalWriter implements Closeable, Flushable {
+
+  private static final String[] LINK_FIELDS = new String[] { "href",
+      "hreflang", "name", "profile", "templated", "title", "type" };
+
+  /**
+   * Retained JSON text of a resource
+   * <p>
+   * {@link JsonWriter} writes the string form of a {@link Number} value
+   * unchanged, so this copies the text while the writer still places the
+   * separators around it.
+   */
+  private static class RawJson extends Number {
+
+    private static final long serialVersionUID = -5498624102316475412L;
+
+    private final Resource resource;
+
+    RawJson(final Resource resource) {
+      this.resource = resource;
+    }
+
+    public int intValue() {
+      throw new UnsupportedOperationException();
+    }
+
+    public long longValue() {
+      throw new UnsupportedOperationException();
+    }
+
+    public float floatValue() {
+      throw new UnsupportedOperationException();
+    }
+
+    public double doubleValue() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String toString() {
+      return resource.raw.substring(resource.rawStart, resource.rawEnd);
+    }
+  }
+
+  /**
+   * Write resource to a JSON string
+   *
+   * @param resource
+   * @return JSON
+   * @throws IOException
+   */
+  public static String toJson(final Resource resource) throws IOException {
+    StringWriter output = new StringWriter();
+    JsonWriter writer = new JsonWriter(output);
+    write(resource, writer);
+    writer.flush();
+    return output.toString();
+  }
+
+  /**
+   * Write resource using a {@link JsonWriter}
+   *
+   * @param resource
+   * @param writer
+   * @throws IOException
+   */
+  public static void write(final Resource resource, final JsonWriter writer)
+      throws IOException {
+    final Map<Resource, Boolean> intact = new IdentityHashMap<Resource, Boolean>();
+    findIntact(resource, intact);
+    write(resource, writer, intact);
+  }
+
+  /**
+   * Find resources whose original JSON text and that of all their embedded
+   * resources is retained and unmodified
+   *
+   * @param resource
+   * @param intact
+   * @return true if the given resource is intact, false otherwise
+   */
+  private static boolean findIntact(final Resource resource,
+      final Map<Resource, Boolean> intact) {
+    boolean children = true;
+    for (List<Resource> embedded : resource.resources.values())
+      for (Resource child : embedded)
+        if (!findIntact(child, intact))
+          children = false;
+    if (!children || resource.raw == null)
+      return false;
+    intact.put(resource, Boolean.TRUE);
+    return true;
+  }
+
+  private static void write(final Resource resource, final JsonWriter writer,
+      final Map<Resource, Boolean> intact) throws IOException {
+    if (intact.containsKey(resource)) {
+      writeRaw(resource, writer);
+      return;
+    }
+    writer.beginObject();
+    final Map<String, Link[]> arrays = resource.linkArrays();
+    String[] rels = linkRels(resource);
+    if (rels.length > 0) {
+      writer.name("_links").beginObject();
+      for (String rel : rels) {
+        writer.name(rel);
+        Link[] array = arrays != null ? arrays.get(rel) : null;
+        if (array != null) {
+          writer.beginArray();
+          for (Link link : array)
+            writeLink(writer, link);
+          writer.endArray();
+        } else
+          writeLink(writer, resource.links.get(rel));
+      }
+      writer.endObject();
+    }
+    for (String name : sortedKeys(resource.properties, false))
+      writeValue(writer.name(name), resource.properties.get(name));
+    rels = sortedKeys(resource.resources, false);
+    if (rels.length > 0) {
+      writer.name("_embedded").beginObject();
+      for (String rel : rels) {
+        List<Resource> resources = resource.resources.get(rel);
+        writer.name(rel);
+        if (resources.size() == 1 && resource.isEmbeddedObject(rel))
+          write(resources.get(0), writer, intact);
+        else {
+          writer.beginArray();
+          for (Resource child : resources)
+            write(child, writer, intact);
+          writer.endArray();
+        }
+      }
+      writer.endObject();
+    }
+    writer.endObject();
+  }
+
+  /**
+   * Write the retained text of the resource
+   * <p>
+   * A strict {@link JsonWriter} only accepts an object or array as the top
+   * level value so leniency is enabled while the text is written.
+   *
+   * @param resource
+   * @param writer
+   * @throws IOException
+   */
+  private static void writeRaw(final Resource resource,
+      final JsonWriter writer) throws IOException {
+    final boolean lenient = writer.isLenient();
+    writer.setLenient(true);
+    try {
+      writer.value(new RawJson(resource));
+    } finally {
+      writer.setLenient(lenient);
+    }
+  }
+
+  private static void writeLink(final JsonWriter writer, final Link link)
+      throws IOException {
+    writer.beginObject();
+    writeField(writer, "href", link.href);
+    if (link.templated)
+      writer.name("templated").value(true);
+    writeField(writer, "hreflang", link.hreflang);
+    writeField(writer, "name", link.name);
+    writeField(writer, "profile", link.profile);
+    writeField(writer, "title", link.title);
+    writeField(writer, "type", link.type);
+    for (String name : sortedKeys(link.properties, false))
+      if (!isLinkField(name))
+        writeValue(writer.name(name), link.properties.get(name));
+    writer.endObject();
+  }
+
+  private static void writeField(final JsonWriter writer, final String name,
+      final String value) throws IOException {
+    if (value != null)
+      writer.name(name).value(value);
+  }
+
+  private static void writeValue(final JsonWriter writer, final Object value)
+      throws IOException {
+    if (value == null)
+      writer.nullValue();
+    else if (value instanceof String)
+      writer.value((String) value);
+    else if (value instanceof Boolean)
+      writer.value(((Boolean) value).booleanValue());
+    else if (value instanceof Number)
+      writeNumber(writer, (Number) value);
+    else if (value instanceof Map) {
+      writer.beginObject();
+      for (Entry<?, ?> entry : ((Map<?, ?>) value).entrySet())
+        writeValue(writer.name(String.valueOf(entry.getKey())),
+            entry.getValue());
+      writer.endObject();
+    } else if (value instanceof Collection) {
+      writer.beginArray();
+      for (Object element : (Collection<?>) value)
+        writeValue(writer, element);
+      writer.endArray();
+    } else if (value.getClass().isArray()) {
+      writer.beginArray();
+      int length = Array.getLength(value);
+      for (int i = 0; i < length; i++)
+        writeValue(writer, Array.get(value, i));
+      writer.endArray();
+    } else
+      writer.value(value.toString());
+  }
+
+  private static void writeNumber(final JsonWriter writer, final Number value)
+      throws IOException {
+    if (value instanceof Double || value instanceof Float) {
+      double number = value.doubleValue();
+      if (Double.isNaN(number) || Double.isInfinite(number))
+        throw new IllegalArgumentException(
+            "Numeric values must be finite, but was " + number);
+      if (value instanceof Double && isIntegral((Double) value)) {
+        writer.value((long) number);
+        return;
+      }
+    }
+    writer.value(value);
+  }
+
+  private static boolean isLinkField(final String name) {
+    return Arrays.binarySearch(LINK_FIELDS, name) >= 0;
+  }
+
+  private static boolean isIntegral(final Double value) {
+    double number = value.doubleValue();
+    return number == Math.rint(number) && Math.abs(number) < 1e15
+        && (number != 0 || 1 / number > 0);
+  }
+
+  private static String[] linkRels(final Resource resource) {
+    final Map<String, Link[]> arrays = resource.linkArrays();
+    if (arrays == null || arrays.isEmpty())
+      return sortedKeys(resource.links, true);
+    Map<String, Object> rels = new HashMap<String, Object>(resource.links);
+    rels.putAll(arrays);
+    return sortedKeys(rels, true);
+  }
+
+  private static String[] sortedKeys(final Map<String, ?> map,
+      final boolean selfFirst) {
+    String[] keys = map.keySet().toArray(new String[map.size()]);
+    Arrays.sort(keys);
+    if (selfFirst && map.containsKey("self")) {
+      int self = Arrays.binarySearch(keys, "self");
+      System.arraycopy(keys, 0, keys, 1, self);
+      keys[0] = "self";
+    }
+    return keys;
+  }
+
+  private final Writer writer;
+
+  private final JsonWriter json;
+
+  private boolean written;
+
+  /**
+   * Create HAL writer that writes UTF-8 encoded JSON to the given stream
+   *
+   * @param output
+   * @throws IOException
+   */
+  public HalWriter(final OutputStream output) throws IOException {
+    this(new BufferedWriter(new OutputStreamWriter(output, "UTF-8")));
+  }
+
+  /**
+   * Create HAL writer that writes JSON to the given writer
+   * <p>
+   * Each resource written is appended to the writer as its own document.
+   *
+   * @param writer
+   */
+  public HalWriter(final Writer writer) {
+    this.writer = writer;
+    json = new JsonWriter(writer);
+    json.setLenient(true);
+  }
+
+  /**
+   * Write resource
+   *
+   * @param resource
+   * @return this writer
+   * @throws IOException
+   */
+  public HalWriter write(final Resource resource) throws IOException {
+    write(resource, json);
+    written = true;
+    return this;
+  }
+
+  public void flush() throws IOException {
+    json.flush();
+  }
+
+  public void close() throws IOException {
+    if (written)
+      json.close();
+    else
+      writer.close();
+  }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package com.github.kevinsawicki.halligan;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of non-negative values
+ * <p>
+ * Values below 16 are counted exactly and larger values are counted in
+ * buckets that split each power of two into 8 equal parts, so percentiles
+ * are accurate to within 12.5%.
+ */
+public class Histogram {
+
+  private static final int SUB_BUCKETS = 8;
+
+  private static final int EXACT = 2 * SUB_BUCKETS;
+
+  private static final int BUCKETS = EXACT + (63 - 4) * SUB_BUCKETS;
+
+  private static int index(final long value) {
+    if (value < EXACT)
+      return (int) value;
+    final int exponent = 63 - Long.numberOfLeadingZeros(value);
+    final int sub = (int) (value >>> (exponent - 3)) & (SUB_BUCKETS - 1);
+    return EXACT + (exponent - 4) * SUB_BUCKETS + sub;
+  }
+
+  private static long upperBound(final int index) {
+    if (index < EXACT)
+      return index;
+    final int exponent = (index - EXACT) / SUB_BUCKETS + 4;
+    final long sub = (index - EXACT) % SUB_BUCKETS;
+    final long width = 1L << (exponent - 3);
+    return ((SUB_BUCKETS + sub) << (exponent - 3)) + width - 1;
+  }
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+  private final AtomicLong count = new AtomicLong();
+
+  private final AtomicLong sum = new AtomicLong();
+
+  private final AtomicLong max = new AtomicLong();
+
+  /**
+   * Record value
+   *
+   * @param value
+   *          negative values are recorded as zero
+   */
+  public void record(long value) {
+    if (value < 0)
+      value = 0;
+    counts.incrementAndGet(index(value));
+    count.incrementAndGet();
+    sum.addAndGet(value);
+    long current;
+    while (value > (current = max.get()))
+      if (max.compareAndSet(current, value))
+        break;
+  }
+
+  /**
+   * Get number of values recorded
+   *
+   * @return count
+   */
+  public long getCount() {
+    return count.get();
+  }
+
+  /**
+   * Get sum of values recorded
+   *
+   * @return sum
+   */
+  public long getSum() {
+    return sum.get();
+  }
+
+  /**
+   * Get largest value recorded
+   *
+   * @return max or 0 if no values recorded
+   */
+  public long getMax() {
+    return max.get();
+  }
+
+  /**
+   * Get mean of values recorded
+   *
+   * @return mean or 0 if no values recorded
+   */
+  public double getMean() {
+    final long count = getCount();
+    return count > 0 ? (double) getSum() / count : 0;
+  }
+
+  /**
+   * Get value at percentile
+   *
+   * @param percentile
+   *          between 0 and 100
+   * @return upper bound of the bucket containing the percentile, capped at
+   *         the largest value recorded, or 0 if no values recorded
+   */
+  public long getPercentile(final double percentile) {
+    long total = 0;
+    final long[] snapshot = new long[BUCKETS];
+    for (int i = 0; i < BUCKETS; i++)
+      total += snapshot[i] = counts.get(i);
+    if (total == 0)
+      return 0;
+    final long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += snapshot[i];
+      if (seen >= rank)
+        return Math.min(upperBound(i), getMax());
+    }
+    return getMax();
+  }
+
+  /**
+   * Clear all recorded values
+   */
+  public void reset() {
+    for (int i = 0; i < BUCKETS; i++)
+      counts.set(i, 0);
+    count.set(0);
+    sum.set(0);
+    max.set(0);
+  }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package com.github.kevinsawicki.halligan;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Metrics that record latencies and counts in histograms
+ * <p>
+ * Latencies are recorded in nanoseconds.
+ */
+public class HistogramMetrics extends HalMetrics {
+
+  private final Histogram connect = new Histogram();
+
+  private final Histogram firstByte = new Histogram();
+
+  private final Histogram read = new Histogram();
+
+  private final Histogram parse = new Histogram();
+
+  private final Histogram documentBytes = new Histogram();
+
+  private final Histogram resources = new Histogram();
+
+  private final Histogram links = new Histogram();
+
+  private final Histogram pages = new Histogram();
+
+  private final AtomicLong bytesRead = new AtomicLong();
+
+  @Override
+  public void requestCompleted(final String url, final int code,
+      final long connectNanos, final long firstByteNanos) {
+    connect.record(connectNanos);
+    firstByte.record(firstByteNanos);
+  }
+
+  @Override
+  public void documentParsed(final String url, final long bytes,
+      final long readNanos, final long parseNanos, final int resources,
+      final int links) {
+    bytesRead.addAndGet(bytes);
+    documentBytes.record(bytes);
+    read.record(readNanos);
+    parse.record(parseNanos);
+    this.resources.record(resources);
+    this.links.record(links);
+  }
+
+  @Override
+  public void iterationCompleted(final int pages) {
+    this.pages.record(pages);
+  }
+
+  /**
+   * Get histogram of time taken to connect
+   *
+   * @return histogram
+   */
+  public Histogram getConnect() {
+    return connect;
+  }
+
+  /**
+   * Get histogram of time from connecting until the response code was
+   * received
+   *
+   * @return histogram
+   */
+  public Histogram getFirstByte() {
+    return firstByte;
+  }
+
+  /**
+   * Get histogram of time taken to read response bodies
+   *
+   * @return histogram
+   */
+  public Histogram getRead() {
+    return read;
+  }
+
+  /**
+   * Get histogram of time taken to parse response bodies
+   *
+   * @return histogram
+   */
+  public Histogram getParse() {
+    return parse;
+  }
+
+  /**
+   * Get histogram of response body sizes
+   *
+   * @return histogram
+   */
+  public Histogram getDocumentBytes() {
+    return documentBytes;
+  }
+
+  /**
+   * Get histogram of resources parsed per document
+   *
+   * @return histogram
+   */
+  public Histogram getResources() {
+    return resources;
+  }
+
+  /**
+   * Get histogram of links parsed per document
+   *
+   * @return histogram
+   */
+  public Histogram getLinks() {
+    return links;
+  }
+
+  /**
+   * Get histogram of pages per completed iteration
+   *
+   * @return histogram
+   */
+  public Histogram getPages() {
+    return pages;
+  }
+
+  /**
+   * Get total number of response body bytes read
+   *
+   * @return byte count
+   */
+  public long getBytesRead() {
+    return bytesRead.get();
+  }
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright (c) 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package com.github.kevinsawicki.halligan;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+/**
+ * Unmodifiable snapshot of a resource
+ * <p>
+ * The properties, links, link arrays, and embedded resources of a snapshot
+ * are copied into compact unmodifiable collections when it is created and,
+ * along with its status code and URL prefix, are only reachable through
+ * final fields. Nested maps keep the order of their entries. A snapshot can
+ * therefore be shared with and read by any number of threads without copying
+ * or locking, even when published without synchronization. Indexes built by
+ * the find methods are cached through a concurrent map. Embedded resources
+ * are snapshots as well.
+ * <p>
+ * Methods that modify a snapshot, including attaching resources bulk loaded
+ * from its embedded resources, throw an
+ * {@link UnsupportedOperationException}. Resources loaded from the links of
+ * a snapshot are regular resources.
+ */
+public final class ImmutableResource extends Resource {
+
+  private static final long serialVersionUID = -3786522418624208418L;
+
+  /**
+   * Get unmodifiable snapshot of the given resource
+   *
+   * @param resource
+   * @return given resource if already a snapshot, new snapshot otherwise
+   */
+  public static ImmutableResource of(final Resource resource) {
+    if (resource instanceof ImmutableResource)
+      return (ImmutableResource) resource;
+    return new ImmutableResource(resource);
+  }
+
+  private static <V> Map<String, V> freezeMap(final Map<String, V> map) {
+    switch (map.size()) {
+    case 0:
+      return Collections.emptyMap();
+    case 1:
+      Entry<String, V> entry = map.entrySet().iterator().next();
+      return Collections.singletonMap(entry.getKey(), entry.getValue());
+    default:
+      return new ArrayMap<V>(map);
+    }
+  }
+
+  private static <V> List<V> freezeList(final List<V> list) {
+    switch (list.size()) {
+    case 0:
+      return Collections.emptyList();
+    case 1:
+      return Collections.singletonList(list.get(0));
+    default:
+      return Collections.unmodifiableList(list);
+    }
+  }
+
+  private static Object freezeValue(final Object value) {
+    if (value instanceof Map) {
+      final Map<?, ?> values = (Map<?, ?>) value;
+      final Map<Object, Object> frozen = new LinkedHashMap<Object, Object>(
+          values.size() * 4 / 3 + 1);
+      for (Entry<?, ?> entry : values.entrySet())
+        frozen.put(entry.getKey(), freezeValue(entry.getValue()));
+      return Collections.unmodifiableMap(frozen);
+    }
+    if (value instanceof Collection) {
+      final Collection<?> values = (Collection<?>) value;
+      final List<Object> frozen = new ArrayList<Object>(values.size());
+      for (Object element : values)
+        frozen.add(freezeValue(element));
+      return freezeList(frozen);
+    }
+    return value;
+  }
+
+  private static Map<String, Object> freezeProperties(
+      final Map<String, Object> properties) {
+    final Map<String, Object> frozen = new HashMap<String, Object>(
+        properties.size() * 4 / 3 + 1);
+    for (Entry<String, Object> property : properties.entrySet())
+      frozen.put(property.getKey(), freezeValue(property.getValue()));
+    return freezeMap(frozen);
+  }
+
+  private static Map<String, List<Resource>> freezeResources(
+      final Map<String, List<Resource>> resources) {
+    final Map<String, List<Resource>> frozen = new HashMap<String, List<Resource>>();
+    for (Entry<String, List<Resource>> entry : resources.entrySet()) {
+      final List<Resource> children = entry.getValue();
+      final Resource[] copies = new Resource[children.size()];
+      for (int i = 0; i < copies.length; i++)
+        copies[i] = of(children.get(i));
+      frozen.put(entry.getKey(), freezeList(Arrays.asList(copies)));
+    }
+    return freezeMap(frozen);
+  }
+
+  private final int snapshotCode;
+
+  private final String snapshotPrefix;
+
+  private final Map<String, Link[]> snapshotLinkArrays;
+
+  private final Set<String> snapshotEmbeddedObjects;
+
+  private ImmutableResource(final Resource resource) {
+    super(resource.gson, resource.getPolicy(),
+        freezeProperties(resource.properties), freezeMap(resource.links),
+        freezeResources(resource.resources));
+    final Map<String, Link[]> arrays = resource.linkArrays();
+    snapshotLinkArrays = arrays != null ? freezeMap(arrays) : null;
+    final Set<String> objects = new HashSet<String>();
+    for (String name : resource.resources.keySet())
+      if (resource.isEmbeddedObject(name))
+        objects.add(name);
+    snapshotEmbeddedObjects = objects.isEmpty() ? Collections
+        .<String> emptySet() : objects;
+    snapshotCode = resource.code();
+    snapshotPrefix = resource.prefix();
+  }
+
+  @Override
+  public int code() {
+    return snapshotCode;
+  }
+
+  @Override
+  String prefix() {
+    return snapshotPrefix;
+  }
+
+  @Override
+  Map<String, Link[]> linkArrays() {
+    return snapshotLinkArrays;
+  }
+
+  @Override
+  boolean isEmbeddedObject(final String name) {
+    return snapshotEmbeddedObjects.contains(name);
+  }
+
+  /**
+   * Snapshots can't be modified
+   *
+   * @throws UnsupportedOperationException
+   */
+  @Override
+  void attach(final String linkName, final Resource resource) {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Snapshots can't be modified
+   *
+   * @throws UnsupportedOperationException
+   */
+  @Override
+  public Map<String, Resource> loadAll(final String name,
+      final String linkName, final int concurrency) throws IOException {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Snapshots can't be modified
+   *
+   * @throws UnsupportedOperationException
+   */
+  @Override
+  void setLinks(final String name, final Link[] array) {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Snapshots can't be modified
+   *
+   * @throws UnsupportedOperationException
+   */
+  @Override
+  void setLinkArrays(final Map<String, Link[]> arrays) {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Snapshots can't be modified
+   *
+   * @throws UnsupportedOperationException
+   */
+  @Override
+  void setEmbeddedObject(final String name, final boolean object) {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Snapshots can't be modified
+   *
+   * @throws UnsupportedOperationException
+   */
+  @Override
+  public Resource setProperty(final String name, final Object value) {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Snapshots can't be modified
+   *
+   * @throws UnsupportedOperationException
+   */
+  @Override
+  public Resource removeProperty(final String name) {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Snapshots can't be modified
+   *
+   * @throws UnsupportedOperationException
+   */
+  @Override
+  public Resource markModified() {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Snapshots can't be modified
+   *
+   * @throws UnsupportedOperationException
+   */
+  @Override
+  public ChangeSet refresh() throws IOException {
+    throw new UnsupportedOperationException();
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package com.github.kevinsawicki.halligan;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size window of the most recent request latencies
+ */
+class LatencySamples {
+
+  private final long[] samples;
+
+  private final long[] sorted;
+
+  private int count;
+
+  private int next;
+
+  private boolean dirty;
+
+  /**
+   * Create window holding the given number of samples
+   *
+   * @param size
+   */
+  LatencySamples(final int size) {
+    samples = new long[size];
+    sorted = new long[size];
+  }
+
+  /**
+   * Record latency
+   *
+   * @param latency
+   */
+  synchronized void add(final long latency) {
+    samples[next] = latency;
+    next = (next + 1) % samples.length;
+    if (count < samples.length)
+      count++;
+    dirty = true;
+  }
+
+  /**
+   * Get number of recorded samples
+   *
+   * @return count
+   */
+  synchronized int size() {
+    return count;
+  }
+
+  /**
+   * Get the latency at the given percentile of the recorded samples
+   *
+   * @param percentile
+   *          value between 0 and 100
+   * @return latency or -1 if no samples have been recorded
+   */
+  synchronized long percentile(final double percentile) {
+    if (count == 0)
+      return -1;
+    if (dirty) {
+      System.arraycopy(samples, 0, sorted, 0, count);
+      Arrays.sort(sorted, 0, count);
+      dirty = false;
+    }
+    int index = (int) Math.ceil(percentile / 100 * count) - 1;
+    return sorted[Math.max(0, Math.min(count - 1, index))];
+  }
+}
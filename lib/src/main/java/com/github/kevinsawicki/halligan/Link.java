@@ -46,22 +46,22 @@ public class Link implements Serializable {
   /**
    * A URI that can be templated
    */
-  public final String href;
+  public String href;
 
   /**
    * Language of the target resource
    */
-  public final String hreflang;
+  public String hreflang;
 
   /**
    * Secondary key
    */
-  public final String name;
+  public String name;
 
   /**
    * A URI that hints about the profile of the target resource
    */
-  public final String profile;
+  public String profile;
 
   /**
    * True if the {@link #href} field is templated, false otherwise
@@ -71,14 +71,14 @@ public class Link implements Serializable {
   /**
    * Human-readable label for the {@link #href}
    */
-  public final String title;
+  public String title;
 
   /**
    * Media-type hint for the target resource
    */
-  public final String type;
+  public String type;
 
-  private final Map<String, Object> properties = new HashMap<String, Object>();
+  final Map<String, Object> properties = new HashMap<String, Object>();
 
   /**
    * Create link with values
@@ -103,6 +103,26 @@ public class Link implements Serializable {
     this.type = type;
   }
 
+  /**
+   * Create link with values and additional properties
+   *
+   * @param href
+   * @param hreflang
+   * @param name
+   * @param profile
+   * @param templated
+   * @param title
+   * @param type
+   * @param properties
+   */
+  Link(final String href, final String hreflang, final String name,
+      final String profile, final boolean templated, final String title,
+      final String type, final Map<String, Object> properties) {
+    this(href, hreflang, name, profile, templated, title, type);
+    if (properties != null)
+      this.properties.putAll(properties);
+  }
+
   /**
    * Create link with values from map
    *
@@ -259,6 +279,34 @@ public class Link implements Serializable {
     return value instanceof Map ? (Map<String, Object>) value : null;
   }
 
+  /**
+   * Replace the strings of this link with the instances held by the pool
+   * <p>
+   * This is only called on links just parsed, before they are published.
+   *
+   * @param pool
+   */
+  void intern(final StringPool pool) {
+    href = pool.intern(href);
+    hreflang = pool.intern(hreflang);
+    name = pool.intern(name);
+    profile = pool.intern(profile);
+    title = pool.intern(title);
+    type = pool.intern(type);
+    if (properties.isEmpty())
+      return;
+    for (String key : properties.keySet().toArray(
+        new String[properties.size()])) {
+      final String pooled = pool.intern(key);
+      Object value = properties.get(key);
+      if (value instanceof String)
+        value = pool.intern((String) value);
+      if (pooled != key)
+        properties.remove(key);
+      properties.put(pooled, value);
+    }
+  }
+
   @Override
   public boolean equals(final Object obj) {
     if (obj == this)
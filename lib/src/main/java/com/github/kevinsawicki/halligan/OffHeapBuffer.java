@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package com.github.kevinsawicki.halligan;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Growable buffer of direct memory allocated in fixed size chunks
+ * <p>
+ * Values of 1, 4, and 8 bytes stored at offsets aligned to their size never
+ * span chunks. Byte arrays may span chunks.
+ * <p>
+ * Chunks are only allocated by writes. Reads of offsets past the allocated
+ * capacity return zero.
+ */
+final class OffHeapBuffer {
+
+  private static final int CHUNK_SHIFT = 16;
+
+  private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+
+  private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+  private final List<ByteBuffer> chunks = new ArrayList<ByteBuffer>();
+
+  private ByteBuffer grow(final long offset) {
+    final int index = (int) (offset >>> CHUNK_SHIFT);
+    while (chunks.size() <= index)
+      chunks.add(ByteBuffer.allocateDirect(CHUNK_SIZE).order(
+          ByteOrder.nativeOrder()));
+    return chunks.get(index);
+  }
+
+  private ByteBuffer chunk(final long offset) {
+    final long index = offset >>> CHUNK_SHIFT;
+    return index < chunks.size() ? chunks.get((int) index) : null;
+  }
+
+  private static int position(final long offset) {
+    return (int) (offset & CHUNK_MASK);
+  }
+
+  /**
+   * Get number of bytes allocated
+   *
+   * @return capacity
+   */
+  long capacity() {
+    return (long) chunks.size() * CHUNK_SIZE;
+  }
+
+  /**
+   * Release all chunks
+   */
+  void clear() {
+    chunks.clear();
+  }
+
+  byte get(final long offset) {
+    final ByteBuffer chunk = chunk(offset);
+    return chunk != null ? chunk.get(position(offset)) : 0;
+  }
+
+  void put(final long offset, final byte value) {
+    grow(offset).put(position(offset), value);
+  }
+
+  int getInt(final long offset) {
+    final ByteBuffer chunk = chunk(offset);
+    return chunk != null ? chunk.getInt(position(offset)) : 0;
+  }
+
+  void putInt(final long offset, final int value) {
+    grow(offset).putInt(position(offset), value);
+  }
+
+  long getLong(final long offset) {
+    final ByteBuffer chunk = chunk(offset);
+    return chunk != null ? chunk.getLong(position(offset)) : 0;
+  }
+
+  void putLong(final long offset, final long value) {
+    grow(offset).putLong(position(offset), value);
+  }
+
+  double getDouble(final long offset) {
+    final ByteBuffer chunk = chunk(offset);
+    return chunk != null ? chunk.getDouble(position(offset)) : 0;
+  }
+
+  void putDouble(final long offset, final double value) {
+    grow(offset).putDouble(position(offset), value);
+  }
+
+  boolean getBit(final long index) {
+    return (get(index >>> 3) & (1 << (index & 7))) != 0;
+  }
+
+  void setBit(final long index) {
+    final long offset = index >>> 3;
+    put(offset, (byte) (get(offset) | (1 << (index & 7))));
+  }
+
+  void get(long offset, final byte[] bytes, int start, int length) {
+    while (length > 0) {
+      int count = Math.min(length, CHUNK_SIZE - position(offset));
+      ByteBuffer chunk = chunk(offset);
+      if (chunk != null) {
+        chunk = chunk.duplicate();
+        chunk.position(position(offset));
+        chunk.get(bytes, start, count);
+      } else
+        Arrays.fill(bytes, start, start + count, (byte) 0);
+      offset += count;
+      start += count;
+      length -= count;
+    }
+  }
+
+  void put(long offset, final byte[] bytes, int start, int length) {
+    while (length > 0) {
+      ByteBuffer chunk = grow(offset).duplicate();
+      chunk.position(position(offset));
+      int count = Math.min(length, chunk.remaining());
+      chunk.put(bytes, start, count);
+      offset += count;
+      start += count;
+      length -= count;
+    }
+  }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package com.github.kevinsawicki.halligan;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Sizes observed on previous pages of a collection used to presize the
+ * buffers, maps, and lists of the next page
+ * <p>
+ * Each size is the largest of the size observed on the latest page and a
+ * decayed size from earlier pages, so a single large page does not inflate
+ * allocations for the rest of a crawl.
+ */
+final class PageStats {
+
+  /**
+   * Get initial capacity of a hash map that holds the given number of entries
+   * without rehashing
+   *
+   * @param size
+   * @return capacity
+   */
+  static int capacity(final int size) {
+    return size < 3 ? size + 1 : size + size / 3 + 1;
+  }
+
+  private static int decay(final int observed, final int previous) {
+    return Math.max(observed, previous - (previous >> 2));
+  }
+
+  final int bodyBytes;
+
+  final int properties;
+
+  final int links;
+
+  final int rels;
+
+  final int itemProperties;
+
+  final int itemLinks;
+
+  final int itemRels;
+
+  private final Map<String, Integer> items;
+
+  /**
+   * Create statistics from page, decaying the given previous statistics
+   *
+   * @param previous
+   *          statistics from earlier pages or null if none
+   * @param page
+   * @param bodyBytes
+   *          size of the page body or 0 if unknown
+   */
+  PageStats(final PageStats previous, final Resource page,
+      final int bodyBytes) {
+    int itemProperties = 0;
+    int itemLinks = 0;
+    int itemRels = 0;
+    final Map<String, Integer> items = new HashMap<String, Integer>(
+        capacity(page.resources.size()));
+    for (Entry<String, List<Resource>> entry : page.resources.entrySet()) {
+      items.put(entry.getKey(), entry.getValue().size());
+      for (Resource item : entry.getValue()) {
+        itemProperties = Math.max(itemProperties, item.properties.size());
+        itemLinks = Math.max(itemLinks, item.links.size());
+        itemRels = Math.max(itemRels, item.resources.size());
+      }
+    }
+
+    if (previous != null) {
+      this.bodyBytes = decay(bodyBytes, previous.bodyBytes);
+      properties = decay(page.properties.size(), previous.properties);
+      links = decay(page.links.size(), previous.links);
+      rels = decay(page.resources.size(), previous.rels);
+      this.itemProperties = decay(itemProperties, previous.itemProperties);
+      this.itemLinks = decay(itemLinks, previous.itemLinks);
+      this.itemRels = decay(itemRels, previous.itemRels);
+      for (Entry<String, Integer> entry : previous.items.entrySet()) {
+        final Integer observed = items.get(entry.getKey());
+        items.put(entry.getKey(), decay(observed != null ? observed : 0,
+            entry.getValue()));
+      }
+    } else {
+      this.bodyBytes = bodyBytes;
+      properties = page.properties.size();
+      links = page.links.size();
+      rels = page.resources.size();
+      this.itemProperties = itemProperties;
+      this.itemLinks = itemLinks;
+      this.itemRels = itemRels;
+    }
+    this.items = Collections.unmodifiableMap(items);
+  }
+
+  /**
+   * Get expected number of resources embedded under the given name
+   *
+   * @param name
+   * @return count or 0 if none expected
+   */
+  int items(final String name) {
+    final Integer count = items.get(name);
+    return count != null ? count : 0;
+  }
+
+  @Override
+  public String toString() {
+    return "PageStats[bytes=" + bodyBytes + ", properties=" + properties
+        + ", links=" + links + ", items=" + items + ", itemProperties="
+        + itemProperties + ", itemLinks=" + itemLinks + "]";
+  }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package com.github.kevinsawicki.halligan;
+
+import com.google.gson.stream.JsonReader;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+/**
+ * Scanner that records the span of JSON text each parsed resource was read
+ * from
+ * <p>
+ * The scanner only tracks structure and the names of <code>_embedded</code>
+ * relations, all other values are skipped over without being decoded.
+ */
+final class RawScanner {
+
+  /**
+   * Record spans of the given resource and its embedded resources
+   * <p>
+   * The resource must have already been parsed from the given JSON.
+   * Resources are left without a span if the JSON can't be scanned.
+   *
+   * @param resource
+   * @param json
+   */
+  static void attach(final Resource resource, final String json) {
+    RawScanner scanner = new RawScanner(json);
+    try {
+      scanner.whitespace();
+      scanner.resource(resource);
+    } catch (IllegalStateException ignored) {
+      // Spans are only recorded for completely scanned resources
+    } catch (IndexOutOfBoundsException ignored) {
+      // Spans are only recorded for completely scanned resources
+    }
+  }
+
+  private final String json;
+
+  private int position;
+
+  private RawScanner(final String json) {
+    this.json = json;
+  }
+
+  private char peek() {
+    return json.charAt(position);
+  }
+
+  private void expect(final char c) {
+    if (json.charAt(position) != c)
+      throw new IllegalStateException("Expected " + c + " at " + position);
+    position++;
+  }
+
+  private void whitespace() {
+    final int length = json.length();
+    while (position < length) {
+      char c = json.charAt(position);
+      if (c != ' ' && c != '\n' && c != '\r' && c != '\t')
+        break;
+      position++;
+    }
+  }
+
+  private boolean next(final char end) {
+    whitespace();
+    if (peek() == ',') {
+      position++;
+      whitespace();
+      return true;
+    }
+    expect(end);
+    return false;
+  }
+
+  private String name() {
+    final int start = position;
+    final boolean escaped = string();
+    final int end = position;
+    whitespace();
+    expect(':');
+    whitespace();
+    if (!escaped)
+      return json.substring(start + 1, end - 1);
+    JsonReader reader = new JsonReader(new StringReader(json.substring(start,
+        end)));
+    reader.setLenient(true);
+    try {
+      return reader.nextString();
+    } catch (IOException e) {
+      throw new IllegalStateException(e.getMessage());
+    }
+  }
+
+  private boolean string() {
+    expect('"');
+    boolean escaped = false;
+    while (true) {
+      char c = json.charAt(position++);
+      if (c == '"')
+        return escaped;
+      if (c == '\\') {
+        escaped = true;
+        position++;
+      }
+    }
+  }
+
+  private void value() {
+    int depth = 0;
+    do {
+      char c = peek();
+      switch (c) {
+      case '"':
+        string();
+        break;
+      case '{':
+      case '[':
+        depth++;
+        position++;
+        break;
+      case '}':
+      case ']':
+        depth--;
+        position++;
+        break;
+      default:
+        position++;
+        if (depth == 0)
+          while (position < json.length()) {
+            c = json.charAt(position);
+            if (c == ',' || c == '}' || c == ']' || c == ' ' || c == '\n'
+                || c == '\r' || c == '\t')
+              break;
+            position++;
+          }
+      }
+    } while (depth > 0);
+  }
+
+  private void resource(final Resource resource) {
+    final int start = position;
+    expect('{');
+    whitespace();
+    if (peek() != '}')
+      do {
+        String name = name();
+        if ("_embedded".equals(name) && peek() == '{')
+          embedded(resource);
+        else
+          value();
+      } while (next('}'));
+    else
+      position++;
+    resource.setRaw(json, start, position);
+  }
+
+  private void embedded(final Resource resource) {
+    expect('{');
+    whitespace();
+    if (peek() == '}') {
+      position++;
+      return;
+    }
+    do {
+      List<Resource> children = resource.resources.get(name());
+      if (peek() == '{' && children != null && children.size() == 1)
+        resource(children.get(0));
+      else if (peek() == '[' && children != null) {
+        position++;
+        whitespace();
+        if (peek() == ']')
+          position++;
+        else {
+          int index = 0;
+          do {
+            if (peek() == '{' && index < children.size())
+              resource(children.get(index++));
+            else
+              value();
+          } while (next(']'));
+        }
+      } else
+        value();
+    } while (next('}'));
+  }
+}
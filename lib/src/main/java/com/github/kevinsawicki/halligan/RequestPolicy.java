@@ -0,0 +1,760 @@
+/*
+ * Copyright (c) 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package com.github.kevinsawicki.halligan;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import com.github.kevinsawicki.http.HttpRequest;
+import com.github.kevinsawicki.http.HttpRequest.HttpRequestException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Policy applied when requesting resources
+ * <p>
+ * The default policy makes a single request with no timeouts. Policies can be
+ * configured to set connect and read timeouts, retry failed requests using
+ * exponential backoff with decorrelated jitter, and hedge slow requests by
+ * starting a duplicate request once a request has taken longer than a
+ * percentile of recently observed latencies and using whichever responds
+ * first.
+ * <p>
+ * Retries and hedges repeat the request so they should only be enabled for
+ * resources requested with idempotent methods such as the default GET.
+ * Policies should be fully configured before being used to request resources
+ * and may then be shared between threads.
+ * <p>
+ * Resources created without a policy use a shared default policy that can't
+ * be configured; copies made from it with {@link #withPriority(Priority)} or
+ * {@link #withDeadline(Deadline)} have their own counters.
+ */
+public class RequestPolicy {
+
+  private static final int MIN_HEDGE_SAMPLES = 20;
+
+  private static boolean isRetryable(final int code) {
+    return code == 502 || code == 503 || code == 504;
+  }
+
+  private static IOException unwrap(final ExecutionException e) {
+    Throwable cause = e.getCause();
+    if (cause instanceof IOException)
+      return (IOException) cause;
+    if (cause instanceof RuntimeException)
+      throw (RuntimeException) cause;
+    if (cause instanceof Error)
+      throw (Error) cause;
+    IOException ioException = new IOException("Request failed");
+    ioException.initCause(cause);
+    return ioException;
+  }
+
+  private final RequestPolicy root;
+
+  private final AtomicLong requests;
+
+  private final AtomicLong retries;
+
+  private final AtomicLong hedges;
+
+  private final AtomicLong hedgeWins;
+
+  private final LatencySamples latencies;
+
+  private final Random random;
+
+  private int connectTimeout;
+
+  private int readTimeout;
+
+  private int maxRetries;
+
+  private long baseDelay;
+
+  private long maxDelay;
+
+  private double hedgePercentile;
+
+  private ConcurrencyLimiter limiter;
+
+  private RequestScheduler scheduler;
+
+  private Priority priority = Priority.NORMAL;
+
+  private DiskCache cache;
+
+  private Deadline deadline;
+
+  private boolean retainRaw;
+
+  private HalMetrics metrics;
+
+  private HalTracer tracer;
+
+  private StringPool stringPool;
+
+  private ExecutorService executor;
+
+  private final boolean unmodifiable;
+
+  /**
+   * Create policy that makes a single request with no timeouts
+   */
+  public RequestPolicy() {
+    this(false);
+  }
+
+  /**
+   * Create policy that makes a single request with no timeouts
+   *
+   * @param unmodifiable
+   *          true if configuring the policy should fail
+   */
+  RequestPolicy(final boolean unmodifiable) {
+    this.unmodifiable = unmodifiable;
+    root = this;
+    requests = new AtomicLong();
+    retries = new AtomicLong();
+    hedges = new AtomicLong();
+    hedgeWins = new AtomicLong();
+    latencies = new LatencySamples(256);
+    random = new Random();
+  }
+
+  /**
+   * Create copy of policy that shares its counters and latency samples unless
+   * the policy is unmodifiable
+   *
+   * @param policy
+   */
+  private RequestPolicy(final RequestPolicy policy) {
+    unmodifiable = false;
+    if (policy.unmodifiable) {
+      root = this;
+      requests = new AtomicLong();
+      retries = new AtomicLong();
+      hedges = new AtomicLong();
+      hedgeWins = new AtomicLong();
+      latencies = new LatencySamples(256);
+      random = new Random();
+    } else {
+      root = policy.root;
+      requests = policy.requests;
+      retries = policy.retries;
+      hedges = policy.hedges;
+      hedgeWins = policy.hedgeWins;
+      latencies = policy.latencies;
+      random = policy.random;
+    }
+    connectTimeout = policy.connectTimeout;
+    readTimeout = policy.readTimeout;
+    maxRetries = policy.maxRetries;
+    baseDelay = policy.baseDelay;
+    maxDelay = policy.maxDelay;
+    hedgePercentile = policy.hedgePercentile;
+    limiter = policy.limiter;
+    scheduler = policy.scheduler;
+    priority = policy.priority;
+    cache = policy.cache;
+    deadline = policy.deadline;
+    retainRaw = policy.retainRaw;
+    metrics = policy.metrics;
+    tracer = policy.tracer;
+    stringPool = policy.stringPool;
+  }
+
+  private void checkModifiable() {
+    if (unmodifiable)
+      throw new UnsupportedOperationException(
+          "Default policy can't be configured, create a new policy instead");
+  }
+
+  /**
+   * Set connect timeout of each request
+   *
+   * @param timeout
+   *          in milliseconds, 0 for no timeout
+   * @return this policy
+   */
+  public RequestPolicy connectTimeout(final int timeout) {
+    checkModifiable();
+    connectTimeout = timeout;
+    return this;
+  }
+
+  /**
+   * Set read timeout of each request
+   *
+   * @param timeout
+   *          in milliseconds, 0 for no timeout
+   * @return this policy
+   */
+  public RequestPolicy readTimeout(final int timeout) {
+    checkModifiable();
+    readTimeout = timeout;
+    return this;
+  }
+
+  /**
+   * Retry requests that fail with an {@link IOException} or a 502, 503, or 504
+   * response code
+   * <p>
+   * The delay before each retry is chosen randomly between the base delay and
+   * three times the previous delay, capped at the maximum delay.
+   *
+   * @param maxRetries
+   * @param baseDelay
+   *          in milliseconds
+   * @param maxDelay
+   *          in milliseconds
+   * @return this policy
+   */
+  public RequestPolicy retries(final int maxRetries, final long baseDelay,
+      final long maxDelay) {
+    checkModifiable();
+    if (maxRetries < 0)
+      throw new IllegalArgumentException("Retries cannot be negative");
+    if (baseDelay < 0 || maxDelay < baseDelay)
+      throw new IllegalArgumentException("Invalid retry delays");
+    this.maxRetries = maxRetries;
+    this.baseDelay = baseDelay;
+    this.maxDelay = maxDelay;
+    return this;
+  }
+
+  /**
+   * Start a duplicate request when a request has not responded within the
+   * given percentile of recent request latencies
+   * <p>
+   * Latencies are only sampled while hedging is enabled, so hedging starts
+   * once enough requests have been made after it is enabled.
+   *
+   * @param percentile
+   *          between 0 and 100 exclusive, 0 to disable hedging
+   * @return this policy
+   */
+  public RequestPolicy hedge(final double percentile) {
+    checkModifiable();
+    if (percentile < 0 || percentile >= 100)
+      throw new IllegalArgumentException(
+          "Percentile must be between 0 and 100");
+    hedgePercentile = percentile;
+    return this;
+  }
+
+  /**
+   * Limit concurrent requests to each host using the given limiter
+   * <p>
+   * Permits are held until the response code of each request is received and
+   * responses with a 429 or 5xx code are reported to the limiter as failures.
+   *
+   * @param limiter
+   * @return this policy
+   */
+  public RequestPolicy limiter(final ConcurrencyLimiter limiter) {
+    checkModifiable();
+    this.limiter = limiter;
+    return this;
+  }
+
+  /**
+   * Store responses in the given cache and revalidate cached responses with
+   * conditional requests
+   *
+   * @param cache
+   * @return this policy
+   */
+  public RequestPolicy cache(final DiskCache cache) {
+    checkModifiable();
+    this.cache = cache;
+    return this;
+  }
+
+  /**
+   * Get the cache responses are stored in
+   *
+   * @return cache or null if none
+   */
+  public DiskCache getCache() {
+    return cache;
+  }
+
+  /**
+   * Retain the original JSON text of each resource parsed from a response
+   * <p>
+   * A {@link HalWriter} copies the retained text of unmodified resources
+   * instead of encoding them again.
+   *
+   * @param retainRaw
+   * @return this policy
+   */
+  public RequestPolicy retainRaw(final boolean retainRaw) {
+    checkModifiable();
+    this.retainRaw = retainRaw;
+    return this;
+  }
+
+  /**
+   * Is the original JSON text of parsed resources retained?
+   *
+   * @return true if retained, false otherwise
+   */
+  public boolean isRetainRaw() {
+    return retainRaw;
+  }
+
+  /**
+   * Report request, parse, and iteration metrics to the given listener
+   * <p>
+   * Response bodies are read completely before being parsed when metrics
+   * are reported so reading and parsing can be timed separately.
+   *
+   * @param metrics
+   *          listener or null to not collect metrics
+   * @return this policy
+   */
+  public RequestPolicy metrics(final HalMetrics metrics) {
+    checkModifiable();
+    this.metrics = metrics;
+    return this;
+  }
+
+  /**
+   * Get listener metrics are reported to
+   *
+   * @return metrics or null if none
+   */
+  public HalMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Report spans for link hops, document parsing, and iteration steps to the
+   * given tracer
+   * <p>
+   * Response bodies are read completely before being parsed when tracing so
+   * the number of bytes read can be reported.
+   *
+   * @param tracer
+   *          tracer or null to not trace
+   * @return this policy
+   */
+  public RequestPolicy tracer(final HalTracer tracer) {
+    checkModifiable();
+    this.tracer = tracer;
+    return this;
+  }
+
+  /**
+   * Get tracer spans are reported to
+   *
+   * @return tracer or null if none
+   */
+  public HalTracer getTracer() {
+    return tracer;
+  }
+
+  /**
+   * Deduplicate link relations, link values, property names, and string
+   * property values of parsed resources using the given pool
+   * <p>
+   * Links are still parsed by the {@link Link} deserializer of the
+   * {@link GsonFactory} and their strings are then replaced in place with
+   * the pooled instances.
+   *
+   * @param stringPool
+   *          pool or null to not deduplicate
+   * @return this policy
+   */
+  public RequestPolicy stringPool(final StringPool stringPool) {
+    checkModifiable();
+    this.stringPool = stringPool;
+    return this;
+  }
+
+  /**
+   * Get pool used to deduplicate parsed strings
+   *
+   * @return pool or null if none
+   */
+  public StringPool getStringPool() {
+    return stringPool;
+  }
+
+  /**
+   * Schedule requests by priority using the given scheduler
+   * <p>
+   * Requests hold their slot until the response code is received.
+   *
+   * @param scheduler
+   * @return this policy
+   */
+  public RequestPolicy scheduler(final RequestScheduler scheduler) {
+    checkModifiable();
+    this.scheduler = scheduler;
+    return this;
+  }
+
+  /**
+   * Create copy of this policy that schedules requests with the given priority
+   * <p>
+   * The copy shares the counters of this policy and uses its current
+   * configuration.
+   *
+   * @param priority
+   * @return new policy
+   */
+  public RequestPolicy withPriority(final Priority priority) {
+    RequestPolicy policy = new RequestPolicy(this);
+    policy.priority = priority;
+    return policy;
+  }
+
+  /**
+   * Get the priority requests made with this policy are scheduled with
+   *
+   * @return priority
+   */
+  public Priority getPriority() {
+    return priority;
+  }
+
+  /**
+   * Create copy of this policy that stops requesting resources once the given
+   * deadline has passed
+   * <p>
+   * The copy shares the counters of this policy and uses its current
+   * configuration. Timeouts of each request made with the copy are reduced to
+   * the time remaining until the deadline and retries are not attempted if the
+   * deadline would pass before the retry is made.
+   *
+   * @param deadline
+   * @return new policy
+   */
+  public RequestPolicy withDeadline(final Deadline deadline) {
+    RequestPolicy policy = new RequestPolicy(this);
+    policy.deadline = deadline;
+    return policy;
+  }
+
+  /**
+   * Get the deadline requests made with this policy must complete by
+   *
+   * @return deadline or null if none
+   */
+  public Deadline getDeadline() {
+    return deadline;
+  }
+
+  /**
+   * Get number of requests made, including retries and hedges
+   *
+   * @return count
+   */
+  public long getRequestCount() {
+    return requests.get();
+  }
+
+  /**
+   * Get number of retries made
+   *
+   * @return count
+   */
+  public long getRetryCount() {
+    return retries.get();
+  }
+
+  /**
+   * Get number of hedged requests made
+   *
+   * @return count
+   */
+  public long getHedgeCount() {
+    return hedges.get();
+  }
+
+  /**
+   * Get number of hedged requests that responded before the request they
+   * duplicated
+   *
+   * @return count
+   */
+  public long getHedgeWinCount() {
+    return hedgeWins.get();
+  }
+
+  /**
+   * Request the URL for the given resource and wait for the response code
+   *
+   * @param resource
+   * @param url
+   * @param cached
+   *          cached response to revalidate, may be null
+   * @return request that has received a response
+   * @throws IOException
+   */
+  HttpRequest execute(final Resource resource, final String url,
+      final DiskCache.Entry cached) throws IOException {
+    long delay = baseDelay;
+    final AtomicReference<String> method = new AtomicReference<String>();
+    for (int attempt = 0;; attempt++) {
+      if (deadline != null)
+        deadline.check();
+      HttpRequest request;
+      try {
+        request = hedgePercentile > 0 ? hedged(resource, url, cached, method)
+            : attempt(resource, url, cached, null, method);
+      } catch (IOException e) {
+        // Requests that failed before one was created are always retried
+        if (attempt >= maxRetries
+            || (method.get() != null && !isIdempotent(method.get())))
+          throw e;
+        delay = nextDelay(delay);
+        if (!canRetry(delay))
+          throw e;
+        sleep(delay);
+        continue;
+      }
+      if (attempt >= maxRetries || !isRetryable(request.code())
+          || !isIdempotent(request.method()))
+        return request;
+      delay = nextDelay(delay);
+      if (!canRetry(delay))
+        return request;
+      request.disconnect();
+      sleep(delay);
+    }
+  }
+
+  private boolean isIdempotent(final String method) {
+    return "GET".equals(method) || "HEAD".equals(method);
+  }
+
+  private long nextDelay(final long previous) {
+    long upper = Math.min(maxDelay, previous * 3);
+    return upper > baseDelay ? baseDelay
+        + (long) (random.nextDouble() * (upper - baseDelay)) : baseDelay;
+  }
+
+  private boolean canRetry(final long delay) {
+    return deadline == null || deadline.remaining(MILLISECONDS) > delay;
+  }
+
+  private void sleep(final long delay) throws IOException {
+    retries.incrementAndGet();
+    try {
+      Thread.sleep(delay);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted waiting to retry request");
+    }
+  }
+
+  private HttpRequest attempt(final Resource resource, final String url,
+      final DiskCache.Entry cached, final AtomicBoolean won,
+      final AtomicReference<String> method) throws IOException {
+    final RequestScheduler scheduler = this.scheduler;
+    if (scheduler == null)
+      return send(resource, url, cached, won, method);
+    RequestScheduler.Ticket ticket;
+    if (deadline != null)
+      ticket = scheduler.acquire(priority, deadline.remaining(NANOSECONDS),
+          NANOSECONDS);
+    else
+      ticket = scheduler.acquire(priority);
+    try {
+      return send(resource, url, cached, won, method);
+    } finally {
+      scheduler.release(ticket);
+    }
+  }
+
+  private HttpRequest send(final Resource resource, final String url,
+      final DiskCache.Entry cached, final AtomicBoolean won,
+      final AtomicReference<String> method) throws IOException {
+    final ConcurrencyLimiter limiter = this.limiter;
+    ConcurrencyLimiter.Permit permit = null;
+    if (limiter != null) {
+      String host = ConcurrencyLimiter.getHost(url);
+      if (deadline != null)
+        permit = limiter.acquire(host, deadline.remaining(NANOSECONDS),
+            NANOSECONDS);
+      else
+        permit = limiter.acquire(host);
+    }
+    int connect = connectTimeout;
+    int read = readTimeout;
+    if (deadline != null)
+      try {
+        connect = deadline.timeout(connect);
+        read = deadline.timeout(read);
+      } catch (InterruptedIOException e) {
+        if (permit != null)
+          limiter.cancel(permit);
+        throw e;
+      }
+    requests.incrementAndGet();
+    final HalMetrics metrics = this.metrics;
+    final long start = System.nanoTime();
+    long connected = start;
+    HttpRequest request;
+    int code;
+    boolean success = false;
+    try {
+      request = resource.createRequest(url);
+      method.set(request.method());
+      if (connect > 0)
+        request.connectTimeout(connect);
+      if (read > 0)
+        request.readTimeout(read);
+      if (cached != null) {
+        if (cached.getETag() != null)
+          request.ifNoneMatch(cached.getETag());
+        if (cached.getLastModified() > 0)
+          request.ifModifiedSince(cached.getLastModified());
+      }
+      if (metrics != null) {
+        request.getConnection().connect();
+        connected = System.nanoTime();
+      }
+      code = request.code();
+      success = code < 500 && code != 429;
+    } catch (HttpRequestException e) {
+      throw e.getCause();
+    } finally {
+      if (permit != null)
+        limiter.release(permit, success);
+    }
+    final long end = System.nanoTime();
+    if (hedgePercentile > 0)
+      latencies.add(end - start);
+    if (metrics != null)
+      metrics.requestCompleted(url, code, connected - start, end - connected);
+    if (won != null && !won.compareAndSet(false, true)) {
+      request.disconnect();
+      return null;
+    }
+    return request;
+  }
+
+  /**
+   * Get executor shared by this policy and its copies for hedged requests and
+   * bulk loads
+   *
+   * @return executor
+   */
+  ExecutorService getExecutor() {
+    synchronized (root) {
+      if (root.executor == null)
+        root.executor = Executors.newCachedThreadPool(new DaemonThreadFactory(
+            "halligan-worker"));
+      return root.executor;
+    }
+  }
+
+  private Future<HttpRequest> poll(
+      final CompletionService<HttpRequest> completion, final long timeout)
+      throws InterruptedException, InterruptedIOException {
+    if (deadline == null)
+      return timeout >= 0 ? completion.poll(timeout, NANOSECONDS) : completion
+          .take();
+    long remaining = deadline.remaining(NANOSECONDS);
+    Future<HttpRequest> done = completion.poll(timeout >= 0 ? Math.min(
+        timeout, remaining) : remaining, NANOSECONDS);
+    if (done == null && deadline.isExpired())
+      throw new InterruptedIOException("Deadline exceeded");
+    return done;
+  }
+
+  private HttpRequest hedged(final Resource resource, final String url,
+      final DiskCache.Entry cached, final AtomicReference<String> method)
+      throws IOException {
+    if (latencies.size() < MIN_HEDGE_SAMPLES)
+      return attempt(resource, url, cached, null, method);
+
+    final long threshold = latencies.percentile(hedgePercentile);
+    final AtomicBoolean won = new AtomicBoolean();
+    final Callable<HttpRequest> task = new Callable<HttpRequest>() {
+
+      public HttpRequest call() throws Exception {
+        return attempt(resource, url, cached, won, method);
+      }
+    };
+    final CompletionService<HttpRequest> completion = new ExecutorCompletionService<HttpRequest>(
+        getExecutor());
+    final Future<HttpRequest> primary = completion.submit(task);
+    Future<HttpRequest> hedge = null;
+    int pending = 1;
+    IOException failure = null;
+    try {
+      Future<HttpRequest> done = poll(completion, threshold);
+      if (done == null) {
+        hedges.incrementAndGet();
+        hedge = completion.submit(task);
+        pending++;
+      }
+      while (pending > 0) {
+        while (done == null)
+          done = poll(completion, -1);
+        pending--;
+        try {
+          HttpRequest request = done.get();
+          if (request != null) {
+            if (done == hedge)
+              hedgeWins.incrementAndGet();
+            return request;
+          }
+        } catch (ExecutionException e) {
+          failure = unwrap(e);
+        }
+        done = null;
+      }
+    } catch (InterruptedException e) {
+      won.set(true);
+      primary.cancel(true);
+      if (hedge != null)
+        hedge.cancel(true);
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted waiting for response");
+    } catch (InterruptedIOException e) {
+      won.set(true);
+      primary.cancel(true);
+      if (hedge != null)
+        hedge.cancel(true);
+      throw e;
+    }
+    throw failure;
+  }
+}
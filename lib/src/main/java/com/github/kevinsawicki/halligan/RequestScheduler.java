@@ -0,0 +1,306 @@
+/*
+ * Copyright (c) 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package com.github.kevinsawicki.halligan;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Scheduler of requests by {@link Priority}
+ * <p>
+ * A scheduler bounds the number of requests in flight across all hosts.
+ * Waiting requests are started highest priority first and in arrival order
+ * within a priority. Each priority can be limited to a share of the total
+ * concurrency so that lower priorities cannot occupy every slot, and requests
+ * that have waited longer than the maximum wait are started before higher
+ * priority requests so that lower priorities are never starved.
+ */
+public class RequestScheduler {
+
+  /**
+   * Slot to make a request
+   */
+  public static class Ticket {
+
+    private final Priority priority;
+
+    private boolean released;
+
+    private Ticket(final Priority priority) {
+      this.priority = priority;
+    }
+  }
+
+  private static class Waiter {
+
+    private final Condition condition;
+
+    private final long enqueued = System.nanoTime();
+
+    private boolean granted;
+
+    private Waiter(final Condition condition) {
+      this.condition = condition;
+    }
+  }
+
+  private static final Priority[] PRIORITIES = Priority.values();
+
+  private final ReentrantLock lock = new ReentrantLock();
+
+  private final List<LinkedList<Waiter>> waiters;
+
+  private final int[] shares;
+
+  private final int[] inFlight;
+
+  private final int concurrency;
+
+  private int total;
+
+  private long maxWait = TimeUnit.SECONDS.toNanos(1);
+
+  /**
+   * Create scheduler allowing the given number of requests in flight
+   *
+   * @param concurrency
+   */
+  public RequestScheduler(final int concurrency) {
+    if (concurrency < 1)
+      throw new IllegalArgumentException("Concurrency must be at least 1");
+    this.concurrency = concurrency;
+    waiters = new ArrayList<LinkedList<Waiter>>(PRIORITIES.length);
+    shares = new int[PRIORITIES.length];
+    inFlight = new int[PRIORITIES.length];
+    for (int i = 0; i < PRIORITIES.length; i++) {
+      waiters.add(new LinkedList<Waiter>());
+      shares[i] = concurrency;
+    }
+  }
+
+  /**
+   * Limit the number of requests with the given priority in flight at once
+   *
+   * @param priority
+   * @param share
+   * @return this scheduler
+   */
+  public RequestScheduler share(final Priority priority, final int share) {
+    if (share < 1 || share > concurrency)
+      throw new IllegalArgumentException(
+          "Share must be between 1 and the scheduler concurrency");
+    lock.lock();
+    try {
+      shares[priority.ordinal()] = share;
+    } finally {
+      lock.unlock();
+    }
+    return this;
+  }
+
+  /**
+   * Set the time after which a waiting request is started ahead of higher
+   * priority requests
+   *
+   * @param maxWait
+   * @param unit
+   * @return this scheduler
+   */
+  public RequestScheduler maxWait(final long maxWait, final TimeUnit unit) {
+    lock.lock();
+    try {
+      this.maxWait = unit.toNanos(maxWait);
+    } finally {
+      lock.unlock();
+    }
+    return this;
+  }
+
+  /**
+   * Get number of requests with the given priority waiting to start
+   *
+   * @param priority
+   * @return number of waiting requests
+   */
+  public int getWaiting(final Priority priority) {
+    lock.lock();
+    try {
+      return waiters.get(priority.ordinal()).size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Get number of requests with the given priority in flight
+   *
+   * @param priority
+   * @return number of requests
+   */
+  public int getInFlight(final Priority priority) {
+    lock.lock();
+    try {
+      return inFlight[priority.ordinal()];
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Wait for a ticket to make a request with the given priority
+   *
+   * @param priority
+   * @return ticket that must be released
+   * @throws InterruptedIOException
+   */
+  public Ticket acquire(final Priority priority) throws InterruptedIOException {
+    return acquire(priority, -1);
+  }
+
+  /**
+   * Wait up to the given timeout for a ticket to make a request with the
+   * given priority
+   *
+   * @param priority
+   * @param timeout
+   * @param unit
+   * @return ticket that must be released
+   * @throws InterruptedIOException
+   *           if interrupted or no ticket was granted before the timeout
+   */
+  public Ticket acquire(final Priority priority, final long timeout,
+      final TimeUnit unit) throws InterruptedIOException {
+    return acquire(priority, Math.max(0, unit.toNanos(timeout)));
+  }
+
+  private Ticket acquire(final Priority priority, long timeout)
+      throws InterruptedIOException {
+    final int index = priority.ordinal();
+    lock.lock();
+    try {
+      if (waiters.get(index).isEmpty() && canStart(index)
+          && !hasPriorWaiter(index)) {
+        start(index);
+        return new Ticket(priority);
+      }
+      Waiter waiter = new Waiter(lock.newCondition());
+      waiters.get(index).addLast(waiter);
+      try {
+        while (!waiter.granted)
+          if (timeout < 0)
+            waiter.condition.await();
+          else if (timeout > 0)
+            timeout = Math.max(0, waiter.condition.awaitNanos(timeout));
+          else {
+            waiters.get(index).remove(waiter);
+            throw new InterruptedIOException(
+                "Timed out waiting to be scheduled");
+          }
+      } catch (InterruptedException e) {
+        if (waiter.granted)
+          finish(index);
+        else
+          waiters.get(index).remove(waiter);
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted waiting to be scheduled");
+      }
+      return new Ticket(priority);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Release ticket after the request completed
+   *
+   * @param ticket
+   */
+  public void release(final Ticket ticket) {
+    synchronized (ticket) {
+      if (ticket.released)
+        return;
+      ticket.released = true;
+    }
+    lock.lock();
+    try {
+      finish(ticket.priority.ordinal());
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private boolean canStart(final int index) {
+    return total < concurrency && inFlight[index] < shares[index];
+  }
+
+  private boolean hasPriorWaiter(final int index) {
+    for (int i = 0; i < index; i++)
+      if (!waiters.get(i).isEmpty() && inFlight[i] < shares[i])
+        return true;
+    return false;
+  }
+
+  private void start(final int index) {
+    inFlight[index]++;
+    total++;
+  }
+
+  private void finish(final int index) {
+    inFlight[index]--;
+    total--;
+    dispatch();
+  }
+
+  private void dispatch() {
+    while (total < concurrency) {
+      int next = -1;
+      long now = System.nanoTime();
+      long oldest = Long.MAX_VALUE;
+      for (int i = 0; i < waiters.size(); i++) {
+        if (waiters.get(i).isEmpty() || !canStart(i))
+          continue;
+        long waited = now - waiters.get(i).getFirst().enqueued;
+        if (waited >= maxWait && (next == -1 || waited > oldest)) {
+          next = i;
+          oldest = waited;
+        }
+      }
+      if (next == -1)
+        for (int i = 0; i < waiters.size(); i++)
+          if (!waiters.get(i).isEmpty() && canStart(i)) {
+            next = i;
+            break;
+          }
+      if (next == -1)
+        return;
+      Waiter waiter = waiters.get(next).removeFirst();
+      waiter.granted = true;
+      start(next);
+      waiter.condition.signal();
+    }
+  }
+}
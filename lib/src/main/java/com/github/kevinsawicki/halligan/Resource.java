@@ -22,28 +22,38 @@
 package com.github.kevinsawicki.halligan;
 
 import static com.github.kevinsawicki.halligan.DefaultGsonFactory.GSON_FACTORY;
+import static com.github.kevinsawicki.http.HttpRequest.CHARSET_UTF8;
+import static com.google.gson.stream.JsonToken.BEGIN_ARRAY;
 import static com.google.gson.stream.JsonToken.BEGIN_OBJECT;
 import static com.google.gson.stream.JsonToken.NAME;
+import static java.net.HttpURLConnection.HTTP_NOT_MODIFIED;
+import static java.net.HttpURLConnection.HTTP_OK;
 
 import com.github.kevinsawicki.http.HttpRequest;
 import com.github.kevinsawicki.http.HttpRequest.HttpRequestException;
 import com.google.gson.JsonParseException;
-import com.google.gson.reflect.TypeToken;
 import com.google.gson.stream.JsonReader;
 import com.google.gson.stream.JsonToken;
 
-import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
 import java.io.Serializable;
-import java.lang.reflect.Type;
+import java.io.StringReader;
 import java.net.URL;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Resource class
@@ -52,8 +62,14 @@ public class Resource implements Iterable<Resource>, Serializable {
 
   private static final long serialVersionUID = 8768898492847217862L;
 
-  private static final Type TYPE_LINKS = new TypeToken<Map<String, Link>>() {
-  }.getType();
+  static final RequestPolicy DEFAULT_POLICY = new RequestPolicy(true);
+
+  private static <V> Map<String, V> map(final int size) {
+    if (size >= 0)
+      return new HashMap<String, V>(PageStats.capacity(size));
+    else
+      return new HashMap<String, V>();
+  }
 
   private static String getPrefix(final URL url) {
     String prefix = url.getProtocol() + "://" + url.getHost();
@@ -69,24 +85,56 @@ public class Resource implements Iterable<Resource>, Serializable {
    */
   protected final GsonFactory gson;
 
-  private String prefix;
+  /**
+   * Request policy
+   */
+  protected final transient RequestPolicy policy;
+
+  String prefix;
 
-  private int code;
+  int code;
 
   /**
    * Resource properties
    */
-  protected final Map<String, Object> properties = new HashMap<String, Object>();
+  protected final Map<String, Object> properties;
 
   /**
    * Resource links
    */
-  protected final Map<String, Link> links = new HashMap<String, Link>();
+  protected final Map<String, Link> links;
 
   /**
    * Embedded resources
    */
-  protected final Map<String, List<Resource>> resources = new HashMap<String, List<Resource>>();
+  protected final Map<String, List<Resource>> resources;
+
+  private Map<String, Resource> loaded;
+
+  private transient volatile ConcurrentMap<ResourceIndex.CacheKey, ResourceIndex> indexes;
+
+  transient String raw;
+
+  transient int rawStart;
+
+  transient int rawEnd;
+
+  private transient PageStats stats;
+
+  private transient int bodyBytes;
+
+  /**
+   * Links of relations whose value is an array, null until one is set
+   * <p>
+   * The first link of each non-empty array is also stored in {@link #links}.
+   */
+  private Map<String, Link[]> linkArrays;
+
+  /**
+   * Names of embedded resources whose value is a single object instead of an
+   * array, null until one is set
+   */
+  private Set<String> embeddedObjects;
 
   /**
    * Create resource from URL
@@ -106,7 +154,39 @@ public class Resource implements Iterable<Resource>, Serializable {
    * @throws IOException
    */
   public Resource(final GsonFactory gson, final String url) throws IOException {
-    this(gson);
+    this(gson, DEFAULT_POLICY, url);
+  }
+
+  /**
+   * Create resource from URL
+   * <p>
+   * The request policy is also used for all resources loaded from links of
+   * this resource
+   *
+   * @param gson
+   * @param policy
+   * @param url
+   * @throws IOException
+   */
+  public Resource(final GsonFactory gson, final RequestPolicy policy,
+      final String url) throws IOException {
+    this(gson, policy, url, null);
+  }
+
+  /**
+   * Create resource from URL with maps and buffers presized from the
+   * statistics of previous pages
+   *
+   * @param gson
+   * @param policy
+   * @param url
+   * @param stats
+   *          or null to use default sizes
+   * @throws IOException
+   */
+  Resource(final GsonFactory gson, final RequestPolicy policy,
+      final String url, final PageStats stats) throws IOException {
+    this(gson, policy, stats);
 
     parse(url);
   }
@@ -117,7 +197,54 @@ public class Resource implements Iterable<Resource>, Serializable {
    * @param gson
    */
   protected Resource(final GsonFactory gson) {
+    this(gson, DEFAULT_POLICY);
+  }
+
+  /**
+   * Create resource with Gson factory and request policy
+   *
+   * @param gson
+   * @param policy
+   */
+  protected Resource(final GsonFactory gson, final RequestPolicy policy) {
+    this(gson, policy, new HashMap<String, Object>(),
+        new HashMap<String, Link>(), new HashMap<String, List<Resource>>());
+  }
+
+  /**
+   * Create resource with maps presized from the statistics of previous pages
+   *
+   * @param gson
+   * @param policy
+   * @param stats
+   *          or null to use default sizes
+   */
+  Resource(final GsonFactory gson, final RequestPolicy policy,
+      final PageStats stats) {
+    this(gson, policy, Resource.<Object> map(stats != null ? stats.properties
+        : -1), Resource.<Link> map(stats != null ? stats.links : -1),
+        Resource.<List<Resource>> map(stats != null ? stats.rels : -1));
+    this.stats = stats;
+  }
+
+  /**
+   * Create resource that uses the given maps of properties, links, and
+   * embedded resources
+   *
+   * @param gson
+   * @param policy
+   * @param properties
+   * @param links
+   * @param resources
+   */
+  protected Resource(final GsonFactory gson, final RequestPolicy policy,
+      final Map<String, Object> properties, final Map<String, Link> links,
+      final Map<String, List<Resource>> resources) {
     this.gson = gson;
+    this.policy = policy;
+    this.properties = properties;
+    this.links = links;
+    this.resources = resources;
   }
 
   /**
@@ -129,9 +256,13 @@ public class Resource implements Iterable<Resource>, Serializable {
    */
   protected Resource(final Resource parent, final GsonFactory gson)
       throws IOException {
-    code = parent.code;
-    prefix = parent.prefix;
-    this.gson = gson;
+    this(gson, parent.policy, Resource.<Object> map(parent.stats != null
+        ? parent.stats.itemProperties : -1), Resource.<Link> map(
+        parent.stats != null ? parent.stats.itemLinks : -1), Resource
+        .<List<Resource>> map(parent.stats != null ? parent.stats.itemRels
+            : -1));
+    code = parent.code();
+    prefix = parent.prefix();
   }
 
   /**
@@ -165,13 +296,98 @@ public class Resource implements Iterable<Resource>, Serializable {
    * @throw IOException
    */
   protected Resource createResource(final String url) throws IOException {
-    return new Resource(url);
+    return new Resource(gson, getPolicy(), url);
+  }
+
+  /**
+   * Create new root-level resource backed by given URL that is presized from
+   * the given page statistics
+   *
+   * @param url
+   * @param stats
+   *          or null to use {@link #createResource(String)}
+   * @return new resource
+   * @throws IOException
+   */
+  Resource createResource(final String url, final PageStats stats)
+      throws IOException {
+    if (stats == null)
+      return createResource(url);
+    return new Resource(gson, getPolicy(), url, stats);
+  }
+
+  /**
+   * Resolve given URI against the prefix of the URL this resource was loaded
+   * from
+   *
+   * @param uri
+   * @return absolute URI
+   */
+  String resolveUri(final String uri) {
+    return resolveUri(prefix(), uri);
+  }
+
+  /**
+   * Get scheme, host, and port of the URL this resource was loaded from
+   *
+   * @return prefix
+   */
+  String prefix() {
+    return prefix;
+  }
+
+  static String resolveUri(final String prefix, final String uri) {
+    if (uri.length() > 0 && uri.charAt(0) == '/')
+      return prefix + uri;
+    else
+      return uri;
+  }
+
+  /**
+   * Create resource from the given URL with a tracer span for the hop
+   *
+   * @param rel
+   * @param url
+   * @return resource
+   * @throws IOException
+   */
+  Resource requestResource(final String rel, final String url)
+      throws IOException {
+    return requestResource(rel, url, null);
   }
 
-  private Resource requestResource(String url) throws IOException {
-    if (url.length() > 0 && url.charAt(0) == '/')
-      url = prefix + url;
-    return createResource(url);
+  private Resource requestResource(final String rel, final String url,
+      final PageStats stats) throws IOException {
+    final String uri = resolveUri(url);
+    final TraceSpan span = TraceSpan.start(getPolicy().getTracer(),
+        TraceSpan.Kind.HOP, rel, uri);
+    if (span == null)
+      return createResource(uri, stats);
+
+    final Resource resource;
+    try {
+      resource = createResource(uri, stats);
+    } catch (IOException e) {
+      span.end(-1, e);
+      throw e;
+    } catch (RuntimeException e) {
+      span.end(-1, e);
+      throw e;
+    }
+    span.end(resource.code(), null);
+    return resource;
+  }
+
+  /**
+   * Attach resource loaded from the link with the given name
+   *
+   * @param linkName
+   * @param resource
+   */
+  synchronized void attach(final String linkName, final Resource resource) {
+    if (loaded == null)
+      loaded = new HashMap<String, Resource>();
+    loaded.put(linkName, resource);
   }
 
   /**
@@ -182,16 +398,90 @@ public class Resource implements Iterable<Resource>, Serializable {
    * @throws IOException
    */
   protected Resource parse(final String url) throws IOException {
-    BufferedReader buffer;
+    final TraceSpan span = TraceSpan.start(getPolicy().getTracer(),
+        TraceSpan.Kind.PARSE, null, url);
+    if (span == null)
+      return fetch(url, null);
+
     try {
-      HttpRequest request = createRequest(url);
-      code = request.code();
-      buffer = request.bufferedReader();
-      prefix = getPrefix(request.getConnection().getURL());
-    } catch (HttpRequestException e) {
-      throw e.getCause();
+      fetch(url, span);
+    } catch (IOException e) {
+      span.end(code, e);
+      throw e;
+    } catch (RuntimeException e) {
+      span.end(code, e);
+      throw e;
     }
+    span.end(code, null);
+    return this;
+  }
 
+  private Resource fetch(final String url, final TraceSpan span)
+      throws IOException {
+    final RequestPolicy policy = getPolicy();
+    final DiskCache cache = policy.getCache();
+    final HalMetrics metrics = policy.getMetrics();
+    DiskCache.Entry cached = cache != null ? cache.get(url) : null;
+    DecodingReader decoding;
+    DecodingReader streaming = null;
+    long bytes = 0;
+    long readNanos = 0;
+    if (cached != null && cache.isFresh(cached)) {
+      code = cached.code();
+      prefix = getPrefix(new URL(url));
+      decoding = new DecodingReader(cached.getBody(),
+          DecodingReader.charset(cached.getCharset()));
+      bytes = cached.getLength();
+    } else {
+      HttpRequest request = policy.execute(this, url, cached);
+      try {
+        code = request.code();
+        prefix = getPrefix(request.getConnection().getURL());
+        if (cached != null && code == HTTP_NOT_MODIFIED) {
+          code = cached.code();
+          decoding = new DecodingReader(cached.getBody(),
+              DecodingReader.charset(cached.getCharset()));
+          bytes = cached.getLength();
+        } else {
+          final String name = getCharset(request);
+          final Charset charset;
+          try {
+            charset = DecodingReader.charset(name);
+          } catch (IOException e) {
+            request.disconnect();
+            throw e;
+          }
+          if ((cache != null && code == HTTP_OK) || metrics != null
+              || span != null) {
+            final long start = System.nanoTime();
+            final BufferPool.Body body = readBody(request);
+            readNanos = System.nanoTime() - start;
+            bytes = body.size();
+            if (cache != null && code == HTTP_OK)
+              store(cache, url, request, name, body);
+            decoding = new DecodingReader(body, charset);
+          } else {
+            int size = BufferPool.BUFFER_SIZE;
+            if (stats != null && stats.bodyBytes > size)
+              size = Math.min(stats.bodyBytes, BufferPool.MAX_RETAINED);
+            streaming = new DecodingReader(request.stream(), charset, size);
+            decoding = streaming;
+          }
+        }
+      } catch (HttpRequestException e) {
+        throw e.getCause();
+      }
+    }
+
+    decoding.setDeadline(policy.getDeadline());
+    Reader buffer = decoding;
+
+    final long parseStart = metrics != null ? System.nanoTime() : 0;
+    String json = null;
+    if (policy.isRetainRaw()) {
+      json = read(buffer);
+      buffer = new StringReader(json);
+    }
     JsonReader reader = new JsonReader(buffer);
     try {
       parse(reader);
@@ -206,10 +496,96 @@ public class Resource implements Iterable<Resource>, Serializable {
         // Ignored
       }
     }
+    if (json != null)
+      RawScanner.attach(this, json);
+    if (streaming != null)
+      bytes = streaming.getBytesRead();
+    if (span != null)
+      span.addBytes(bytes);
+    bodyBytes = (int) bytes;
+    if (metrics != null)
+      metrics.documentParsed(url, bytes, readNanos, System.nanoTime()
+          - parseStart, countResources(), countLinks());
 
     return this;
   }
 
+  private static String getCharset(final HttpRequest request) {
+    final String charset = request.charset();
+    if (charset != null && charset.length() > 0)
+      return charset;
+    else
+      return CHARSET_UTF8;
+  }
+
+  private BufferPool.Body readBody(final HttpRequest request)
+      throws IOException {
+    int expected = request.contentLength();
+    if (expected <= 0 && stats != null)
+      expected = stats.bodyBytes + stats.bodyBytes / 8;
+    final BufferPool.Body body = BufferPool.takeBody(expected);
+    final InputStream stream = request.stream();
+    try {
+      body.readFrom(stream, getPolicy().getDeadline());
+    } finally {
+      try {
+        stream.close();
+      } catch (IOException ignored) {
+        // Ignored
+      }
+    }
+    return body;
+  }
+
+  private int countResources() {
+    int count = 1;
+    for (List<Resource> children : resources.values())
+      for (Resource child : children)
+        count += child.countResources();
+    return count;
+  }
+
+  private int countLinks() {
+    int count = links.size();
+    final Map<String, Link[]> arrays = linkArrays();
+    if (arrays != null)
+      for (Link[] array : arrays.values())
+        if (array.length > 1)
+          count += array.length - 1;
+    for (List<Resource> children : resources.values())
+      for (Resource child : children)
+        count += child.countLinks();
+    return count;
+  }
+
+  private void store(final DiskCache cache, final String url,
+      final HttpRequest request, final String charset,
+      final BufferPool.Body body) throws IOException {
+    String etag = request.eTag();
+    long lastModified = request.lastModified();
+    if (etag != null || lastModified > 0 || cache.getMaxAge() > 0)
+      cache.put(url, code, etag, lastModified, charset, body.array(), 0,
+          body.size());
+  }
+
+  private static String read(final Reader reader) throws IOException {
+    final StringBuilder json = new StringBuilder();
+    final char[] buffer = BufferPool.takeChars(BufferPool.BUFFER_SIZE);
+    try {
+      int read;
+      while ((read = reader.read(buffer)) != -1)
+        json.append(buffer, 0, read);
+    } finally {
+      BufferPool.release(buffer);
+      try {
+        reader.close();
+      } catch (IOException ignored) {
+        // Ignored
+      }
+    }
+    return json.toString();
+  }
+
   /**
    * Fill this resource by parsing the next object in the reader
    *
@@ -218,6 +594,7 @@ public class Resource implements Iterable<Resource>, Serializable {
    * @throws IOException
    */
   protected Resource parse(final JsonReader reader) throws IOException {
+    final StringPool pool = getPolicy().getStringPool();
     reader.beginObject();
     while (reader.hasNext() && reader.peek() == NAME) {
       String name = reader.nextName();
@@ -226,7 +603,7 @@ public class Resource implements Iterable<Resource>, Serializable {
       else if ("_embedded".equals(name))
         parseResources(reader);
       else
-        parseProperty(reader, name);
+        parseProperty(reader, pool != null ? pool.intern(name) : name);
     }
     reader.endObject();
     return this;
@@ -239,22 +616,29 @@ public class Resource implements Iterable<Resource>, Serializable {
    * @throws IOException
    */
   protected void parseResources(final JsonReader reader) throws IOException {
+    final StringPool pool = getPolicy().getStringPool();
     reader.beginObject();
     while (reader.hasNext()) {
       String name = reader.nextName();
+      if (pool != null)
+        name = pool.intern(name);
       JsonToken next = reader.peek();
       switch (next) {
       case BEGIN_OBJECT:
         resources.put(name,
             Collections.singletonList(createResource().parse(reader)));
+        setEmbeddedObject(name, true);
         break;
       case BEGIN_ARRAY:
         reader.beginArray();
-        List<Resource> entries = new ArrayList<Resource>();
+        final int expected = stats != null ? stats.items(name) : 0;
+        List<Resource> entries = expected > 0 ? new ArrayList<Resource>(
+            expected) : new ArrayList<Resource>();
         while (reader.peek() == BEGIN_OBJECT)
           entries.add(createResource().parse(reader));
         reader.endArray();
         resources.put(name, entries);
+        setEmbeddedObject(name, false);
         break;
       default:
         throw new IOException("_embedded object value is a " + next.name()
@@ -264,6 +648,11 @@ public class Resource implements Iterable<Resource>, Serializable {
     reader.endObject();
   }
 
+  private String intern(final String value) {
+    final StringPool pool = getPolicy().getStringPool();
+    return pool != null ? pool.intern(value) : value;
+  }
+
   /**
    * Parse resource property
    *
@@ -279,7 +668,7 @@ public class Resource implements Iterable<Resource>, Serializable {
       properties.put(name, gson.getGson().fromJson(reader, Map.class));
       break;
     case STRING:
-      properties.put(name, reader.nextString());
+      properties.put(name, intern(reader.nextString()));
       break;
     case NUMBER:
       properties.put(name, reader.nextDouble());
@@ -300,11 +689,71 @@ public class Resource implements Iterable<Resource>, Serializable {
    * Parse links from current reader's next object value
    *
    * @param reader
+   * @throws IOException
+   */
+  protected void parseLinks(final JsonReader reader) throws IOException {
+    final StringPool pool = getPolicy().getStringPool();
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String rel = reader.nextName();
+      if (pool != null)
+        rel = pool.intern(rel);
+      switch (reader.peek()) {
+      case BEGIN_OBJECT:
+        final Link link = parseLink(reader, pool);
+        if (link != null)
+          links.put(rel, link);
+        break;
+      case BEGIN_ARRAY:
+        final List<Link> array = new ArrayList<Link>();
+        reader.beginArray();
+        while (reader.hasNext())
+          if (reader.peek() == BEGIN_OBJECT) {
+            final Link element = parseLink(reader, pool);
+            if (element != null)
+              array.add(element);
+          } else
+            reader.skipValue();
+        reader.endArray();
+        setLinks(rel, array.toArray(new Link[array.size()]));
+        break;
+      default:
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+  }
+
+  /**
+   * Parse link from the reader's next object value
+   * <p>
+   * Links are parsed with the {@link Link} deserializer of the Gson factory
+   * and their names and string values are then interned in the string pool
+   * if one is being used
+   *
+   * @param reader
+   * @param pool
+   * @return link
+   * @throws IOException
+   */
+  private Link parseLink(final JsonReader reader, final StringPool pool)
+      throws IOException {
+    final Link link = gson.getGson().fromJson(reader, Link.class);
+    if (link != null && pool != null)
+      link.intern(pool);
+    return link;
+  }
+
+  /**
+   * Get the policy used to request this resource and the resources it links to
+   * <p>
+   * Resources created without a policy return the shared default policy,
+   * which can't be configured.
+   *
+   * @return policy
    */
-  protected void parseLinks(final JsonReader reader) {
-    Map<String, Link> links = gson.getGson().fromJson(reader, TYPE_LINKS);
-    if (links != null && !links.isEmpty())
-      this.links.putAll(links);
+  public RequestPolicy getPolicy() {
+    return policy != null ? policy : DEFAULT_POLICY;
   }
 
   /**
@@ -366,6 +815,9 @@ public class Resource implements Iterable<Resource>, Serializable {
 
   /**
    * Get all links
+   * <p>
+   * Only the first link of relations with multiple links is included, use
+   * {@link #getLinks(String)} to get all the links of a relation.
    *
    * @return possibly empty {@link Iterable} over all links
    */
@@ -373,6 +825,117 @@ public class Resource implements Iterable<Resource>, Serializable {
     return links.entrySet();
   }
 
+  /**
+   * Get all links with name
+   *
+   * @param name
+   * @return non-null but possibly empty list of links
+   */
+  public List<Link> getLinks(final String name) {
+    final Map<String, Link[]> arrays = linkArrays();
+    final Link[] array = arrays != null ? arrays.get(name) : null;
+    if (array != null)
+      return Collections.unmodifiableList(Arrays.asList(array));
+    final Link link = getLink(name);
+    if (link != null)
+      return Collections.singletonList(link);
+    else
+      return Collections.emptyList();
+  }
+
+  /**
+   * Get number of links with name
+   *
+   * @param name
+   * @return link count
+   */
+  public int getLinkCount(final String name) {
+    final Map<String, Link[]> arrays = linkArrays();
+    final Link[] array = arrays != null ? arrays.get(name) : null;
+    if (array != null)
+      return array.length;
+    return getLink(name) != null ? 1 : 0;
+  }
+
+  /**
+   * Is the value of the link relation with name an array of links?
+   *
+   * @param name
+   * @return true if array, false if a single link or missing
+   */
+  public boolean isLinkArray(final String name) {
+    final Map<String, Link[]> arrays = linkArrays();
+    return arrays != null && arrays.containsKey(name);
+  }
+
+  /**
+   * Get URIs of all links with name
+   *
+   * @param name
+   * @return non-null but possibly empty list of URIs
+   */
+  public List<String> getLinkUris(final String name) {
+    final List<Link> all = getLinks(name);
+    final List<String> uris = new ArrayList<String>(all.size());
+    for (Link link : all)
+      uris.add(link.expandHref());
+    return uris;
+  }
+
+  /**
+   * Get URIs of all links with name, expanding templated links with the
+   * given values
+   *
+   * @param name
+   * @param values
+   * @return non-null but possibly empty list of URIs
+   */
+  public List<String> getLinkUris(final String name,
+      final Map<String, Object> values) {
+    final List<Link> all = getLinks(name);
+    final List<String> uris = new ArrayList<String>(all.size());
+    for (Link link : all)
+      uris.add(link.expandHref(values));
+    return uris;
+  }
+
+  /**
+   * Get links of relations whose value is an array
+   *
+   * @return map or null if no relation is an array
+   */
+  Map<String, Link[]> linkArrays() {
+    return linkArrays;
+  }
+
+  /**
+   * Replace all link arrays
+   *
+   * @param arrays
+   *          or null to remove all link arrays
+   */
+  void setLinkArrays(final Map<String, Link[]> arrays) {
+    linkArrays = arrays != null ? new HashMap<String, Link[]>(arrays) : null;
+  }
+
+  /**
+   * Set links of relation to an array
+   * <p>
+   * The first link is also available from {@link #getLink(String)}
+   *
+   * @param name
+   * @param array
+   */
+  void setLinks(final String name, final Link[] array) {
+    if (linkArrays == null)
+      linkArrays = new HashMap<String, Link[]>(4);
+    linkArrays.put(name, array);
+    if (array.length > 0)
+      links.put(name, array[0]);
+    else
+      links.remove(name);
+  }
+
   /**
    * Get resource property as an integer
    *
@@ -454,6 +1017,33 @@ public class Resource implements Iterable<Resource>, Serializable {
     return resources.get(name);
   }
 
+  /**
+   * Is the value of the embedded resources with the given name a single
+   * object instead of an array?
+   *
+   * @param name
+   * @return true if single object, false if array or not embedded
+   */
+  boolean isEmbeddedObject(final String name) {
+    return embeddedObjects != null && embeddedObjects.contains(name);
+  }
+
+  /**
+   * Set whether the value of the embedded resources with the given name is a
+   * single object instead of an array
+   *
+   * @param name
+   * @param object
+   */
+  void setEmbeddedObject(final String name, final boolean object) {
+    if (object) {
+      if (embeddedObjects == null)
+        embeddedObjects = new HashSet<String>(4);
+      embeddedObjects.add(name);
+    } else if (embeddedObjects != null)
+      embeddedObjects.remove(name);
+  }
+
   /**
    * Get number of embedded resources with given name
    *
@@ -516,6 +1106,184 @@ public class Resource implements Iterable<Resource>, Serializable {
     return links.get(name) != null;
   }
 
+  /**
+   * Set property value
+   * <p>
+   * Values returned from getters must not be changed in place unless
+   * {@link #markModified()} is called afterwards.
+   *
+   * @param name
+   * @param value
+   * @return this resource
+   */
+  public Resource setProperty(final String name, final Object value) {
+    properties.put(name, value);
+    return markModified();
+  }
+
+  /**
+   * Remove property
+   *
+   * @param name
+   * @return this resource
+   */
+  public Resource removeProperty(final String name) {
+    properties.remove(name);
+    return markModified();
+  }
+
+  /**
+   * Mark this resource as modified so the original JSON text it was parsed
+   * from is no longer written out in its place
+   *
+   * @return this resource
+   */
+  public Resource markModified() {
+    raw = null;
+    clearIndexes();
+    return this;
+  }
+
+  void clearIndexes() {
+    indexes = null;
+  }
+
+  synchronized void clearLoaded() {
+    loaded = null;
+  }
+
+  /**
+   * Refresh this resource in place using the self URI
+   * <p>
+   * Embedded resources that are unchanged are kept and embedded resources
+   * identified by the same self link are updated in place so references to
+   * them stay valid.
+   * <p>
+   * The response is parsed into a separate resource that is then merged into
+   * this one instead of being parsed directly into this resource. Embedded
+   * resources without a self link can only be matched once their whole
+   * content has been read, and a response that fails to parse part way
+   * through leaves this resource unchanged.
+   *
+   * @return changes made to this resource and its embedded resources
+   * @throws IOException
+   */
+  public ChangeSet refresh() throws IOException {
+    return new ChangeSet().merge(this, load());
+  }
+
+  private ResourceIndex getIndex(final String name, final String path,
+      final boolean sorted) {
+    ConcurrentMap<ResourceIndex.CacheKey, ResourceIndex> indexes = this.indexes;
+    if (indexes == null)
+      synchronized (this) {
+        indexes = this.indexes;
+        if (indexes == null)
+          this.indexes = indexes = new ConcurrentHashMap<ResourceIndex.CacheKey, ResourceIndex>();
+      }
+    final ResourceIndex.CacheKey key = new ResourceIndex.CacheKey(name, path,
+        sorted);
+    ResourceIndex index = indexes.get(key);
+    if (index == null) {
+      final List<Resource> embedded = getResources(name);
+      final List<Resource> resources = embedded != null ? embedded
+          : Collections.<Resource> emptyList();
+      final ResourcePath compiled = ResourcePath.compile(path);
+      if (sorted)
+        index = new ResourceIndex.Sorted(resources, compiled);
+      else
+        index = new ResourceIndex.Hash(resources, compiled);
+      final ResourceIndex existing = indexes.putIfAbsent(key, index);
+      if (existing != null)
+        index = existing;
+    }
+    return index;
+  }
+
+  /**
+   * Find embedded resources with the given value at a property path
+   * <p>
+   * A hash index of the embedded resources is built on first use and cached
+   * on this resource. Call {@link #markModified()} after changing embedded
+   * resources to discard cached indexes.
+   *
+   * @param name
+   *          name of embedded resources
+   * @param path
+   *          expression compiled as a {@link ResourcePath}
+   * @param value
+   *          value to match, null matches no resources
+   * @return non-null but possibly empty list of matching resources
+   */
+  public List<Resource> findResources(final String name, final String path,
+      final Object value) {
+    return getIndex(name, path, false).find(value);
+  }
+
+  /**
+   * Find first embedded resource with the given value at a property path
+   *
+   * @param name
+   *          name of embedded resources
+   * @param path
+   *          expression compiled as a {@link ResourcePath}
+   * @param value
+   * @return resource or null if none match
+   * @see #findResources(String, String, Object)
+   */
+  public Resource findResource(final String name, final String path,
+      final Object value) {
+    final List<Resource> matches = findResources(name, path, value);
+    return !matches.isEmpty() ? matches.get(0) : null;
+  }
+
+  /**
+   * Find embedded resources with values at a property path in the given
+   * range
+   * <p>
+   * A sorted index of the embedded resources is built on first use and
+   * cached on this resource. Only numbers are compared with numbers and
+   * strings with strings. Call {@link #markModified()} after changing
+   * embedded resources to discard cached indexes.
+   *
+   * @param name
+   *          name of embedded resources
+   * @param path
+   *          expression compiled as a {@link ResourcePath}
+   * @param from
+   *          inclusive lower bound, null for no lower bound
+   * @param to
+   *          inclusive upper bound, null for no upper bound
+   * @return non-null but possibly empty list of matching resources ordered by
+   *         value
+   */
+  public List<Resource> findResources(final String name, final String path,
+      final Object from, final Object to) {
+    return ((ResourceIndex.Sorted) getIndex(name, path, true)).find(from, to);
+  }
+
+  /**
+   * Is the original JSON text of this resource and all its embedded
+   * resources retained and unmodified?
+   *
+   * @return true if unmodified, false otherwise
+   */
+  boolean isRawIntact() {
+    if (raw == null)
+      return false;
+    for (List<Resource> children : resources.values())
+      for (Resource child : children)
+        if (!child.isRawIntact())
+          return false;
+    return true;
+  }
+
+  void setRaw(final String raw, final int start, final int end) {
+    this.raw = raw;
+    rawStart = start;
+    rawEnd = end;
+  }
+
   /**
    * Does this resource have a link to the next resource?
    *
@@ -528,12 +1296,24 @@ public class Resource implements Iterable<Resource>, Serializable {
 
   /**
    * Load the next resource
+   * <p>
+   * The maps, lists, and buffers of the next resource are presized using the
+   * sizes observed on this resource and the pages before it
    *
    * @return next resource
    * @throws IOException
    */
   public Resource next() throws IOException {
-    return requestResource(getNextUri());
+    return requestResource("next", getNextUri(), getPageStats());
+  }
+
+  /**
+   * Get statistics of this page and the previous pages it was requested from
+   *
+   * @return stats
+   */
+  PageStats getPageStats() {
+    return new PageStats(stats, this, bodyBytes);
   }
 
   /**
@@ -543,7 +1323,7 @@ public class Resource implements Iterable<Resource>, Serializable {
    * @throws IOException
    */
   public Resource load() throws IOException {
-    return requestResource(getSelfUri());
+    return requestResource("self", getSelfUri());
   }
 
   /**
@@ -554,7 +1334,56 @@ public class Resource implements Iterable<Resource>, Serializable {
    * @throws Exception
    */
   public Resource load(final String linkName) throws Exception {
-    return requestResource(getLinkUri(linkName));
+    final Resource resource = getLoaded(linkName);
+    if (resource != null)
+      return resource;
+    return requestResource(linkName, getLinkUri(linkName));
+  }
+
+  /**
+   * Get resource previously loaded from the link with the given name
+   *
+   * @param linkName
+   * @return resource or null if the link has not been bulk loaded
+   */
+  public synchronized Resource getLoaded(final String linkName) {
+    return loaded != null ? loaded.get(linkName) : null;
+  }
+
+  /**
+   * Load the resource linked to with the given link name from every embedded
+   * resource with the given name
+   * <p>
+   * Identical URIs are only requested once and the loaded resources are
+   * attached so that calling {@link #load(String)} on an embedded resource does
+   * not make another request.
+   *
+   * @param name
+   * @param linkName
+   * @param concurrency
+   *          maximum number of requests to make at once
+   * @return map of requested URIs to loaded resources
+   * @throws IOException
+   */
+  public Map<String, Resource> loadAll(final String name,
+      final String linkName, final int concurrency) throws IOException {
+    return new BulkLoader(concurrency).load(getResources(name), linkName);
+  }
+
+  /**
+   * Load the resources linked to by every link with the given name
+   * <p>
+   * Identical URIs are only requested once.
+   *
+   * @param linkName
+   * @param concurrency
+   *          maximum number of requests to make at once
+   * @return map of requested URIs to loaded resources in link order
+   * @throws IOException
+   */
+  public Map<String, Resource> loadLinks(final String linkName,
+      final int concurrency) throws IOException {
+    return new BulkLoader(concurrency).loadLinks(this, linkName);
   }
 
   /**
@@ -0,0 +1,505 @@
+/*
+ * Copyright (c) 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package com.github.kevinsawicki.halligan;
+
+import static com.github.kevinsawicki.halligan.DefaultGsonFactory.GSON_FACTORY;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Compact binary encoding of a {@link Resource} and its embedded resources
+ * <p>
+ * Counts and integers are written as variable-length integers, each distinct
+ * string is written once and then referenced by its index in a string table,
+ * and numbers are written with a type tag so that integral values take as few
+ * bytes as possible.
+ * <p>
+ * The HTTP status code, properties, links, and embedded resources are encoded.
+ * Resources attached by {@link Resource#loadAll(String, String, int)} and the
+ * state of {@link Resource} subclasses are not.
+ */
+public class ResourceCodec {
+
+  private static final int MAGIC = 0x48414C01;
+
+  private static final int NULL = 0;
+
+  private static final int TRUE = 1;
+
+  private static final int FALSE = 2;
+
+  private static final int INTEGRAL_DOUBLE = 3;
+
+  private static final int DOUBLE = 4;
+
+  private static final int INTEGER = 5;
+
+  private static final int LONG = 6;
+
+  private static final int STRING = 7;
+
+  private static final int MAP = 8;
+
+  private static final int LIST = 9;
+
+  private static final int EMBEDDED_ARRAY = 0;
+
+  private static final int EMBEDDED_OBJECT = 1;
+
+  private static final String CHARSET = "UTF-8";
+
+  /**
+   * Encode resource to bytes
+   *
+   * @param resource
+   * @return bytes
+   * @throws IOException
+   */
+  public static byte[] toBytes(final Resource resource) throws IOException {
+    ResourceCodec codec = new ResourceCodec(new byte[1024]);
+    codec.writeResource(resource);
+    byte[] bytes = new byte[codec.position];
+    System.arraycopy(codec.buffer, 0, bytes, 0, codec.position);
+    return bytes;
+  }
+
+  /**
+   * Write encoded resource to stream
+   *
+   * @param resource
+   * @param output
+   * @throws IOException
+   */
+  public static void write(final Resource resource, final OutputStream output)
+      throws IOException {
+    ResourceCodec codec = new ResourceCodec(new byte[1024]);
+    codec.writeResource(resource);
+    output.write(codec.buffer, 0, codec.position);
+  }
+
+  /**
+   * Decode resource from bytes
+   *
+   * @param bytes
+   * @return resource
+   * @throws IOException
+   */
+  public static Resource fromBytes(final byte[] bytes) throws IOException {
+    return fromBytes(bytes, GSON_FACTORY, null);
+  }
+
+  /**
+   * Decode resource from bytes
+   *
+   * @param bytes
+   * @param gson
+   * @param policy
+   *          policy used to request linked resources, null for the default
+   * @return resource
+   * @throws IOException
+   */
+  public static Resource fromBytes(final byte[] bytes, final GsonFactory gson,
+      final RequestPolicy policy) throws IOException {
+    return new ResourceCodec(bytes).readResource(gson, policy);
+  }
+
+  /**
+   * Read encoded resource from stream
+   *
+   * @param input
+   * @return resource
+   * @throws IOException
+   */
+  public static Resource read(final InputStream input) throws IOException {
+    return read(input, GSON_FACTORY, null);
+  }
+
+  /**
+   * Read encoded resource from stream
+   *
+   * @param input
+   * @param gson
+   * @param policy
+   *          policy used to request linked resources, null for the default
+   * @return resource
+   * @throws IOException
+   */
+  public static Resource read(final InputStream input, final GsonFactory gson,
+      final RequestPolicy policy) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    byte[] buffer = new byte[8192];
+    int read;
+    while ((read = input.read(buffer)) != -1)
+      bytes.write(buffer, 0, read);
+    return fromBytes(bytes.toByteArray(), gson, policy);
+  }
+
+  private final Map<String, Integer> writtenStrings = new HashMap<String, Integer>();
+
+  private final List<String> readStrings = new ArrayList<String>();
+
+  private byte[] buffer;
+
+  private int position;
+
+  private ResourceCodec(final byte[] buffer) {
+    this.buffer = buffer;
+  }
+
+  private void ensure(final int length) {
+    if (position + length > buffer.length) {
+      byte[] grown = new byte[Math.max(buffer.length * 2, position + length)];
+      System.arraycopy(buffer, 0, grown, 0, position);
+      buffer = grown;
+    }
+  }
+
+  private void writeByte(final int value) {
+    ensure(1);
+    buffer[position++] = (byte) value;
+  }
+
+  private void writeVarint(long value) {
+    ensure(10);
+    while ((value & ~0x7FL) != 0) {
+      buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    buffer[position++] = (byte) value;
+  }
+
+  private void writeSigned(final long value) {
+    writeVarint((value << 1) ^ (value >> 63));
+  }
+
+  private void writeFixed64(final long value) {
+    ensure(8);
+    for (int shift = 56; shift >= 0; shift -= 8)
+      buffer[position++] = (byte) (value >>> shift);
+  }
+
+  private void writeString(final String value)
+      throws UnsupportedEncodingException {
+    if (value == null) {
+      writeVarint(0);
+      return;
+    }
+    Integer index = writtenStrings.get(value);
+    if (index != null) {
+      writeVarint(((long) index << 1) | 1);
+      return;
+    }
+    writtenStrings.put(value, writtenStrings.size());
+    byte[] bytes = value.getBytes(CHARSET);
+    writeVarint((bytes.length + 1L) << 1);
+    ensure(bytes.length);
+    System.arraycopy(bytes, 0, buffer, position, bytes.length);
+    position += bytes.length;
+  }
+
+  private void writeValue(final Object value) throws IOException {
+    if (value == null)
+      writeByte(NULL);
+    else if (value instanceof String) {
+      writeByte(STRING);
+      writeString((String) value);
+    } else if (value instanceof Boolean)
+      writeByte(((Boolean) value).booleanValue() ? TRUE : FALSE);
+    else if (value instanceof Integer) {
+      writeByte(INTEGER);
+      writeSigned(((Integer) value).intValue());
+    } else if (value instanceof Long) {
+      writeByte(LONG);
+      writeSigned(((Long) value).longValue());
+    } else if (value instanceof Number) {
+      double number = ((Number) value).doubleValue();
+      long integral = (long) number;
+      if (integral == number && integral != Long.MIN_VALUE
+          && (integral != 0 || 1 / number > 0)) {
+        writeByte(INTEGRAL_DOUBLE);
+        writeSigned(integral);
+      } else {
+        writeByte(DOUBLE);
+        writeFixed64(Double.doubleToRawLongBits(number));
+      }
+    } else if (value instanceof Map) {
+      writeByte(MAP);
+      writeMap((Map<?, ?>) value);
+    } else if (value instanceof Collection) {
+      Collection<?> values = (Collection<?>) value;
+      writeByte(LIST);
+      writeVarint(values.size());
+      for (Object element : values)
+        writeValue(element);
+    } else
+      throw new IOException("Unsupported value type: "
+          + value.getClass().getName());
+  }
+
+  private void writeMap(final Map<?, ?> map) throws IOException {
+    writeVarint(map.size());
+    for (Entry<?, ?> entry : map.entrySet()) {
+      Object key = entry.getKey();
+      writeString(key != null ? key.toString() : null);
+      writeValue(entry.getValue());
+    }
+  }
+
+  private void writeLink(final Link link) throws IOException {
+    writeString(link.href);
+    writeString(link.hreflang);
+    writeString(link.name);
+    writeString(link.profile);
+    writeByte(link.templated ? TRUE : FALSE);
+    writeString(link.title);
+    writeString(link.type);
+    writeMap(link.properties);
+  }
+
+  private void writeEmbedded(final Resource resource) throws IOException {
+    writeMap(resource.properties);
+
+    final Map<String, Link[]> arrays = resource.linkArrays();
+    int single = resource.links.size();
+    if (arrays != null)
+      for (String rel : arrays.keySet())
+        if (resource.links.containsKey(rel))
+          single--;
+    writeVarint(single);
+    for (Entry<String, Link> link : resource.links.entrySet())
+      if (arrays == null || !arrays.containsKey(link.getKey())) {
+        writeString(link.getKey());
+        writeLink(link.getValue());
+      }
+
+    writeVarint(arrays != null ? arrays.size() : 0);
+    if (arrays != null)
+      for (Entry<String, Link[]> entry : arrays.entrySet()) {
+        writeString(entry.getKey());
+        writeVarint(entry.getValue().length);
+        for (Link link : entry.getValue())
+          writeLink(link);
+      }
+
+    writeVarint(resource.resources.size());
+    for (Entry<String, List<Resource>> entry : resource.resources.entrySet()) {
+      writeString(entry.getKey());
+      List<Resource> resources = entry.getValue();
+      boolean object = resources.size() == 1
+          && resource.isEmbeddedObject(entry.getKey());
+      writeByte(object ? EMBEDDED_OBJECT : EMBEDDED_ARRAY);
+      writeVarint(resources.size());
+      for (Resource child : resources)
+        writeEmbedded(child);
+    }
+  }
+
+  private void writeResource(final Resource resource) throws IOException {
+    writeFixed32(MAGIC);
+    writeVarint(resource.code());
+    writeString(resource.prefix());
+    writeEmbedded(resource);
+  }
+
+  private void writeFixed32(final int value) {
+    ensure(4);
+    for (int shift = 24; shift >= 0; shift -= 8)
+      buffer[position++] = (byte) (value >>> shift);
+  }
+
+  private int readByte() throws IOException {
+    if (position >= buffer.length)
+      throw new IOException("Unexpected end of encoded resource");
+    return buffer[position++] & 0xFF;
+  }
+
+  private long readVarint() throws IOException {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      int b = readByte();
+      value |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0)
+        return value;
+    }
+    throw new IOException("Malformed variable-length integer");
+  }
+
+  private int readCount() throws IOException {
+    long count = readVarint();
+    if (count < 0 || count > buffer.length - position)
+      throw new IOException("Invalid count: " + count);
+    return (int) count;
+  }
+
+  private long readSigned() throws IOException {
+    long value = readVarint();
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  private long readFixed64() throws IOException {
+    long value = 0;
+    for (int i = 0; i < 8; i++)
+      value = (value << 8) | readByte();
+    return value;
+  }
+
+  private int readFixed32() throws IOException {
+    int value = 0;
+    for (int i = 0; i < 4; i++)
+      value = (value << 8) | readByte();
+    return value;
+  }
+
+  private String readString() throws IOException {
+    long value = readVarint();
+    if (value == 0)
+      return null;
+    if ((value & 1) == 1) {
+      long index = value >>> 1;
+      if (index >= readStrings.size())
+        throw new IOException("Invalid string reference: " + index);
+      return readStrings.get((int) index);
+    }
+    long length = (value >>> 1) - 1;
+    if (length > buffer.length - position)
+      throw new IOException("Invalid string length: " + length);
+    String string = new String(buffer, position, (int) length, CHARSET);
+    position += (int) length;
+    readStrings.add(string);
+    return string;
+  }
+
+  private Object readValue() throws IOException {
+    int type = readByte();
+    switch (type) {
+    case NULL:
+      return null;
+    case TRUE:
+      return Boolean.TRUE;
+    case FALSE:
+      return Boolean.FALSE;
+    case INTEGRAL_DOUBLE:
+      return Double.valueOf(readSigned());
+    case DOUBLE:
+      return Double.valueOf(Double.longBitsToDouble(readFixed64()));
+    case INTEGER:
+      return Integer.valueOf((int) readSigned());
+    case LONG:
+      return Long.valueOf(readSigned());
+    case STRING:
+      return readString();
+    case MAP:
+      return readMap(new LinkedHashMap<String, Object>());
+    case LIST:
+      int size = readCount();
+      List<Object> values = new ArrayList<Object>(size);
+      for (int i = 0; i < size; i++)
+        values.add(readValue());
+      return values;
+    default:
+      throw new IOException("Unrecognized value type: " + type);
+    }
+  }
+
+  private Map<String, Object> readMap(final Map<String, Object> map)
+      throws IOException {
+    int size = readCount();
+    for (int i = 0; i < size; i++) {
+      String key = readString();
+      map.put(key, readValue());
+    }
+    return map;
+  }
+
+  private Link readLink() throws IOException {
+    String href = readString();
+    String hreflang = readString();
+    String name = readString();
+    String profile = readString();
+    boolean templated = readByte() == TRUE;
+    String title = readString();
+    String type = readString();
+    return new Link(href, hreflang, name, profile, templated, title, type,
+        readMap(new HashMap<String, Object>()));
+  }
+
+  private Resource readEmbedded(final Resource resource) throws IOException {
+    readMap(resource.properties);
+
+    int links = readCount();
+    for (int i = 0; i < links; i++) {
+      String rel = readString();
+      resource.links.put(rel, readLink());
+    }
+
+    int arrays = readCount();
+    for (int i = 0; i < arrays; i++) {
+      String rel = readString();
+      Link[] array = new Link[readCount()];
+      for (int j = 0; j < array.length; j++)
+        array[j] = readLink();
+      resource.setLinks(rel, array);
+    }
+
+    int rels = readCount();
+    for (int i = 0; i < rels; i++) {
+      String rel = readString();
+      int kind = readByte();
+      int size = readCount();
+      List<Resource> resources = new ArrayList<Resource>(size);
+      for (int j = 0; j < size; j++)
+        resources.add(readEmbedded(new Resource(resource, resource.gson)));
+      if (kind == EMBEDDED_OBJECT && size == 1) {
+        resource.resources.put(rel,
+            Collections.singletonList(resources.get(0)));
+        resource.setEmbeddedObject(rel, true);
+      } else
+        resource.resources.put(rel, resources);
+    }
+    return resource;
+  }
+
+  private Resource readResource(final GsonFactory gson,
+      final RequestPolicy policy) throws IOException {
+    position = 0;
+    int magic = readFixed32();
+    if (magic != MAGIC)
+      throw new IOException("Not an encoded resource");
+    Resource resource = policy != null ? new Resource(gson, policy)
+        : new Resource(gson);
+    resource.code = (int) readVarint();
+    resource.prefix = readString();
+    return readEmbedded(resource);
+  }
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package com.github.kevinsawicki.halligan;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Index of embedded resources by the value of a property path
+ * <p>
+ * Numbers are indexed as doubles so lookups match regardless of the
+ * {@link Number} type used. Resources without a value are not indexed.
+ */
+abstract class ResourceIndex {
+
+  /**
+   * Get index key for value
+   *
+   * @param value
+   * @return key
+   */
+  static Object key(final Object value) {
+    if (value instanceof Number && !(value instanceof Double))
+      return Double.valueOf(((Number) value).doubleValue());
+    return value;
+  }
+
+  private static int rank(final Object key) {
+    if (key instanceof Boolean)
+      return 0;
+    if (key instanceof Double)
+      return 1;
+    if (key instanceof String)
+      return 2;
+    return 3;
+  }
+
+  /**
+   * Compare keys ordering booleans before numbers and numbers before strings
+   */
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private static final Comparator<Object> KEY_ORDER = new Comparator<Object>() {
+
+    public int compare(final Object key1, final Object key2) {
+      final int rank1 = rank(key1);
+      final int rank2 = rank(key2);
+      if (rank1 != rank2)
+        return rank1 < rank2 ? -1 : 1;
+      return ((Comparable) key1).compareTo(key2);
+    }
+  };
+
+  /**
+   * Key of an index cached by a resource
+   */
+  static final class CacheKey {
+
+    private final String name;
+
+    private final String path;
+
+    private final boolean sorted;
+
+    /**
+     * Create key of index
+     *
+     * @param name
+     * @param path
+     * @param sorted
+     */
+    CacheKey(final String name, final String path, final boolean sorted) {
+      this.name = name;
+      this.path = path;
+      this.sorted = sorted;
+    }
+
+    @Override
+    public int hashCode() {
+      int hash = name != null ? name.hashCode() : 0;
+      hash = 31 * hash + (path != null ? path.hashCode() : 0);
+      return 31 * hash + (sorted ? 1 : 0);
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+      if (obj == this)
+        return true;
+      if (!(obj instanceof CacheKey))
+        return false;
+      final CacheKey other = (CacheKey) obj;
+      return sorted == other.sorted
+          && (name != null ? name.equals(other.name) : other.name == null)
+          && (path != null ? path.equals(other.path) : other.path == null);
+    }
+  }
+
+  /**
+   * Find resources with value
+   *
+   * @param value
+   * @return non-null but possibly empty list of resources in document order,
+   *         empty if the value is null
+   */
+  abstract List<Resource> find(Object value);
+
+  /**
+   * Index that finds resources with a hash lookup
+   */
+  static class Hash extends ResourceIndex {
+
+    private final Map<Object, List<Resource>> resources = new HashMap<Object, List<Resource>>();
+
+    Hash(final List<Resource> embedded, final ResourcePath path) {
+      for (Resource resource : embedded) {
+        Object key = key(path.getValue(resource));
+        if (key == null)
+          continue;
+        List<Resource> matches = resources.get(key);
+        if (matches == null) {
+          matches = new ArrayList<Resource>(1);
+          resources.put(key, matches);
+        }
+        matches.add(resource);
+      }
+      for (Entry<Object, List<Resource>> entry : resources.entrySet())
+        entry.setValue(Collections.unmodifiableList(entry.getValue()));
+    }
+
+    List<Resource> find(final Object value) {
+      final List<Resource> matches = resources.get(key(value));
+      return matches != null ? matches : Collections.<Resource> emptyList();
+    }
+  }
+
+  /**
+   * Index that finds resources with a binary search of sorted values
+   */
+  static class Sorted extends ResourceIndex {
+
+    private final Object[] keys;
+
+    private final List<Resource> resources;
+
+    Sorted(final List<Resource> embedded, final ResourcePath path) {
+      final List<Object[]> entries = new ArrayList<Object[]>(embedded.size());
+      for (Resource resource : embedded) {
+        Object key = key(path.getValue(resource));
+        if (key != null && rank(key) < 3)
+          entries.add(new Object[] { key, resource });
+      }
+      // Stable sort keeps resources with equal values in document order
+      Collections.sort(entries, new Comparator<Object[]>() {
+
+        public int compare(final Object[] entry1, final Object[] entry2) {
+          return KEY_ORDER.compare(entry1[0], entry2[0]);
+        }
+      });
+      keys = new Object[entries.size()];
+      final Resource[] sorted = new Resource[keys.length];
+      for (int i = 0; i < keys.length; i++) {
+        keys[i] = entries.get(i)[0];
+        sorted[i] = (Resource) entries.get(i)[1];
+      }
+      resources = Collections.unmodifiableList(Arrays.asList(sorted));
+    }
+
+    private int search(final Object key, final boolean after) {
+      int low = 0;
+      int high = keys.length;
+      while (low < high) {
+        final int middle = (low + high) >>> 1;
+        final int compare = KEY_ORDER.compare(keys[middle], key);
+        if (compare < 0 || (after && compare == 0))
+          low = middle + 1;
+        else
+          high = middle;
+      }
+      return low;
+    }
+
+    private int searchRank(final int rank) {
+      int low = 0;
+      int high = keys.length;
+      while (low < high) {
+        final int middle = (low + high) >>> 1;
+        if (rank(keys[middle]) < rank)
+          low = middle + 1;
+        else
+          high = middle;
+      }
+      return low;
+    }
+
+    List<Resource> find(final Object value) {
+      if (value == null)
+        return Collections.emptyList();
+      return find(value, value);
+    }
+
+    /**
+     * Find resources with values between the given bounds
+     * <p>
+     * Only values of the same type as the bounds are found.
+     *
+     * @param from
+     *          inclusive lower bound, null for no lower bound
+     * @param to
+     *          inclusive upper bound, null for no upper bound
+     * @return non-null but possibly empty list of resources in value order
+     */
+    List<Resource> find(final Object from, final Object to) {
+      final Object fromKey = key(from);
+      final Object toKey = key(to);
+      if (fromKey == null && toKey == null)
+        return resources;
+      final int rank = rank(fromKey != null ? fromKey : toKey);
+      if (rank == 3 || (toKey != null && rank(toKey) != rank))
+        return Collections.emptyList();
+      final int start = fromKey != null ? search(fromKey, false)
+          : searchRank(rank);
+      final int end = toKey != null ? search(toKey, true)
+          : searchRank(rank + 1);
+      return start < end ? resources.subList(start, end) : Collections
+          .<Resource> emptyList();
+    }
+  }
+}
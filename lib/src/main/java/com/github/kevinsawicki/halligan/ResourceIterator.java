@@ -23,6 +23,7 @@ package com.github.kevinsawicki.halligan;
 
 import java.io.IOException;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
 
 /**
@@ -30,10 +31,68 @@ import java.util.NoSuchElementException;
  */
 public class ResourceIterator implements Iterator<Resource> {
 
+  /**
+   * Visitor of resources embedded across pages
+   */
+  interface Visitor {
+
+    /**
+     * Visit embedded resource
+     *
+     * @param resource
+     */
+    void visit(Resource resource);
+  }
+
   private Resource resource;
 
   private boolean advanced;
 
+  private int pages;
+
+  private boolean completed;
+
+  /**
+   * Get the request failure that caused iteration to stop
+   * <p>
+   * Rethrows the given exception if it wasn't caused by a failed request.
+   *
+   * @param e
+   * @return cause of the exception
+   */
+  static IOException getFailure(final NoSuchElementException e) {
+    if (e.getCause() instanceof IOException)
+      return (IOException) e.getCause();
+    throw e;
+  }
+
+  /**
+   * Visit the resources embedded with the given name in the resource and
+   * in every page that follows it
+   * <p>
+   * Pages are requested one at a time using the next link of the previous
+   * page and are not retained.
+   *
+   * @param resource
+   * @param name
+   * @param visitor
+   * @throws IOException
+   *           if requesting a page fails
+   */
+  static void visitEmbedded(final Resource resource, final String name,
+      final Visitor visitor) throws IOException {
+    try {
+      for (Resource page : resource) {
+        List<Resource> embedded = page.getResources(name);
+        if (embedded != null)
+          for (Resource item : embedded)
+            visitor.visit(item);
+      }
+    } catch (NoSuchElementException e) {
+      throw getFailure(e);
+    }
+  }
+
   /**
    * Create iterator starting at given resource
    * <p>
@@ -46,24 +105,44 @@ public class ResourceIterator implements Iterator<Resource> {
   }
 
   public boolean hasNext() {
-    return !advanced || resource.hasNext();
+    if (!advanced || resource.hasNext())
+      return true;
+    if (!completed) {
+      completed = true;
+      final HalMetrics metrics = resource.getPolicy().getMetrics();
+      if (metrics != null)
+        metrics.iterationCompleted(pages);
+    }
+    return false;
   }
 
   public Resource next() {
     if (!hasNext())
       throw new NoSuchElementException("Resource does not have a next link");
 
-    if (advanced)
+    if (advanced) {
+      final TraceSpan span = TraceSpan.start(resource.getPolicy().getTracer(),
+          TraceSpan.Kind.PAGE, "next", resource.resolveUri(resource
+              .getNextUri()));
       try {
         resource = resource.next();
       } catch (IOException e) {
+        if (span != null)
+          span.end(-1, e);
         NoSuchElementException nsee = new NoSuchElementException(
             "Requesting next resource failed");
         nsee.initCause(e);
         throw nsee;
+      } catch (RuntimeException e) {
+        if (span != null)
+          span.end(-1, e);
+        throw e;
       }
-    else
+      if (span != null)
+        span.end(resource.code(), null);
+    } else
       advanced = true;
+    pages++;
     return resource;
   }
 
@@ -0,0 +1,329 @@
+/*
+ * Copyright (c) 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package com.github.kevinsawicki.halligan;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Compiled path expression that selects a value from a resource or link
+ * <p>
+ * Expressions are names separated by '.' where each name may be followed by
+ * one or more list indexes such as <code>items[0]</code>. Names are looked up
+ * in the properties of a resource, then in its links when the name is
+ * <code>_links</code>, and then in its embedded resources. Embedded
+ * resources are selected as a list unless they were embedded as a single
+ * object. Link relations are selected as a list when their value is an array
+ * of links. Names are looked up in the fields and properties of links and in
+ * the entries of nested maps.
+ * <p>
+ * Expressions are parsed once when compiled and instances are immutable so
+ * they can be shared and evaluated concurrently.
+ */
+public final class ResourcePath {
+
+  private static final int[] NO_INDEXES = new int[0];
+
+  /**
+   * Compile expression into a path
+   *
+   * @param expression
+   * @return path
+   * @throws IllegalArgumentException
+   *           if the expression is malformed
+   */
+  public static ResourcePath compile(final String expression) {
+    if (expression == null)
+      throw new IllegalArgumentException("Expression cannot be null");
+    final List<String> names = new ArrayList<String>();
+    final List<int[]> indexes = new ArrayList<int[]>();
+    int start = 0;
+    final int length = expression.length();
+    while (start <= length) {
+      int end = expression.indexOf('.', start);
+      if (end == -1)
+        end = length;
+      final String segment = expression.substring(start, end);
+      int bracket = segment.indexOf('[');
+      final String name = bracket != -1 ? segment.substring(0, bracket)
+          : segment;
+      if (name.length() == 0)
+        throw new IllegalArgumentException("Empty name in expression: "
+            + expression);
+      names.add(name);
+      indexes.add(bracket != -1 ? parseIndexes(expression, segment, bracket)
+          : NO_INDEXES);
+      start = end + 1;
+    }
+    return new ResourcePath(expression, names.toArray(new String[names
+        .size()]), indexes.toArray(new int[indexes.size()][]));
+  }
+
+  private static int[] parseIndexes(final String expression,
+      final String segment, int bracket) {
+    final List<Integer> indexes = new ArrayList<Integer>(1);
+    while (bracket < segment.length()) {
+      final int close = segment.indexOf(']', bracket);
+      if (segment.charAt(bracket) != '[' || close == -1)
+        throw new IllegalArgumentException("Malformed index in expression: "
+            + expression);
+      try {
+        final int index = Integer.parseInt(segment.substring(bracket + 1,
+            close));
+        if (index < 0)
+          throw new IllegalArgumentException("Negative index in expression: "
+              + expression);
+        indexes.add(index);
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("Malformed index in expression: "
+            + expression);
+      }
+      bracket = close + 1;
+    }
+    final int[] values = new int[indexes.size()];
+    for (int i = 0; i < values.length; i++)
+      values[i] = indexes.get(i);
+    return values;
+  }
+
+  private static Map<String, ?> links(final Resource resource) {
+    final Map<String, Link[]> arrays = resource.linkArrays();
+    if (arrays == null)
+      return resource.links;
+    final Map<String, Object> links = new HashMap<String, Object>(
+        resource.links);
+    for (Entry<String, Link[]> entry : arrays.entrySet())
+      links.put(entry.getKey(), Arrays.asList(entry.getValue()));
+    return links;
+  }
+
+  private static Object select(final Object target, final String name) {
+    if (target instanceof Resource) {
+      final Resource resource = (Resource) target;
+      final Object value = resource.properties.get(name);
+      if (value != null)
+        return value;
+      if ("_links".equals(name))
+        return links(resource);
+      final List<Resource> embedded = resource.resources.get(name);
+      if (embedded != null && resource.isEmbeddedObject(name))
+        return embedded.get(0);
+      return embedded;
+    }
+    if (target instanceof Map)
+      return ((Map<?, ?>) target).get(name);
+    if (target instanceof Link)
+      return select((Link) target, name);
+    return null;
+  }
+
+  private static Object select(final Link link, final String name) {
+    if ("href".equals(name))
+      return link.href;
+    if ("templated".equals(name))
+      return link.templated;
+    if ("hreflang".equals(name))
+      return link.hreflang;
+    if ("name".equals(name))
+      return link.name;
+    if ("profile".equals(name))
+      return link.profile;
+    if ("title".equals(name))
+      return link.title;
+    if ("type".equals(name))
+      return link.type;
+    return link.properties.get(name);
+  }
+
+  private static Object select(final Object target, final int index) {
+    if (target instanceof List) {
+      final List<?> list = (List<?>) target;
+      return index < list.size() ? list.get(index) : null;
+    }
+    if (target instanceof Resource)
+      return index == 0 ? target : null;
+    return null;
+  }
+
+  private final String expression;
+
+  private final String[] names;
+
+  private final int[][] indexes;
+
+  private ResourcePath(final String expression, final String[] names,
+      final int[][] indexes) {
+    this.expression = expression;
+    this.names = names;
+    this.indexes = indexes;
+  }
+
+  private Object evaluate(Object value) {
+    for (int i = 0; i < names.length && value != null; i++) {
+      value = select(value, names[i]);
+      for (int j = 0; j < indexes[i].length && value != null; j++)
+        value = select(value, indexes[i][j]);
+    }
+    return value;
+  }
+
+  /**
+   * Get value at path of resource
+   *
+   * @param resource
+   * @return value or null if missing
+   */
+  public Object getValue(final Resource resource) {
+    return evaluate(resource);
+  }
+
+  /**
+   * Get value at path of link
+   *
+   * @param link
+   * @return value or null if missing
+   */
+  public Object getValue(final Link link) {
+    return evaluate(link);
+  }
+
+  /**
+   * Does resource have a non-null value at path?
+   *
+   * @param resource
+   * @return true if value exists, false otherwise
+   */
+  public boolean has(final Resource resource) {
+    return evaluate(resource) != null;
+  }
+
+  /**
+   * Get int value at path of resource
+   *
+   * @param resource
+   * @return int value or -1 if missing or not a {@link Number}
+   */
+  public int getInt(final Resource resource) {
+    final Object value = evaluate(resource);
+    return value instanceof Number ? ((Number) value).intValue() : -1;
+  }
+
+  /**
+   * Get long value at path of resource
+   *
+   * @param resource
+   * @return long value or -1 if missing or not a {@link Number}
+   */
+  public long getLong(final Resource resource) {
+    final Object value = evaluate(resource);
+    return value instanceof Number ? ((Number) value).longValue() : -1;
+  }
+
+  /**
+   * Get double value at path of resource
+   *
+   * @param resource
+   * @return double value or -1 if missing or not a {@link Number}
+   */
+  public double getDouble(final Resource resource) {
+    final Object value = evaluate(resource);
+    return value instanceof Number ? ((Number) value).doubleValue() : -1;
+  }
+
+  /**
+   * Get boolean value at path of resource
+   *
+   * @param resource
+   * @return boolean value or false if missing or not a {@link Boolean}
+   */
+  public boolean getBoolean(final Resource resource) {
+    final Object value = evaluate(resource);
+    return value instanceof Boolean ? ((Boolean) value).booleanValue() : false;
+  }
+
+  /**
+   * Get string value at path of resource
+   *
+   * @param resource
+   * @return string value or null if missing
+   */
+  public String getString(final Resource resource) {
+    final Object value = evaluate(resource);
+    return value != null ? value.toString() : null;
+  }
+
+  /**
+   * Get string value at path of link
+   *
+   * @param link
+   * @return string value or null if missing
+   */
+  public String getString(final Link link) {
+    final Object value = evaluate(link);
+    return value != null ? value.toString() : null;
+  }
+
+  /**
+   * Get embedded resource at path of resource
+   *
+   * @param resource
+   * @return resource or null if missing or not a resource
+   */
+  public Resource getResource(final Resource resource) {
+    final Object value = evaluate(resource);
+    return value instanceof Resource ? (Resource) value : null;
+  }
+
+  /**
+   * Get map value at path of resource
+   *
+   * @param resource
+   * @return map or null if missing or not a {@link Map}
+   */
+  @SuppressWarnings("unchecked")
+  public Map<String, Object> getMap(final Resource resource) {
+    final Object value = evaluate(resource);
+    return value instanceof Map ? (Map<String, Object>) value : null;
+  }
+
+  @Override
+  public int hashCode() {
+    return expression.hashCode();
+  }
+
+  @Override
+  public boolean equals(final Object obj) {
+    if (obj == this)
+      return true;
+    return obj instanceof ResourcePath
+        && expression.equals(((ResourcePath) obj).expression);
+  }
+
+  @Override
+  public String toString() {
+    return expression;
+  }
+}
@@ -0,0 +1,453 @@
+/*
+ * Copyright (c) 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package com.github.kevinsawicki.halligan;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Columnar table of resources stored in direct memory
+ * <p>
+ * Each top-level property is stored in a column typed by the first non-null
+ * value added for it: numbers as doubles, booleans as bytes, and strings as
+ * identifiers into a dictionary of distinct values. The self link of each
+ * row is stored in a separate href column. Null values, nested maps, and
+ * values that don't match the type of their column are not stored.
+ * <p>
+ * Values and self links are kept in direct memory. The heap holds the column
+ * names and, for string columns, the dictionary of distinct values and their
+ * identifiers, so heap usage grows with the number of distinct strings
+ * rather than with the number of rows.
+ * <p>
+ * This class is not thread-safe.
+ */
+public class ResourceTable implements Iterable<ResourceTable.Row> {
+
+  private static final String CHARSET = "UTF-8";
+
+  private static final byte NUMBER = 1;
+
+  private static final byte BOOLEAN = 2;
+
+  private static final byte STRING = 3;
+
+  private static byte getType(final Object value) {
+    if (value instanceof Number)
+      return NUMBER;
+    if (value instanceof Boolean)
+      return BOOLEAN;
+    if (value instanceof String)
+      return STRING;
+    return 0;
+  }
+
+  private static class Column {
+
+    final byte type;
+
+    final OffHeapBuffer present = new OffHeapBuffer();
+
+    final OffHeapBuffer values = new OffHeapBuffer();
+
+    final StringDictionary dictionary;
+
+    Column(final byte type) {
+      this.type = type;
+      dictionary = type == STRING ? new StringDictionary() : null;
+    }
+
+    void put(final int row, final Object value) {
+      switch (type) {
+      case NUMBER:
+        values.putDouble((long) row << 3, ((Number) value).doubleValue());
+        break;
+      case BOOLEAN:
+        values.put(row, ((Boolean) value).booleanValue() ? (byte) 1 : 0);
+        break;
+      default:
+        values.putInt((long) row << 2, dictionary.add((String) value));
+      }
+      present.setBit(row);
+    }
+
+    double getDouble(final int row) {
+      if (type != NUMBER || !present.getBit(row))
+        return -1;
+      return values.getDouble((long) row << 3);
+    }
+
+    boolean getBoolean(final int row) {
+      if (type != BOOLEAN || !present.getBit(row))
+        return false;
+      return values.get(row) != 0;
+    }
+
+    String getString(final int row) {
+      if (!present.getBit(row))
+        return null;
+      if (type == STRING)
+        return dictionary.get(values.getInt((long) row << 2));
+      return get(row).toString();
+    }
+
+    Object get(final int row) {
+      if (!present.getBit(row))
+        return null;
+      switch (type) {
+      case NUMBER:
+        return values.getDouble((long) row << 3);
+      case BOOLEAN:
+        return values.get(row) != 0;
+      default:
+        return dictionary.get(values.getInt((long) row << 2));
+      }
+    }
+  }
+
+  /**
+   * View of a row in the table
+   * <p>
+   * Values are read from the table columns on each call and accessors follow
+   * the conventions of {@link Resource}: missing numbers are -1, missing
+   * booleans are false, and missing strings are null.
+   */
+  public static class Row {
+
+    private final ResourceTable table;
+
+    private int row;
+
+    Row(final ResourceTable table, final int row) {
+      this.table = table;
+      this.row = row;
+    }
+
+    /**
+     * Get index of row in the table
+     *
+     * @return index
+     */
+    public int getIndex() {
+      return row;
+    }
+
+    /**
+     * Get value of column
+     *
+     * @param name
+     * @return {@link Double}, {@link Boolean}, {@link String} or null if no
+     *         value
+     */
+    public Object get(final String name) {
+      return table.get(row, name);
+    }
+
+    /**
+     * Does the row have a value for the column?
+     *
+     * @param name
+     * @return true if value present, false otherwise
+     */
+    public boolean hasProperty(final String name) {
+      final Column column = table.getColumn(row, name);
+      return column != null && column.present.getBit(row);
+    }
+
+    /**
+     * Get int value of column
+     *
+     * @param name
+     * @return value or -1 if no number value
+     */
+    public int getInt(final String name) {
+      return (int) getDouble(name);
+    }
+
+    /**
+     * Get long value of column
+     *
+     * @param name
+     * @return value or -1 if no number value
+     */
+    public long getLong(final String name) {
+      return (long) getDouble(name);
+    }
+
+    /**
+     * Get double value of column
+     *
+     * @param name
+     * @return value or -1 if no number value
+     */
+    public double getDouble(final String name) {
+      return table.getDouble(row, name);
+    }
+
+    /**
+     * Get boolean value of column
+     *
+     * @param name
+     * @return value or false if no boolean value
+     */
+    public boolean getBoolean(final String name) {
+      final Column column = table.getColumn(row, name);
+      return column != null ? column.getBoolean(row) : false;
+    }
+
+    /**
+     * Get string value of column
+     *
+     * @param name
+     * @return value or null if no value
+     */
+    public String getString(final String name) {
+      return table.getString(row, name);
+    }
+
+    /**
+     * Get href of self link
+     *
+     * @return href or null if row has no self link
+     */
+    public String getSelfUri() {
+      return table.getSelfUri(row);
+    }
+  }
+
+  private final Map<String, Column> columns = new LinkedHashMap<String, Column>();
+
+  private final OffHeapBuffer hrefOffsets = new OffHeapBuffer();
+
+  private final OffHeapBuffer hrefs = new OffHeapBuffer();
+
+  private long hrefLength;
+
+  private int size;
+
+  /**
+   * Add resource as a new row
+   *
+   * @param resource
+   * @return this table
+   */
+  public ResourceTable add(final Resource resource) {
+    final int row = size;
+    for (Entry<String, Object> property : resource.properties.entrySet()) {
+      final Object value = property.getValue();
+      final byte type = getType(value);
+      if (type == 0)
+        continue;
+      Column column = columns.get(property.getKey());
+      if (column == null) {
+        column = new Column(type);
+        columns.put(property.getKey(), column);
+      } else if (column.type != type)
+        continue;
+      column.put(row, value);
+    }
+    final String href = resource.getSelfUri();
+    if (href != null) {
+      final byte[] bytes;
+      try {
+        bytes = href.getBytes(CHARSET);
+      } catch (UnsupportedEncodingException e) {
+        throw new IllegalStateException(e);
+      }
+      hrefs.putInt(hrefLength, bytes.length);
+      hrefs.put(hrefLength + 4, bytes, 0, bytes.length);
+      hrefOffsets.putLong((long) row << 3, hrefLength + 1);
+      hrefLength += (4 + bytes.length + 3) & ~3;
+    }
+    size++;
+    return this;
+  }
+
+  /**
+   * Add all resources embedded with the given name in the given resource and
+   * all pages that follow it
+   * <p>
+   * Rows are added in page order and each page can be garbage collected once
+   * its rows are added, so a crawl of any length only holds one page on the
+   * heap.
+   *
+   * @param resource
+   * @param name
+   * @return this table
+   * @throws IOException
+   */
+  public ResourceTable addAll(final Resource resource, final String name)
+      throws IOException {
+    ResourceIterator.visitEmbedded(resource, name,
+        new ResourceIterator.Visitor() {
+
+          public void visit(final Resource item) {
+            add(item);
+          }
+        });
+    return this;
+  }
+
+  /**
+   * Get number of rows
+   *
+   * @return row count
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Get names of columns
+   *
+   * @return non-null but possibly empty set of names
+   */
+  public Set<String> getColumns() {
+    return Collections.unmodifiableSet(columns.keySet());
+  }
+
+  private void checkRow(final int row) {
+    if (row < 0 || row >= size)
+      throw new IndexOutOfBoundsException("Row: " + row + ", Size: " + size);
+  }
+
+  private Column getColumn(final int row, final String name) {
+    checkRow(row);
+    return columns.get(name);
+  }
+
+  /**
+   * Get value of column at row
+   *
+   * @param row
+   * @param name
+   * @return {@link Double}, {@link Boolean}, {@link String} or null if no value
+   */
+  public Object get(final int row, final String name) {
+    final Column column = getColumn(row, name);
+    return column != null ? column.get(row) : null;
+  }
+
+  /**
+   * Get number value of column at row
+   *
+   * @param row
+   * @param name
+   * @return value or -1 if no number value
+   */
+  public double getDouble(final int row, final String name) {
+    final Column column = getColumn(row, name);
+    return column != null ? column.getDouble(row) : -1;
+  }
+
+  /**
+   * Get string value of column at row
+   *
+   * @param row
+   * @param name
+   * @return value or null if no value
+   */
+  public String getString(final int row, final String name) {
+    final Column column = getColumn(row, name);
+    return column != null ? column.getString(row) : null;
+  }
+
+  /**
+   * Get href of self link at row
+   *
+   * @param row
+   * @return href or null if row has no self link
+   */
+  public String getSelfUri(final int row) {
+    checkRow(row);
+    final long offset = hrefOffsets.getLong((long) row << 3) - 1;
+    if (offset < 0)
+      return null;
+    final byte[] bytes = new byte[hrefs.getInt(offset)];
+    hrefs.get(offset + 4, bytes, 0, bytes.length);
+    try {
+      return new String(bytes, CHARSET);
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Get view of row
+   *
+   * @param row
+   * @return row
+   */
+  public Row get(final int row) {
+    checkRow(row);
+    return new Row(this, row);
+  }
+
+  /**
+   * Iterate over rows
+   * <p>
+   * The same row view is returned by each call to
+   * {@link Iterator#next()} and moved to the next row, use {@link #get(int)}
+   * for a view that can be retained.
+   */
+  public Iterator<Row> iterator() {
+    return new Iterator<Row>() {
+
+      private final Row view = new Row(ResourceTable.this, -1);
+
+      public boolean hasNext() {
+        return view.row + 1 < size;
+      }
+
+      public Row next() {
+        if (!hasNext())
+          throw new NoSuchElementException();
+        view.row++;
+        return view;
+      }
+
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+
+  /**
+   * Remove all rows and release their memory
+   *
+   * @return this table
+   */
+  public ResourceTable clear() {
+    columns.clear();
+    hrefOffsets.clear();
+    hrefs.clear();
+    hrefLength = 0;
+    size = 0;
+    return this;
+  }
+}
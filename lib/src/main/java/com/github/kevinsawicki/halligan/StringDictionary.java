@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package com.github.kevinsawicki.halligan;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dictionary of distinct strings identified by the order they were added
+ */
+final class StringDictionary {
+
+  private final Map<String, Integer> ids = new HashMap<String, Integer>();
+
+  private final List<String> values = new ArrayList<String>();
+
+  /**
+   * Get identifier of value, adding it to the dictionary if absent
+   *
+   * @param value
+   * @return identifier
+   */
+  int add(final String value) {
+    Integer id = ids.get(value);
+    if (id == null) {
+      id = Integer.valueOf(values.size());
+      ids.put(value, id);
+      values.add(value);
+    }
+    return id.intValue();
+  }
+
+  /**
+   * Get value with identifier
+   *
+   * @param id
+   * @return value
+   */
+  String get(final int id) {
+    return values.get(id);
+  }
+
+  /**
+   * Get number of distinct values
+   *
+   * @return size
+   */
+  int size() {
+    return values.size();
+  }
+
+  /**
+   * Get values indexed by identifier
+   *
+   * @return array of values
+   */
+  String[] toArray() {
+    return values.toArray(new String[values.size()]);
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package com.github.kevinsawicki.halligan;
+
+/**
+ * Bounded pool that deduplicates strings repeated across documents such as
+ * link relations, hrefs, and property names
+ * <p>
+ * The pool is a direct-mapped table indexed by string hash code; a string
+ * whose slot holds an equal string resolves to the pooled instance,
+ * otherwise it replaces the slot's current occupant. Memory is therefore
+ * bounded by the capacity and the maximum pooled length, and frequently
+ * repeated values tend to stay resident.
+ * <p>
+ * Pools may be shared by many threads. Slots are read and written without
+ * locking, which is safe since strings are immutable; a racing write only
+ * costs a missed deduplication.
+ */
+public class StringPool {
+
+  private final String[] table;
+
+  private final int mask;
+
+  private final int maxLength;
+
+  /**
+   * Create pool
+   *
+   * @param capacity
+   *          number of slots, rounded up to the next power of two
+   * @param maxLength
+   *          length of the longest string to pool
+   */
+  public StringPool(final int capacity, final int maxLength) {
+    if (capacity < 1)
+      throw new IllegalArgumentException("Capacity must be at least 1");
+    int size = 1;
+    while (size < capacity)
+      size <<= 1;
+    table = new String[size];
+    mask = size - 1;
+    this.maxLength = maxLength;
+  }
+
+  /**
+   * Create pool with 4096 slots that pools strings up to 256 characters
+   */
+  public StringPool() {
+    this(4096, 256);
+  }
+
+  /**
+   * Get pooled instance equal to the given string
+   *
+   * @param value
+   * @return pooled instance, or the given value if it was not already pooled
+   */
+  public String intern(final String value) {
+    if (value == null || value.length() > maxLength)
+      return value;
+    int hash = value.hashCode();
+    hash ^= hash >>> 16;
+    final int index = hash & mask;
+    final String pooled = table[index];
+    if (pooled != null && pooled.equals(value))
+      return pooled;
+    table[index] = value;
+    return value;
+  }
+
+  /**
+   * Get number of slots
+   *
+   * @return capacity
+   */
+  public int getCapacity() {
+    return table.length;
+  }
+
+  /**
+   * Remove all pooled strings
+   */
+  public void clear() {
+    for (int i = 0; i < table.length; i++)
+      table[i] = null;
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package com.github.kevinsawicki.halligan;
+
+/**
+ * Span start or end recorded by a {@link TraceRecorder}
+ */
+public final class TraceEvent {
+
+  /**
+   * Type of event
+   */
+  public static enum Type {
+
+    /**
+     * Span was started
+     */
+    START,
+
+    /**
+     * Span was ended
+     */
+    END
+  }
+
+  private final long sequence;
+
+  private final Type type;
+
+  private final TraceSpan span;
+
+  private final long nanos;
+
+  /**
+   * Create event
+   *
+   * @param sequence
+   * @param type
+   * @param span
+   * @param nanos
+   */
+  TraceEvent(final long sequence, final Type type, final TraceSpan span,
+      final long nanos) {
+    this.sequence = sequence;
+    this.type = type;
+    this.span = span;
+    this.nanos = nanos;
+  }
+
+  /**
+   * Get position of this event in the order events were recorded
+   *
+   * @return sequence number
+   */
+  public long getSequence() {
+    return sequence;
+  }
+
+  /**
+   * Get type of event
+   *
+   * @return type
+   */
+  public Type getType() {
+    return type;
+  }
+
+  /**
+   * Get span
+   * <p>
+   * The span of a start event may have ended since the event was recorded.
+   *
+   * @return span
+   */
+  public TraceSpan getSpan() {
+    return span;
+  }
+
+  /**
+   * Get time of event as given by {@link System#nanoTime()}
+   *
+   * @return time
+   */
+  public long getNanos() {
+    return nanos;
+  }
+
+  @Override
+  public String toString() {
+    return sequence + " " + type + " " + span;
+  }
+}
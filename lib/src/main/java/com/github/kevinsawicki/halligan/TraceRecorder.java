@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package com.github.kevinsawicki.halligan;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Tracer that keeps the most recent span events in a fixed size ring buffer
+ * <p>
+ * Recording never blocks and never allocates beyond the event itself; once
+ * the buffer is full the oldest events are overwritten.
+ */
+public class TraceRecorder extends HalTracer {
+
+  private final AtomicReferenceArray<TraceEvent> events;
+
+  private final int mask;
+
+  private final AtomicLong sequence = new AtomicLong();
+
+  /**
+   * Create recorder keeping at least the given number of events
+   *
+   * @param capacity
+   *          rounded up to the next power of two
+   */
+  public TraceRecorder(final int capacity) {
+    if (capacity < 1)
+      throw new IllegalArgumentException("Capacity must be at least 1");
+    int size = 1;
+    while (size < capacity)
+      size <<= 1;
+    events = new AtomicReferenceArray<TraceEvent>(size);
+    mask = size - 1;
+  }
+
+  /**
+   * Create recorder keeping the last 1024 events
+   */
+  public TraceRecorder() {
+    this(1024);
+  }
+
+  private void record(final TraceEvent.Type type, final TraceSpan span) {
+    final long next = sequence.getAndIncrement();
+    events.set((int) next & mask, new TraceEvent(next, type, span,
+        System.nanoTime()));
+  }
+
+  @Override
+  public void spanStarted(final TraceSpan span) {
+    record(TraceEvent.Type.START, span);
+  }
+
+  @Override
+  public void spanEnded(final TraceSpan span) {
+    record(TraceEvent.Type.END, span);
+  }
+
+  /**
+   * Get number of events the buffer holds
+   *
+   * @return capacity
+   */
+  public int getCapacity() {
+    return mask + 1;
+  }
+
+  /**
+   * Get number of events recorded including those overwritten
+   *
+   * @return event count
+   */
+  public long getRecordedCount() {
+    return sequence.get();
+  }
+
+  /**
+   * Get events currently in the buffer, oldest first
+   *
+   * @return events
+   */
+  public List<TraceEvent> getEvents() {
+    final long end = sequence.get();
+    final long start = Math.max(0, end - getCapacity());
+    final List<TraceEvent> recorded = new ArrayList<TraceEvent>(
+        (int) (end - start));
+    for (long i = start; i < end; i++) {
+      final TraceEvent event = events.get((int) i & mask);
+      if (event != null && event.getSequence() == i)
+        recorded.add(event);
+    }
+    return recorded;
+  }
+
+  /**
+   * Get spans that have ended and are still in the buffer, oldest first
+   *
+   * @return spans
+   */
+  public List<TraceSpan> getEndedSpans() {
+    final List<TraceSpan> spans = new ArrayList<TraceSpan>();
+    for (TraceEvent event : getEvents())
+      if (event.getType() == TraceEvent.Type.END)
+        spans.add(event.getSpan());
+    return spans;
+  }
+
+  /**
+   * Remove all events from the buffer
+   */
+  public void clear() {
+    for (int i = 0; i <= mask; i++)
+      events.set(i, null);
+  }
+}
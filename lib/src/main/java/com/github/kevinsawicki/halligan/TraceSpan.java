@@ -0,0 +1,275 @@
+/*
+ * Copyright (c) 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package com.github.kevinsawicki.halligan;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Timed operation performed while navigating resources
+ * <p>
+ * The code, byte count, and error are only available once the span has
+ * ended. The byte count of a span includes the bytes read by all the spans
+ * started while it was active.
+ */
+public final class TraceSpan {
+
+  /**
+   * Operation being traced
+   */
+  public static enum Kind {
+
+    /**
+     * Following a link from a resource with {@link Resource#load()},
+     * {@link Resource#load(String)}, or {@link Resource#next()}
+     */
+    HOP,
+
+    /**
+     * Requesting and parsing a document
+     */
+    PARSE,
+
+    /**
+     * Advancing a {@link ResourceIterator} to the next page
+     */
+    PAGE
+  }
+
+  private static final AtomicLong IDS = new AtomicLong();
+
+  private static final ThreadLocal<TraceSpan> CURRENT = new ThreadLocal<TraceSpan>();
+
+  /**
+   * Start span as a child of the span active on the current thread
+   *
+   * @param tracer
+   * @param kind
+   * @param rel
+   *          link relation or null to use the relation of the parent span
+   * @param uri
+   * @return span or null if the tracer is null
+   */
+  static TraceSpan start(final HalTracer tracer, final Kind kind,
+      final String rel, final String uri) {
+    if (tracer == null)
+      return null;
+    final TraceSpan span = new TraceSpan(tracer, CURRENT.get(), kind, rel, uri);
+    CURRENT.set(span);
+    tracer.spanStarted(span);
+    return span;
+  }
+
+  /**
+   * Get span active on the current thread
+   *
+   * @return span or null if none
+   */
+  static TraceSpan current() {
+    return CURRENT.get();
+  }
+
+  private final HalTracer tracer;
+
+  private TraceSpan parent;
+
+  private final long id;
+
+  private final long parentId;
+
+  private final Kind kind;
+
+  private final String rel;
+
+  private final String uri;
+
+  private final long startNanos;
+
+  private volatile long endNanos;
+
+  private volatile int code = -1;
+
+  private volatile long bytes;
+
+  private volatile Throwable error;
+
+  private volatile boolean ended;
+
+  private TraceSpan(final HalTracer tracer, final TraceSpan parent,
+      final Kind kind, final String rel, final String uri) {
+    this.tracer = tracer;
+    this.parent = parent;
+    id = IDS.incrementAndGet();
+    parentId = parent != null ? parent.id : 0;
+    this.kind = kind;
+    this.rel = rel == null && parent != null ? parent.rel : rel;
+    this.uri = uri;
+    startNanos = System.nanoTime();
+  }
+
+  /**
+   * Add to the number of bytes read
+   *
+   * @param bytes
+   */
+  void addBytes(final long bytes) {
+    this.bytes += bytes;
+  }
+
+  /**
+   * End span and make its parent the active span on the current thread
+   *
+   * @param code
+   * @param error
+   *          or null if the operation succeeded
+   */
+  void end(final int code, final Throwable error) {
+    if (ended)
+      return;
+    endNanos = System.nanoTime();
+    this.code = code;
+    this.error = error;
+    ended = true;
+    if (parent != null)
+      parent.addBytes(bytes);
+    if (CURRENT.get() == this)
+      if (parent != null)
+        CURRENT.set(parent);
+      else
+        CURRENT.remove();
+    parent = null;
+    tracer.spanEnded(this);
+  }
+
+  /**
+   * Get unique id of this span
+   *
+   * @return id
+   */
+  public long getId() {
+    return id;
+  }
+
+  /**
+   * Get id of the span that was active when this span started
+   *
+   * @return parent id or 0 if this is a root span
+   */
+  public long getParentId() {
+    return parentId;
+  }
+
+  /**
+   * Get operation being traced
+   *
+   * @return kind
+   */
+  public Kind getKind() {
+    return kind;
+  }
+
+  /**
+   * Get relation of the link being followed
+   *
+   * @return rel or null if not following a link
+   */
+  public String getRel() {
+    return rel;
+  }
+
+  /**
+   * Get URI requested
+   *
+   * @return URI
+   */
+  public String getUri() {
+    return uri;
+  }
+
+  /**
+   * Get time this span started as given by {@link System#nanoTime()}
+   *
+   * @return start time
+   */
+  public long getStartNanos() {
+    return startNanos;
+  }
+
+  /**
+   * Get time taken
+   *
+   * @return duration or -1 if not ended
+   */
+  public long getDurationNanos() {
+    return ended ? endNanos - startNanos : -1;
+  }
+
+  /**
+   * Get response code
+   *
+   * @return code or -1 if not ended or no response was received
+   */
+  public int getCode() {
+    return code;
+  }
+
+  /**
+   * Get number of response body bytes read
+   *
+   * @return byte count
+   */
+  public long getBytes() {
+    return bytes;
+  }
+
+  /**
+   * Get error the operation failed with
+   *
+   * @return error or null if none
+   */
+  public Throwable getError() {
+    return error;
+  }
+
+  /**
+   * Has this span ended?
+   *
+   * @return true if ended, false otherwise
+   */
+  public boolean isEnded() {
+    return ended;
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder builder = new StringBuilder();
+    builder.append(kind).append(' ').append(id);
+    if (parentId != 0)
+      builder.append('<').append(parentId);
+    if (rel != null)
+      builder.append(' ').append(rel);
+    builder.append(' ').append(uri);
+    if (ended)
+      builder.append(' ').append(code).append(' ').append(bytes).append("B ")
+          .append(getDurationNanos() / 1000).append("us");
+    return builder.toString();
+  }
+}
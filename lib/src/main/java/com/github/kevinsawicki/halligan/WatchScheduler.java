@@ -0,0 +1,408 @@
+/*
+ * Copyright (c) 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package com.github.kevinsawicki.halligan;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scheduler that keeps many resources fresh by polling them
+ * <p>
+ * Polls are scheduled on a hashed timer wheel driven by a single thread and
+ * run on a fixed pool of poll threads. Each poll calls
+ * {@link Resource#refresh()} so responses are revalidated with conditional
+ * requests when the policy of the resource has a {@link DiskCache}.
+ * <p>
+ * The polling interval of a resource starts at the minimum interval, grows
+ * by the backoff factor after each poll that finds no changes, up to the
+ * maximum interval, and returns to the minimum interval after a change.
+ * Every delay is randomly jittered so resources watched together spread
+ * their polls out over time. Listeners are only notified when a poll finds
+ * changes or fails.
+ * <p>
+ * Watched resources are refreshed in place on poll threads and so belong to
+ * the scheduler while they are watched: other threads must not read or
+ * modify them. Each watch instead publishes an {@link ImmutableResource}
+ * snapshot of its resource, taken when the watch starts and again after
+ * every poll that finds changes, which any thread can read through
+ * {@link Watch#getSnapshot()}. Listeners are called on the poll thread
+ * after the new snapshot is published and may read the refreshed resource
+ * and the change set while they run.
+ */
+public class WatchScheduler implements Closeable {
+
+  /**
+   * Listener of changes to watched resources
+   */
+  public interface Listener {
+
+    /**
+     * Resource was refreshed and changes were found
+     *
+     * @param resource
+     * @param changes
+     */
+    void changed(Resource resource, ChangeSet changes);
+
+    /**
+     * Refreshing resource failed
+     *
+     * @param resource
+     * @param error
+     */
+    void failed(Resource resource, IOException error);
+  }
+
+  /**
+   * Registration of a watched resource
+   */
+  public class Watch {
+
+    private final Resource resource;
+
+    private final Listener listener;
+
+    private volatile boolean cancelled;
+
+    private volatile long interval;
+
+    private volatile long polls;
+
+    private volatile ImmutableResource snapshot;
+
+    private long delay;
+
+    private long rounds;
+
+    private Watch(final Resource resource, final Listener listener) {
+      this.resource = resource;
+      this.listener = listener;
+      interval = minInterval;
+      snapshot = ImmutableResource.of(resource);
+    }
+
+    /**
+     * Get watched resource
+     * <p>
+     * The resource is refreshed on poll threads and must only be read from
+     * a listener while this watch is active, use {@link #getSnapshot()}
+     * from other threads.
+     *
+     * @return resource
+     */
+    public Resource getResource() {
+      return resource;
+    }
+
+    /**
+     * Get snapshot of the watched resource as of the latest poll that found
+     * changes
+     *
+     * @return snapshot that is safe to read from any thread
+     */
+    public ImmutableResource getSnapshot() {
+      return snapshot;
+    }
+
+    /**
+     * Get current polling interval before jitter
+     *
+     * @param unit
+     * @return interval
+     */
+    public long getInterval(final TimeUnit unit) {
+      return unit.convert(interval, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Get number of completed polls
+     *
+     * @return poll count
+     */
+    public long getPollCount() {
+      return polls;
+    }
+
+    /**
+     * Is this watch cancelled?
+     *
+     * @return true if cancelled, false otherwise
+     */
+    public boolean isCancelled() {
+      return cancelled;
+    }
+
+    /**
+     * Stop polling resource
+     * <p>
+     * A poll that is already running completes but its listener is not
+     * notified.
+     */
+    public void cancel() {
+      cancelled = true;
+    }
+
+    private void poll() {
+      if (cancelled)
+        return;
+      boolean changed = false;
+      try {
+        final ChangeSet changes = resource.refresh();
+        changed = !changes.isEmpty();
+        if (changed)
+          snapshot = ImmutableResource.of(resource);
+        if (changed && !cancelled)
+          listener.changed(resource, changes);
+      } catch (IOException e) {
+        if (!cancelled)
+          listener.failed(resource, e);
+      } catch (RuntimeException e) {
+        if (!cancelled)
+          listener.failed(resource, (IOException) new IOException(
+              "Polling failed").initCause(e));
+      } finally {
+        polls++;
+        if (changed)
+          interval = minInterval;
+        else
+          interval = Math.min(maxInterval, (long) (interval * backoff));
+        schedule(this, interval);
+      }
+    }
+  }
+
+  private final Queue<Watch> pending = new ConcurrentLinkedQueue<Watch>();
+
+  private final List<List<Watch>> wheel;
+
+  private final int mask;
+
+  private final long tick;
+
+  private final ExecutorService pollers;
+
+  private final Thread timer;
+
+  private final Random random = new Random();
+
+  private volatile boolean closed;
+
+  private volatile long minInterval = TimeUnit.SECONDS.toNanos(5);
+
+  private volatile long maxInterval = TimeUnit.SECONDS.toNanos(300);
+
+  private volatile double backoff = 1.5;
+
+  private volatile double jitter = 0.1;
+
+  /**
+   * Create scheduler with a 100 millisecond tick, 512 wheel slots, and 4 poll
+   * threads
+   */
+  public WatchScheduler() {
+    this(100, TimeUnit.MILLISECONDS, 512, 4);
+  }
+
+  /**
+   * Create scheduler
+   *
+   * @param tick
+   *          duration of each wheel slot
+   * @param unit
+   * @param slots
+   *          number of wheel slots, rounded up to a power of two
+   * @param threads
+   *          number of poll threads
+   */
+  public WatchScheduler(final long tick, final TimeUnit unit, final int slots,
+      final int threads) {
+    if (tick <= 0)
+      throw new IllegalArgumentException("Tick must be greater than zero");
+    if (slots < 1)
+      throw new IllegalArgumentException("Slots must be at least one");
+    if (threads < 1)
+      throw new IllegalArgumentException("Threads must be at least one");
+    this.tick = unit.toNanos(tick);
+    int size = Integer.highestOneBit(slots);
+    if (size < slots)
+      size <<= 1;
+    mask = size - 1;
+    wheel = new ArrayList<List<Watch>>(size);
+    for (int i = 0; i < size; i++)
+      wheel.add(new ArrayList<Watch>());
+    pollers = Executors.newFixedThreadPool(threads, new DaemonThreadFactory(
+        "halligan-watch"));
+    timer = new DaemonThreadFactory("halligan-wheel").newThread(new Runnable() {
+
+      public void run() {
+        turn();
+      }
+    });
+    timer.start();
+  }
+
+  /**
+   * Set the minimum and maximum polling interval
+   *
+   * @param min
+   * @param max
+   * @param unit
+   * @return this scheduler
+   */
+  public WatchScheduler interval(final long min, final long max,
+      final TimeUnit unit) {
+    if (min <= 0 || max < min)
+      throw new IllegalArgumentException(
+          "Intervals must be greater than zero with max at least min");
+    minInterval = unit.toNanos(min);
+    maxInterval = unit.toNanos(max);
+    return this;
+  }
+
+  /**
+   * Set factor the polling interval is multiplied by after a poll that finds
+   * no changes
+   *
+   * @param backoff
+   *          factor of at least 1
+   * @return this scheduler
+   */
+  public WatchScheduler backoff(final double backoff) {
+    if (backoff < 1)
+      throw new IllegalArgumentException("Backoff must be at least 1");
+    this.backoff = backoff;
+    return this;
+  }
+
+  /**
+   * Set the fraction each delay is randomly lengthened or shortened by
+   *
+   * @param jitter
+   *          fraction between 0 and 1
+   * @return this scheduler
+   */
+  public WatchScheduler jitter(final double jitter) {
+    if (jitter < 0 || jitter >= 1)
+      throw new IllegalArgumentException("Jitter must be between 0 and 1");
+    this.jitter = jitter;
+    return this;
+  }
+
+  /**
+   * Watch resource and notify listener of changes
+   * <p>
+   * The first poll happens at a random time within the minimum interval.
+   *
+   * @param resource
+   * @param listener
+   * @return watch
+   */
+  public Watch watch(final Resource resource, final Listener listener) {
+    if (closed)
+      throw new IllegalStateException("Scheduler is closed");
+    final Watch watch = new Watch(resource, listener);
+    final double fraction;
+    synchronized (random) {
+      fraction = random.nextDouble();
+    }
+    watch.delay = (long) (minInterval * fraction);
+    pending.add(watch);
+    return watch;
+  }
+
+  private void schedule(final Watch watch, final long interval) {
+    if (closed || watch.cancelled)
+      return;
+    final double fraction;
+    synchronized (random) {
+      fraction = random.nextDouble() * 2 - 1;
+    }
+    watch.delay = (long) (interval * (1 + jitter * fraction));
+    pending.add(watch);
+  }
+
+  private void turn() {
+    final long start = System.nanoTime();
+    long ticks = 0;
+    while (!closed) {
+      final long sleep = start + (ticks + 1) * tick - System.nanoTime();
+      if (sleep > 0)
+        try {
+          TimeUnit.NANOSECONDS.sleep(sleep);
+        } catch (InterruptedException e) {
+          return;
+        }
+      ticks++;
+      expire(wheel.get((int) (ticks & mask)));
+      Watch watch;
+      while ((watch = pending.poll()) != null) {
+        final long slots = Math.max(1, watch.delay / tick);
+        watch.rounds = (slots - 1) / wheel.size();
+        wheel.get((int) ((ticks + slots) & mask)).add(watch);
+      }
+    }
+  }
+
+  private void expire(final List<Watch> slot) {
+    for (Iterator<Watch> watches = slot.iterator(); watches.hasNext();) {
+      final Watch watch = watches.next();
+      if (watch.cancelled) {
+        watches.remove();
+        continue;
+      }
+      if (watch.rounds > 0) {
+        watch.rounds--;
+        continue;
+      }
+      watches.remove();
+      try {
+        pollers.execute(new Runnable() {
+
+          public void run() {
+            watch.poll();
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Stop polling all resources
+   */
+  public void close() {
+    closed = true;
+    timer.interrupt();
+    pollers.shutdownNow();
+  }
+}
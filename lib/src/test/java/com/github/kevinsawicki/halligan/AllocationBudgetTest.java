@@ -0,0 +1,411 @@
+/*
+ * Copyright (c) 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package com.github.kevinsawicki.halligan;
+
+import static com.github.kevinsawicki.halligan.DefaultGsonFactory.GSON_FACTORY;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import com.google.gson.stream.JsonReader;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.Charset;
+import java.util.Map;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests that parsing reference documents stays within a budget of bytes
+ * allocated per parse
+ * <p>
+ * Budgets are ratios to the allocation of a reference measured on the same
+ * JVM in the same run, such as Gson parsing the document into maps, so they
+ * don't depend on object header or pointer sizes. Each ratio is roughly one
+ * and a half times the ratio measured when it was set so that only
+ * significant regressions, such as a dependency upgrade that copies every
+ * value, fail the build. Tests are skipped on JVMs that do not support
+ * per-thread allocation counters.
+ */
+public class AllocationBudgetTest {
+
+  private static final double BUDGET_RESPONSE = 4.5;
+
+  private static final double BUDGET_RESPONSE_NEXT = 2.5;
+
+  private static final double BUDGET_RESPONSE_SELF = 3.5;
+
+  private static final double BUDGET_RESPONSE_CUSTOMERS = 4.5;
+
+  private static final double BUDGET_LINK_PROPERTIES = 3.5;
+
+  private static final double BUDGET_COLLECTION = 5;
+
+  private static final double BUDGET_WIDE = 1.5;
+
+  private static final double BUDGET_DEEP = 4;
+
+  private static final int WARMUP = 2000;
+
+  private static final int ITERATIONS = 200;
+
+  private static final int ROUNDS = 5;
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private static com.sun.management.ThreadMXBean threads;
+
+  /**
+   * Operation whose allocations are measured
+   */
+  private static abstract class Task {
+
+    abstract void run() throws IOException;
+  }
+
+  /**
+   * Enable allocation counters if supported
+   */
+  @BeforeClass
+  public static void enableCounters() {
+    ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (!(bean instanceof com.sun.management.ThreadMXBean))
+      return;
+    threads = (com.sun.management.ThreadMXBean) bean;
+    if (!threads.isThreadAllocatedMemorySupported())
+      threads = null;
+    else if (!threads.isThreadAllocatedMemoryEnabled())
+      threads.setThreadAllocatedMemoryEnabled(true);
+  }
+
+  private static String readFile(final String name) throws IOException {
+    InputStream input = AllocationBudgetTest.class.getResourceAsStream(name);
+    try {
+      ByteArrayOutputStream output = new ByteArrayOutputStream();
+      byte[] buffer = new byte[8192];
+      int read;
+      while ((read = input.read(buffer)) != -1)
+        output.write(buffer, 0, read);
+      return output.toString("UTF-8");
+    } finally {
+      input.close();
+    }
+  }
+
+  private static Resource parse(final Reader reader, final PageStats stats)
+      throws IOException {
+    JsonReader json = new JsonReader(reader);
+    try {
+      return new Resource(GSON_FACTORY, Resource.DEFAULT_POLICY, stats)
+          .parse(json);
+    } finally {
+      json.close();
+    }
+  }
+
+  private static Resource parse(final String json, final PageStats stats)
+      throws IOException {
+    return parse(new StringReader(json), stats);
+  }
+
+  private static Task parseTask(final String json, final PageStats stats) {
+    return new Task() {
+
+      void run() throws IOException {
+        parse(json, stats);
+      }
+    };
+  }
+
+  private static Task mapTask(final String json) {
+    return new Task() {
+
+      void run() throws IOException {
+        GSON_FACTORY.getGson().fromJson(
+            new JsonReader(new StringReader(json)), Map.class);
+      }
+    };
+  }
+
+  private static long allocated() {
+    return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  /**
+   * Measure average bytes allocated by each task
+   * <p>
+   * Rounds of the tasks are interleaved so compilation does not favor either
+   * and the least average of all rounds is taken so that allocations by the
+   * JIT compiler are ignored.
+   *
+   * @param size
+   *          size of the document each task reads
+   * @param tasks
+   * @return bytes per run of each task
+   * @throws IOException
+   */
+  private static long[] measure(final int size, final Task... tasks)
+      throws IOException {
+    assumeTrue(threads != null);
+    int iterations = Math.max(1, ITERATIONS * 1000 / size);
+    int warmup = Math.max(50, WARMUP * 1000 / size);
+    for (Task task : tasks)
+      for (int i = 0; i < warmup; i++)
+        task.run();
+    long[] least = new long[tasks.length];
+    for (int i = 0; i < least.length; i++)
+      least[i] = Long.MAX_VALUE;
+    for (int round = 0; round < ROUNDS; round++)
+      for (int t = 0; t < tasks.length; t++) {
+        long start = allocated();
+        for (int i = 0; i < iterations; i++)
+          tasks[t].run();
+        least[t] = Math.min(least[t], (allocated() - start) / iterations);
+      }
+    return least;
+  }
+
+  /**
+   * Assert bytes allocated parsing the document are within the budget ratio
+   * of the bytes allocated parsing it into maps
+   *
+   * @param json
+   * @param budget
+   * @throws IOException
+   */
+  private static void assertBudget(final String json, final double budget)
+      throws IOException {
+    long[] bytes = measure(json.length(), parseTask(json, null),
+        mapTask(json));
+    double ratio = (double) bytes[0] / bytes[1];
+    assertTrue(bytes[0] + " bytes allocated per parse is " + ratio
+        + " times the " + bytes[1] + " bytes of parsing into maps, budget is "
+        + budget, ratio <= budget);
+  }
+  private static String collection(final int items, final int extra) {
+    StringBuilder json = new StringBuilder("{\"_links\":{");
+    json.append("\"self\":{\"href\":\"/items\"},");
+    json.append("\"next\":{\"href\":\"/items?page=2\"}},");
+    json.append("\"count\":").append(items).append(",\"_embedded\":{");
+    json.append("\"items\":[");
+    for (int i = 0; i < items; i++) {
+      if (i > 0)
+        json.append(',');
+      json.append("{\"_links\":{\"self\":{\"href\":\"/items/").append(i);
+      json.append("\"},\"owner\":{\"href\":\"/users/").append(i % 50);
+      json.append("\"}},\"id\":").append(i);
+      json.append(",\"name\":\"item ").append(i);
+      json.append("\",\"price\":").append(i).append(".25");
+      json.append(",\"available\":").append(i % 2 == 0);
+      for (int j = 0; j < extra; j++)
+        json.append(",\"field").append(j).append("\":").append(j);
+      json.append('}');
+    }
+    return json.append("]}}").toString();
+  }
+
+  private static String wide(final int properties) {
+    StringBuilder json = new StringBuilder("{\"_links\":{");
+    json.append("\"self\":{\"href\":\"/wide\"}}");
+    for (int i = 0; i < properties; i++)
+      json.append(",\"property").append(i).append("\":\"value ").append(i)
+          .append('"');
+    return json.append('}').toString();
+  }
+
+  private static String deep(final int depth) {
+    StringBuilder json = new StringBuilder();
+    for (int i = 0; i < depth; i++)
+      json.append("{\"_links\":{\"self\":{\"href\":\"/levels/").append(i)
+          .append("\"}},\"level\":").append(i)
+          .append(",\"_embedded\":{\"child\":");
+    json.append("{\"level\":").append(depth).append('}');
+    for (int i = 0; i < depth; i++)
+      json.append("}}");
+    return json.toString();
+  }
+
+  /**
+   * Parse response fixture within budget
+   *
+   * @throws Exception
+   */
+  @Test
+  public void response() throws Exception {
+    assertBudget(readFile("/response.json"), BUDGET_RESPONSE);
+  }
+
+  /**
+   * Parse next page fixture within budget
+   *
+   * @throws Exception
+   */
+  @Test
+  public void responseNext() throws Exception {
+    assertBudget(readFile("/response_next.json"), BUDGET_RESPONSE_NEXT);
+  }
+
+  /**
+   * Parse self fixture within budget
+   *
+   * @throws Exception
+   */
+  @Test
+  public void responseSelf() throws Exception {
+    assertBudget(readFile("/response_self.json"), BUDGET_RESPONSE_SELF);
+  }
+
+  /**
+   * Parse customers fixture within budget
+   *
+   * @throws Exception
+   */
+  @Test
+  public void responseCustomers() throws Exception {
+    assertBudget(readFile("/response_customers.json"),
+        BUDGET_RESPONSE_CUSTOMERS);
+  }
+
+  /**
+   * Parse link properties fixture within budget
+   *
+   * @throws Exception
+   */
+  @Test
+  public void linkProperties() throws Exception {
+    assertBudget(readFile("/link_properties.json"), BUDGET_LINK_PROPERTIES);
+  }
+
+  /**
+   * Parse collection of 1000 embedded resources within budget
+   *
+   * @throws Exception
+   */
+  @Test
+  public void largeCollection() throws Exception {
+    assertBudget(collection(1000, 0), BUDGET_COLLECTION);
+  }
+
+  /**
+   * Parse resource with 2000 properties within budget
+   *
+   * @throws Exception
+   */
+  @Test
+  public void wideResource() throws Exception {
+    assertBudget(wide(2000), BUDGET_WIDE);
+  }
+
+  /**
+   * Parse resources embedded 100 levels deep within budget
+   *
+   * @throws Exception
+   */
+  @Test
+  public void deepResource() throws Exception {
+    assertBudget(deep(100), BUDGET_DEEP);
+  }
+
+  /**
+   * Parse collection of wide resources presized from a previous page with no
+   * more allocation than without presizing
+   *
+   * @throws Exception
+   */
+  @Test
+  public void presizedCollection() throws Exception {
+    String json = collection(100, 100);
+    PageStats stats = new PageStats(null, parse(json, null), json.length());
+    long[] bytes = measure(json.length(), parseTask(json, stats),
+        parseTask(json, null));
+    assertTrue(bytes[0] + " bytes allocated presized, " + bytes[1]
+        + " bytes unsized", bytes[0] <= bytes[1]);
+  }
+
+  /**
+   * Parse response streamed through pooled buffers with less allocation than
+   * through a buffered {@link InputStreamReader}
+   *
+   * @throws Exception
+   */
+  @Test
+  public void pooledStream() throws Exception {
+    final byte[] body = readFile("/response.json").getBytes(UTF_8);
+    long[] bytes = measure(body.length, new Task() {
+
+      void run() throws IOException {
+        parse(new DecodingReader(new ByteArrayInputStream(body), UTF_8,
+            BufferPool.BUFFER_SIZE), null);
+      }
+    }, new Task() {
+
+      void run() throws IOException {
+        parse(new BufferedReader(new InputStreamReader(
+            new ByteArrayInputStream(body), UTF_8)), null);
+      }
+    });
+    assertTrue(bytes[0] + " bytes allocated pooled, " + bytes[1]
+        + " bytes unpooled", bytes[0] < bytes[1]);
+  }
+
+  /**
+   * Parse response read into a pooled body with less allocation than reading
+   * it into a new byte array
+   *
+   * @throws Exception
+   */
+  @Test
+  public void pooledBody() throws Exception {
+    final byte[] body = readFile("/response.json").getBytes(UTF_8);
+    long[] bytes = measure(body.length, new Task() {
+
+      void run() throws IOException {
+        BufferPool.Body pooled = BufferPool.takeBody(body.length);
+        pooled.readFrom(new ByteArrayInputStream(body));
+        parse(new DecodingReader(pooled, UTF_8), null);
+      }
+    }, new Task() {
+
+      void run() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        InputStream input = new ByteArrayInputStream(body);
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = input.read(buffer)) != -1)
+          output.write(buffer, 0, read);
+        parse(new InputStreamReader(new ByteArrayInputStream(
+            output.toByteArray()), UTF_8), null);
+      }
+    });
+    assertTrue(bytes[0] + " bytes allocated pooled, " + bytes[1]
+        + " bytes unpooled", bytes[0] < bytes[1]);
+  }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package com.github.kevinsawicki.halligan;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+
+import org.junit.Test;
+
+/**
+ * Unit tests of {@link BufferPool} and {@link DecodingReader}
+ */
+public class BufferPoolTest {
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private static final String TEXT = "{\"name\":"
+      + "\"caf\u00e9 \u20ac \ud83d\ude00\"}";
+
+  /**
+   * Stream returning one byte per read
+   */
+  private static class TrickleStream extends ByteArrayInputStream {
+
+    TrickleStream(final byte[] bytes) {
+      super(bytes);
+    }
+
+    @Override
+    public synchronized int read(final byte[] b, final int off, final int len) {
+      return super.read(b, off, Math.min(len, 1));
+    }
+  }
+
+  private static String readAll(final Reader reader, final int chunk)
+      throws Exception {
+    StringBuilder builder = new StringBuilder();
+    char[] buffer = new char[chunk];
+    int read;
+    while ((read = reader.read(buffer, 0, chunk)) != -1)
+      builder.append(buffer, 0, read);
+    reader.close();
+    return builder.toString();
+  }
+
+  /**
+   * Decode multi-byte characters from a stream one byte at a time
+   *
+   * @throws Exception
+   */
+  @Test
+  public void trickleStream() throws Exception {
+    InputStream stream = new TrickleStream(TEXT.getBytes("UTF-8"));
+    assertEquals(TEXT, readAll(new DecodingReader(stream, UTF_8, 16), 64));
+  }
+
+  /**
+   * Decode into single char reads splitting a surrogate pair
+   *
+   * @throws Exception
+   */
+  @Test
+  public void singleCharReads() throws Exception {
+    InputStream stream = new ByteArrayInputStream(TEXT.getBytes("UTF-8"));
+    assertEquals(TEXT, readAll(new DecodingReader(stream, UTF_8, 16), 1));
+  }
+
+  /**
+   * Decode bytes from a buffer in another charset
+   *
+   * @throws Exception
+   */
+  @Test
+  public void byteBuffer() throws Exception {
+    String text = "\u00e0 la carte";
+    ByteBuffer bytes = ByteBuffer.wrap(text.getBytes("ISO-8859-1"));
+    assertEquals(text, readAll(new DecodingReader(bytes,
+        Charset.forName("ISO-8859-1")), 4));
+  }
+
+  /**
+   * Malformed input is replaced instead of failing
+   *
+   * @throws Exception
+   */
+  @Test
+  public void malformedInput() throws Exception {
+    ByteBuffer bytes = ByteBuffer.wrap(new byte[] { 'a', (byte) 0xFF, 'b' });
+    assertEquals("a\ufffdb", readAll(new DecodingReader(bytes, UTF_8), 8));
+  }
+
+  /**
+   * Unsupported and illegal charset names fail with an I/O exception
+   *
+   * @throws Exception
+   */
+  @Test
+  public void unsupportedCharset() throws Exception {
+    assertEquals(UTF_8, DecodingReader.charset("utf-8"));
+    try {
+      DecodingReader.charset("x-no-such-charset");
+      fail("Exception not thrown");
+    } catch (UnsupportedEncodingException e) {
+      assertEquals("x-no-such-charset", e.getMessage());
+    }
+    try {
+      DecodingReader.charset("not a charset");
+      fail("Exception not thrown");
+    } catch (UnsupportedEncodingException e) {
+      assertEquals("not a charset", e.getMessage());
+    }
+  }
+
+  /**
+   * Body buffer is reused after the reader over it is closed
+   *
+   * @throws Exception
+   */
+  @Test
+  public void bodyReused() throws Exception {
+    BufferPool.Body body = BufferPool.takeBody(0);
+    body.readFrom(new TrickleStream(TEXT.getBytes("UTF-8")));
+    assertEquals(TEXT, readAll(new DecodingReader(body, UTF_8), 8));
+    BufferPool.Body next = BufferPool.takeBody(0);
+    assertSame(body, next);
+    assertEquals(0, next.size());
+    BufferPool.release(next);
+  }
+
+  /**
+   * Body buffer grows past its initial size
+   *
+   * @throws Exception
+   */
+  @Test
+  public void bodyGrows() throws Exception {
+    byte[] bytes = new byte[BufferPool.BUFFER_SIZE * 3 + 5];
+    bytes[bytes.length - 1] = 7;
+    BufferPool.Body body = BufferPool.takeBody(0);
+    body.readFrom(new ByteArrayInputStream(bytes));
+    assertEquals(bytes.length, body.size());
+    assertEquals(7, body.array()[bytes.length - 1]);
+    BufferPool.release(body);
+  }
+
+  /**
+   * Bodies larger than the retention cap are presized to the expected size
+   * and not grown when the stream ends exactly at that size
+   *
+   * @throws Exception
+   */
+  @Test
+  public void presizedLargeBody() throws Exception {
+    BufferPool.release(BufferPool.takeBody(0));
+    byte[] bytes = new byte[BufferPool.MAX_RETAINED * 2];
+    BufferPool.Body body = BufferPool.takeBody(bytes.length);
+    byte[] array = body.array();
+    assertEquals(bytes.length, array.length);
+    body.readFrom(new ByteArrayInputStream(bytes));
+    assertSame(array, body.array());
+    assertEquals(bytes.length, body.size());
+    BufferPool.release(body);
+    assertNotSame(body, BufferPool.takeBody(0));
+  }
+
+  /**
+   * Buffers are reused until taken and large buffers are not retained
+   */
+  @Test
+  public void boundedRetention() {
+    byte[] bytes = BufferPool.takeBytes(100);
+    assertNotSame(bytes, BufferPool.takeBytes(100));
+    BufferPool.release(bytes);
+    assertSame(bytes, BufferPool.takeBytes(100));
+
+    byte[] large = BufferPool.takeBytes(BufferPool.MAX_RETAINED + 1);
+    BufferPool.release(large);
+    assertNotSame(large, BufferPool.takeBytes(BufferPool.MAX_RETAINED + 1));
+
+    char[] chars = BufferPool.takeChars(10);
+    BufferPool.release(chars);
+    assertSame(chars, BufferPool.takeChars(10));
+  }
+
+  /**
+   * Decoders are reused for the same charset
+   */
+  @Test
+  public void decoders() {
+    CharsetDecoder decoder = BufferPool.takeDecoder(Charset.forName("UTF-8"));
+    BufferPool.release(decoder);
+    assertSame(decoder, BufferPool.takeDecoder(Charset.forName("UTF-8")));
+    BufferPool.release(decoder);
+    assertNotSame(decoder, BufferPool.takeDecoder(Charset.forName("UTF-16")));
+  }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package com.github.kevinsawicki.halligan;
+
+import static com.github.kevinsawicki.halligan.DefaultGsonFactory.GSON_FACTORY;
+import static java.net.HttpURLConnection.HTTP_OK;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Request;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests of {@link BulkLoader}
+ */
+public class BulkLoadTest extends HalServerTestCase {
+
+  private static final AtomicInteger customerRequests = new AtomicInteger();
+
+  /**
+   * Setup server
+   *
+   * @throws Exception
+   */
+  @Before
+  public void setup() throws Exception {
+    customerRequests.set(0);
+    handler = new RequestHandler() {
+
+      @Override
+      public void handle(Request request, HttpServletResponse response) {
+        String uri = request.getRequestURI();
+        if (uri.startsWith("/customers/")) {
+          customerRequests.incrementAndGet();
+          write("{\"_links\":{\"self\":{\"href\":\"" + uri + "\"}},\"id\":\""
+              + uri.substring(11) + "\"}");
+        } else
+          writeFile("/response_customers.json");
+        response.setStatus(HTTP_OK);
+      }
+    };
+  }
+
+  /**
+   * Load customers of all embedded orders
+   *
+   * @throws Exception
+   */
+  @Test
+  public void loadAll() throws Exception {
+    Resource resource = new Resource(url);
+    Map<String, Resource> loaded = resource.loadAll("orders", "customer", 4);
+    assertEquals(2, loaded.size());
+    assertEquals(2, customerRequests.get());
+
+    List<Resource> orders = resource.getResources("orders");
+    Resource customer1 = orders.get(0).getLoaded("customer");
+    assertNotNull(customer1);
+    assertEquals("7809", customer1.getString("id"));
+    assertSame(customer1, orders.get(2).getLoaded("customer"));
+    assertSame(customer1, orders.get(0).load("customer"));
+    assertEquals("12369", orders.get(1).load("customer").getString("id"));
+    assertNull(orders.get(3).getLoaded("customer"));
+    assertEquals(2, customerRequests.get());
+  }
+
+  /**
+   * Concurrent loads are traced as hops
+   *
+   * @throws Exception
+   */
+  @Test
+  public void loadAllTraced() throws Exception {
+    TraceRecorder recorder = new TraceRecorder();
+    Resource resource = new Resource(GSON_FACTORY,
+        new RequestPolicy().tracer(recorder), url);
+    recorder.clear();
+    resource.loadAll("orders", "customer", 4);
+    int hops = 0;
+    for (TraceSpan span : recorder.getEndedSpans())
+      if (span.getKind() == TraceSpan.Kind.HOP) {
+        assertEquals("customer", span.getRel());
+        assertEquals(HTTP_OK, span.getCode());
+        hops++;
+      }
+    assertEquals(2, hops);
+  }
+
+  /**
+   * Loading again skips resources with already loaded links
+   *
+   * @throws Exception
+   */
+  @Test
+  public void loadAllTwice() throws Exception {
+    Resource resource = new Resource(url);
+    resource.loadAll("orders", "customer", 1);
+    assertEquals(2, customerRequests.get());
+    assertEquals(0, resource.loadAll("orders", "customer", 1).size());
+    assertEquals(2, customerRequests.get());
+  }
+
+  /**
+   * Loading missing embedded resources
+   *
+   * @throws Exception
+   */
+  @Test
+  public void loadAllMissing() throws Exception {
+    Resource resource = new Resource(url);
+    assertEquals(0, resource.loadAll("baskets", "customer", 2).size());
+    assertEquals(0, customerRequests.get());
+  }
+}
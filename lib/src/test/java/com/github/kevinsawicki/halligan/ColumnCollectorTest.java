@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package com.github.kevinsawicki.halligan;
+
+import static com.github.kevinsawicki.halligan.DefaultGsonFactory.GSON_FACTORY;
+import static com.github.kevinsawicki.halligan.Fixtures.parseFile;
+import static java.net.HttpURLConnection.HTTP_OK;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Request;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests of {@link ColumnCollector}
+ */
+public class ColumnCollectorTest extends HalServerTestCase {
+
+  /**
+   * Setup server
+   *
+   * @throws Exception
+   */
+  @Before
+  public void setup() throws Exception {
+    handler = new RequestHandler() {
+
+      @Override
+      public void handle(Request request, HttpServletResponse response) {
+        if (request.getParameter("page") == null)
+          writeFile("/response.json");
+        else
+          writeFile("/response_customers.json");
+        response.setStatus(HTTP_OK);
+      }
+    };
+  }
+
+  /**
+   * Collect columns from all pages
+   *
+   * @throws Exception
+   */
+  @Test
+  public void collectPages() throws Exception {
+    ColumnCollector collector = new ColumnCollector("orders")
+        .doubleColumn("total").longColumn("_links").stringColumn("status");
+    collector.collect(new Resource(url));
+    assertEquals(6, collector.size());
+    assertArrayEquals(new double[] { 30, 20, 30, 20, 10, 5 },
+        collector.getDoubles("total"), 0);
+    assertArrayEquals(new long[] { -1, -1, -1, -1, -1, -1 },
+        collector.getLongs("_links"));
+    assertArrayEquals(new int[] { 0, 1, -1, -1, -1, -1 },
+        collector.getStringIds("status"));
+    assertArrayEquals(new String[] { "shipped", "processing" },
+        collector.getDictionary("status"));
+    assertArrayEquals(new String[] { "shipped", "processing", null, null,
+        null, null }, collector.getStrings("status"));
+  }
+
+  /**
+   * Collect values of nested map properties
+   *
+   * @throws Exception
+   */
+  @Test
+  public void nestedPaths() throws Exception {
+    ColumnCollector collector = new ColumnCollector("orders")
+        .longColumn("regions.EMEA.Europe").longColumn("regions.AP")
+        .longColumn("regions.AP.missing").doubleColumn("ratio");
+    collector.add(parseFile("/response.json"));
+    assertArrayEquals(new long[] { 10 },
+        collector.getLongs("regions.EMEA.Europe"));
+    assertArrayEquals(new long[] { 5 }, collector.getLongs("regions.AP"));
+    assertArrayEquals(new long[] { -1 },
+        collector.getLongs("regions.AP.missing"));
+    assertArrayEquals(new double[] { 4.5 }, collector.getDoubles("ratio"), 0);
+  }
+
+  /**
+   * Legal -1 values are distinguished from missing values
+   */
+  @Test
+  public void presence() {
+    ColumnCollector collector = new ColumnCollector("items")
+        .longColumn("delta").doubleColumn("ratio").stringColumn("name");
+    collector.add(new Resource(GSON_FACTORY).setProperty("delta",
+        Double.valueOf(-1)).setProperty("ratio", Double.valueOf(-1)));
+    collector.add(new Resource(GSON_FACTORY).setProperty("name", "b"));
+    assertArrayEquals(new long[] { -1, -1 }, collector.getLongs("delta"));
+    assertTrue(collector.isPresent("delta", 0));
+    assertFalse(collector.isPresent("delta", 1));
+    assertTrue(collector.isPresent("ratio", 0));
+    assertFalse(collector.isPresent("ratio", 1));
+    assertFalse(collector.isPresent("name", 0));
+    assertTrue(collector.isPresent("name", 1));
+    assertEquals(1, collector.getPresent("delta").cardinality());
+    assertEquals(1, collector.getPresent("name").nextSetBit(0));
+  }
+
+  /**
+   * Collect more values than fit in a single chunk
+   */
+  @Test
+  public void multipleChunks() {
+    ColumnCollector collector = new ColumnCollector("items")
+        .longColumn("id").stringColumn("parity");
+    for (int i = 0; i < 10000; i++)
+      collector.add(new Resource(GSON_FACTORY).setProperty("id",
+          Double.valueOf(i)).setProperty("parity",
+          i % 2 == 0 ? "even" : "odd"));
+    long[] ids = collector.getLongs("id");
+    int[] parity = collector.getStringIds("parity");
+    assertEquals(10000, ids.length);
+    for (int i = 0; i < ids.length; i++) {
+      assertEquals(i, ids[i]);
+      assertEquals(i % 2, parity[i]);
+    }
+  }
+
+  /**
+   * Requesting a column with the wrong type fails
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void wrongColumnType() {
+    new ColumnCollector("items").longColumn("id").getDoubles("id");
+  }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package com.github.kevinsawicki.halligan;
+
+import static org.junit.Assert.assertEquals;
+
+import com.github.kevinsawicki.halligan.ConcurrencyLimiter.Permit;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Unit tests of {@link ConcurrencyLimiter}
+ */
+public class ConcurrencyLimiterTest {
+
+  private static final String HOST = "localhost:8080";
+
+  /**
+   * Get host from URLs
+   */
+  @Test
+  public void getHost() {
+    assertEquals("localhost:8080",
+        ConcurrencyLimiter.getHost("http://localhost:8080/orders?page=2"));
+    assertEquals("example.com",
+        ConcurrencyLimiter.getHost("https://example.com"));
+    assertEquals("example.com", ConcurrencyLimiter.getHost("example.com?a"));
+  }
+
+  /**
+   * Limit grows while latency is steady
+   *
+   * @throws Exception
+   */
+  @Test
+  public void limitGrows() throws Exception {
+    ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 1, 4);
+    assertEquals(2, limiter.getLimit(HOST));
+    for (int i = 0; i < 50; i++) {
+      Permit p1 = limiter.acquire(HOST);
+      Permit p2 = limiter.acquire(HOST);
+      limiter.release(p1, 1000, true);
+      limiter.release(p2, 1000, true);
+    }
+    assertEquals(4, limiter.getLimit(HOST));
+  }
+
+  /**
+   * Limit shrinks on failures and slow responses
+   *
+   * @throws Exception
+   */
+  @Test
+  public void limitShrinks() throws Exception {
+    ConcurrencyLimiter limiter = new ConcurrencyLimiter(16, 2, 32);
+    limiter.release(limiter.acquire(HOST), 1000, true);
+    limiter.release(limiter.acquire(HOST), 1000, false);
+    assertEquals(8, limiter.getLimit(HOST));
+    limiter.release(limiter.acquire(HOST), 100000, true);
+    assertEquals(7, limiter.getLimit(HOST));
+    for (int i = 0; i < 10; i++)
+      limiter.release(limiter.acquire(HOST), 1000, false);
+    assertEquals(2, limiter.getLimit(HOST));
+  }
+
+  /**
+   * Requests started before a decrease don't shrink the limit again
+   *
+   * @throws Exception
+   */
+  @Test
+  public void oneDecreasePerRoundTrip() throws Exception {
+    ConcurrencyLimiter limiter = new ConcurrencyLimiter(16, 1, 32);
+    Permit p1 = limiter.acquire(HOST);
+    Permit p2 = limiter.acquire(HOST);
+    Permit p3 = limiter.acquire(HOST);
+    limiter.release(p1, 1000, false);
+    assertEquals(8, limiter.getLimit(HOST));
+    limiter.release(p2, 1000, false);
+    limiter.release(p3, 1000, false);
+    assertEquals(8, limiter.getLimit(HOST));
+    limiter.release(limiter.acquire(HOST), 1000, false);
+    assertEquals(4, limiter.getLimit(HOST));
+  }
+
+  /**
+   * A single fast response stops being the baseline after its window
+   *
+   * @throws Exception
+   */
+  @Test
+  public void baselineExpires() throws Exception {
+    ConcurrencyLimiter limiter = new ConcurrencyLimiter(16, 2, 32)
+        .baselineWindow(20, TimeUnit.MILLISECONDS);
+    limiter.release(limiter.acquire(HOST), 10, true);
+    limiter.release(limiter.acquire(HOST), 1000, true);
+    assertEquals(14, limiter.getLimit(HOST));
+    Thread.sleep(60);
+    for (int i = 0; i < 5; i++)
+      limiter.release(limiter.acquire(HOST), 1000, true);
+    assertEquals(14, limiter.getLimit(HOST));
+  }
+
+  /**
+   * Releasing a permit twice only releases it once
+   *
+   * @throws Exception
+   */
+  @Test
+  public void releaseTwice() throws Exception {
+    ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 1);
+    Permit permit = limiter.acquire(HOST);
+    limiter.release(permit, true);
+    limiter.release(permit, true);
+    limiter.acquire(HOST);
+    assertEquals(0, limiter.getWaiting(HOST));
+  }
+
+  /**
+   * Waiting requests are granted permits in arrival order
+   *
+   * @throws Exception
+   */
+  @Test(timeout = 10000)
+  public void fairQueue() throws Exception {
+    final ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 1);
+    final List<Integer> order = new CopyOnWriteArrayList<Integer>();
+    final CountDownLatch done = new CountDownLatch(3);
+    Permit held = limiter.acquire(HOST);
+    for (int i = 0; i < 3; i++) {
+      final int number = i;
+      new Thread() {
+
+        public void run() {
+          try {
+            Permit permit = limiter.acquire(HOST);
+            order.add(number);
+            limiter.release(permit, 1000, true);
+          } catch (Exception e) {
+            order.add(-1);
+          }
+          done.countDown();
+        }
+      }.start();
+      while (limiter.getWaiting(HOST) != i + 1)
+        Thread.sleep(5);
+    }
+    limiter.release(held, 1000, true);
+    done.await();
+    assertEquals(3, order.size());
+    for (int i = 0; i < 3; i++)
+      assertEquals(Integer.valueOf(i), order.get(i));
+    assertEquals(0, limiter.getWaiting(HOST));
+  }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package com.github.kevinsawicki.halligan;
+
+import static java.net.HttpURLConnection.HTTP_OK;
+import static java.net.HttpURLConnection.HTTP_UNAVAILABLE;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Request;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests of {@link Deadline} propagation
+ */
+public class DeadlineTest extends HalServerTestCase {
+
+  private static final AtomicInteger requests = new AtomicInteger();
+
+  private static volatile long delay;
+
+  private static volatile boolean unavailable;
+
+  private static volatile boolean trickle;
+
+  /**
+   * Setup server
+   *
+   * @throws Exception
+   */
+  @Before
+  public void setup() throws Exception {
+    requests.set(0);
+    delay = 0;
+    unavailable = false;
+    trickle = false;
+    handler = new RequestHandler() {
+
+      @Override
+      public void handle(Request request, HttpServletResponse response) {
+        if (requests.incrementAndGet() > 1 && delay > 0)
+          try {
+            Thread.sleep(delay);
+          } catch (InterruptedException e) {
+            return;
+          }
+        if (unavailable) {
+          response.setStatus(HTTP_UNAVAILABLE);
+          return;
+        }
+        if (trickle) {
+          response.setStatus(HTTP_OK);
+          writeSlowly(response, "/response.json");
+          return;
+        }
+        writeFile("/response.json");
+        response.setStatus(HTTP_OK);
+      }
+    };
+  }
+
+  /**
+   * Write resource file in small chunks with a pause after each one
+   *
+   * @param response
+   * @param name
+   */
+  private static void writeSlowly(final HttpServletResponse response,
+      final String name) {
+    InputStream input = DeadlineTest.class.getResourceAsStream(name);
+    try {
+      OutputStream output = response.getOutputStream();
+      byte[] buffer = new byte[64];
+      int read;
+      while ((read = input.read(buffer)) != -1) {
+        output.write(buffer, 0, read);
+        output.flush();
+        Thread.sleep(50);
+      }
+    } catch (IOException e) {
+      // Client gave up
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      try {
+        input.close();
+      } catch (IOException ignored) {
+        // Ignored
+      }
+    }
+  }
+
+  /**
+   * Remaining time of deadline
+   *
+   * @throws Exception
+   */
+  @Test
+  public void remaining() throws Exception {
+    Deadline deadline = Deadline.after(1, MILLISECONDS);
+    assertTrue(deadline.remaining(MILLISECONDS) <= 1);
+    Thread.sleep(5);
+    assertTrue(deadline.isExpired());
+    assertTrue(deadline.remaining(MILLISECONDS) <= 0);
+    assertFalse(Deadline.after(1, MINUTES).isExpired());
+  }
+
+  /**
+   * Expired deadline does not make a request
+   *
+   * @throws Exception
+   */
+  @Test
+  public void expiredDeadline() throws Exception {
+    RequestPolicy policy = new RequestPolicy().withDeadline(Deadline.after(0,
+        MILLISECONDS));
+    try {
+      new Resource(DefaultGsonFactory.GSON_FACTORY, policy, url);
+      fail("Exception not thrown");
+    } catch (InterruptedIOException expected) {
+      // Expected
+    }
+    assertEquals(0, requests.get());
+  }
+
+  /**
+   * Deadline applies while a body trickles in
+   *
+   * @throws Exception
+   */
+  @Test
+  public void slowBody() throws Exception {
+    trickle = true;
+    RequestPolicy policy = new RequestPolicy().withDeadline(Deadline.after(
+        200, MILLISECONDS));
+    long start = System.currentTimeMillis();
+    try {
+      new Resource(DefaultGsonFactory.GSON_FACTORY, policy, url);
+      fail("Exception not thrown");
+    } catch (InterruptedIOException expected) {
+      // Expected
+    }
+    assertTrue(System.currentTimeMillis() - start < 600);
+  }
+
+  /**
+   * Deadline applies to resources loaded from links
+   *
+   * @throws Exception
+   */
+  @Test
+  public void deadlineInherited() throws Exception {
+    Deadline deadline = Deadline.after(200, MILLISECONDS);
+    RequestPolicy policy = new RequestPolicy().withDeadline(deadline);
+    Resource resource = new Resource(DefaultGsonFactory.GSON_FACTORY, policy,
+        url);
+    assertSame(deadline, resource.getPolicy().getDeadline());
+    delay = 1000;
+    long start = System.currentTimeMillis();
+    try {
+      resource.next();
+      fail("Exception not thrown");
+    } catch (InterruptedIOException expected) {
+      // Expected
+    }
+    assertTrue(System.currentTimeMillis() - start < 1000);
+  }
+
+  /**
+   * Iteration stops when the deadline passes
+   *
+   * @throws Exception
+   */
+  @Test
+  public void iterationAbandoned() throws Exception {
+    RequestPolicy policy = new RequestPolicy().withDeadline(Deadline.after(
+        100, MILLISECONDS));
+    Iterator<Resource> iterator = new Resource(
+        DefaultGsonFactory.GSON_FACTORY, policy, url).iterator();
+    iterator.next();
+    Thread.sleep(150);
+    try {
+      iterator.next();
+      fail("Exception not thrown");
+    } catch (NoSuchElementException expected) {
+      assertTrue(expected.getCause() instanceof InterruptedIOException);
+    }
+    assertEquals(1, requests.get());
+  }
+
+  /**
+   * Retries that would pass the deadline are not attempted
+   *
+   * @throws Exception
+   */
+  @Test
+  public void retriesStopAtDeadline() throws Exception {
+    unavailable = true;
+    RequestPolicy policy = new RequestPolicy().retries(10, 100, 100);
+    try {
+      new Resource(DefaultGsonFactory.GSON_FACTORY,
+          policy.withDeadline(Deadline.after(250, MILLISECONDS)), url);
+      fail("Exception not thrown");
+    } catch (IOException expected) {
+      // Expected
+    }
+    assertTrue(requests.get() <= 3);
+    assertEquals(requests.get(), policy.getRequestCount());
+  }
+}
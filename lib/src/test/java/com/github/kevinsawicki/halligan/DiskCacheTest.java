@@ -0,0 +1,255 @@
+/*
+ * Copyright (c) 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package com.github.kevinsawicki.halligan;
+
+import static com.github.kevinsawicki.halligan.DefaultGsonFactory.GSON_FACTORY;
+import static java.net.HttpURLConnection.HTTP_NOT_MODIFIED;
+import static java.net.HttpURLConnection.HTTP_OK;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Request;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit tests of {@link DiskCache}
+ */
+public class DiskCacheTest extends HalServerTestCase {
+
+  private static final AtomicInteger requests = new AtomicInteger();
+
+  private static final AtomicInteger bodies = new AtomicInteger();
+
+  /**
+   * Folder for cache segments
+   */
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private DiskCache cache;
+
+  private static byte[] getBody(final DiskCache.Entry entry) throws Exception {
+    ByteBuffer body = entry.getBody();
+    byte[] bytes = new byte[body.remaining()];
+    body.get(bytes);
+    return bytes;
+  }
+
+  /**
+   * Setup server and cache
+   *
+   * @throws Exception
+   */
+  @Before
+  public void setup() throws Exception {
+    requests.set(0);
+    bodies.set(0);
+    handler = new RequestHandler() {
+
+      @Override
+      public void handle(Request request, HttpServletResponse response) {
+        requests.incrementAndGet();
+        if ("\"v1\"".equals(request.getHeader("If-None-Match"))) {
+          response.setStatus(HTTP_NOT_MODIFIED);
+          return;
+        }
+        bodies.incrementAndGet();
+        response.setHeader("ETag", "\"v1\"");
+        response.setStatus(HTTP_OK);
+        writeFile("/response.json");
+      }
+    };
+    cache = new DiskCache(folder.getRoot(), 1024);
+  }
+
+  /**
+   * Close cache
+   *
+   * @throws Exception
+   */
+  @After
+  public void closeCache() throws Exception {
+    cache.close();
+  }
+
+  /**
+   * Store and get response
+   *
+   * @throws Exception
+   */
+  @Test
+  public void putAndGet() throws Exception {
+    assertNull(cache.get("/a"));
+    byte[] body = "{\"a\":1}".getBytes("UTF-8");
+    cache.put("/a", 200, "\"e\"", 1234, "UTF-8", body, 0, body.length);
+    DiskCache.Entry entry = cache.get("/a");
+    assertNotNull(entry);
+    assertEquals(200, entry.code());
+    assertEquals("\"e\"", entry.getETag());
+    assertEquals(1234, entry.getLastModified());
+    assertEquals("UTF-8", entry.getCharset());
+    assertArrayEquals(body, getBody(entry));
+    assertEquals(1, cache.size());
+  }
+
+  /**
+   * Cached responses survive reopening the cache
+   *
+   * @throws Exception
+   */
+  @Test
+  public void reopen() throws Exception {
+    byte[] body1 = "{\"a\":1}".getBytes("UTF-8");
+    byte[] body2 = "{\"b\":2}".getBytes("UTF-8");
+    cache.put("/a", 200, null, 0, "UTF-8", body1, 0, body1.length);
+    cache.put("/b", 200, "\"b\"", 0, "UTF-8", body2, 0, body2.length);
+    cache.put("/c", 200, null, 0, "UTF-8", body2, 0, body2.length);
+    cache.remove("/c");
+    cache.close();
+
+    cache = new DiskCache(folder.getRoot(), 1024);
+    assertEquals(2, cache.size());
+    assertArrayEquals(body1, getBody(cache.get("/a")));
+    assertArrayEquals(body2, getBody(cache.get("/b")));
+    assertEquals("\"b\"", cache.get("/b").getETag());
+    assertNull(cache.get("/c"));
+  }
+
+  /**
+   * Partially written record is discarded when reopening the cache
+   *
+   * @throws Exception
+   */
+  @Test
+  public void truncatedRecord() throws Exception {
+    byte[] body = "{\"a\":1}".getBytes("UTF-8");
+    cache.put("/a", 200, null, 0, "UTF-8", body, 0, body.length);
+    cache.close();
+
+    File segment = folder.getRoot().listFiles()[0];
+    long length = segment.length();
+    FileOutputStream output = new FileOutputStream(segment, true);
+    output.write(new byte[] { 0x48, 0x43, 0x43, 0x31, 1, 0, 0, 1 });
+    output.close();
+
+    cache = new DiskCache(folder.getRoot(), 1024);
+    assertEquals(1, cache.size());
+    assertArrayEquals(body, getBody(cache.get("/a")));
+    assertEquals(length, segment.length());
+    cache.put("/b", 200, null, 0, "UTF-8", body, 0, body.length);
+    assertArrayEquals(body, getBody(cache.get("/b")));
+  }
+
+  /**
+   * Segments of replaced responses are compacted
+   *
+   * @throws Exception
+   */
+  @Test
+  public void compact() throws Exception {
+    byte[] body = new byte[300];
+    for (int i = 0; i < 20; i++) {
+      body[0] = (byte) i;
+      cache.put("/a", 200, null, 0, "UTF-8", body, 0, body.length);
+    }
+    cache.put("/b", 200, null, 0, "UTF-8", body, 0, body.length);
+    cache.compact();
+    assertTrue(cache.getSegmentCount() <= 2);
+    assertEquals(19, getBody(cache.get("/a"))[0]);
+    cache.close();
+
+    cache = new DiskCache(folder.getRoot(), 1024);
+    assertEquals(2, cache.size());
+    assertEquals(19, getBody(cache.get("/a"))[0]);
+  }
+
+  /**
+   * Entries held while their segment is compacted remain readable
+   *
+   * @throws Exception
+   */
+  @Test
+  public void entryAfterCompaction() throws Exception {
+    byte[] body = new byte[300];
+    body[0] = 42;
+    cache.put("/a", 200, null, 0, "UTF-8", body, 0, body.length);
+    DiskCache.Entry held = cache.get("/a");
+    for (int i = 0; i < 10; i++)
+      cache.put("/b", 200, null, 0, "UTF-8", body, 0, body.length);
+    cache.remove("/a");
+    cache.compact();
+    assertNull(cache.get("/a"));
+    assertArrayEquals(body, getBody(held));
+    assertEquals(42, held.openBody().read());
+  }
+
+  /**
+   * Resources are revalidated with conditional requests
+   *
+   * @throws Exception
+   */
+  @Test
+  public void conditionalRequest() throws Exception {
+    RequestPolicy policy = new RequestPolicy().cache(cache);
+    Resource resource = new Resource(GSON_FACTORY, policy, url);
+    assertEquals(14, resource.getInt("currentlyProcessing"));
+    assertNotNull(cache.get(url));
+
+    resource = new Resource(GSON_FACTORY, policy, url);
+    assertEquals(HTTP_OK, resource.code());
+    assertEquals(14, resource.getInt("currentlyProcessing"));
+    assertEquals(2, resource.getResourceCount("orders"));
+    assertEquals(2, requests.get());
+    assertEquals(1, bodies.get());
+  }
+
+  /**
+   * Fresh responses are used without a request
+   *
+   * @throws Exception
+   */
+  @Test
+  public void freshResponse() throws Exception {
+    RequestPolicy policy = new RequestPolicy().cache(cache.maxAge(1, MINUTES));
+    new Resource(GSON_FACTORY, policy, url);
+    Resource resource = new Resource(GSON_FACTORY, policy, url);
+    assertEquals(HTTP_OK, resource.code());
+    assertEquals(14, resource.getInt("currentlyProcessing"));
+    assertEquals("/orders?page=2", resource.getNextUri());
+    assertEquals(1, requests.get());
+  }
+}
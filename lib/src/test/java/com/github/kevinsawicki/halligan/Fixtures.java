@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package com.github.kevinsawicki.halligan;
+
+import static com.github.kevinsawicki.halligan.DefaultGsonFactory.GSON_FACTORY;
+
+import com.google.gson.stream.JsonReader;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+
+/**
+ * Helpers to parse resources from JSON strings and test resource files
+ */
+final class Fixtures {
+
+  private Fixtures() {
+  }
+
+  private static Resource parse(final JsonReader reader,
+      final RequestPolicy policy) throws IOException {
+    try {
+      final Resource resource = policy != null ? new Resource(GSON_FACTORY,
+          policy) : new Resource(GSON_FACTORY);
+      return resource.parse(reader);
+    } finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * Parse resource from JSON string
+   *
+   * @param json
+   * @return resource
+   * @throws IOException
+   */
+  static Resource parse(final String json) throws IOException {
+    return parse(json, null);
+  }
+
+  /**
+   * Parse resource from JSON string using the given policy
+   *
+   * @param json
+   * @param policy
+   * @return resource
+   * @throws IOException
+   */
+  static Resource parse(final String json, final RequestPolicy policy)
+      throws IOException {
+    return parse(new JsonReader(new StringReader(json)), policy);
+  }
+
+  /**
+   * Parse resource from test resource file
+   *
+   * @param name
+   * @return resource
+   * @throws IOException
+   */
+  static Resource parseFile(final String name) throws IOException {
+    return parseFile(name, null);
+  }
+
+  /**
+   * Parse resource from test resource file using the given policy
+   *
+   * @param name
+   * @param policy
+   * @return resource
+   * @throws IOException
+   */
+  static Resource parseFile(final String name, final RequestPolicy policy)
+      throws IOException {
+    return parse(new JsonReader(new InputStreamReader(
+        Fixtures.class.getResourceAsStream(name), "UTF-8")), policy);
+  }
+}
@@ -48,9 +48,9 @@ public class HalServerTestCase {
    */
   protected static abstract class RequestHandler extends AbstractHandler {
 
-    private Request request;
+    private final ThreadLocal<Request> request = new ThreadLocal<Request>();
 
-    private HttpServletResponse response;
+    private final ThreadLocal<HttpServletResponse> response = new ThreadLocal<HttpServletResponse>();
 
     /**
      * Handle request
@@ -70,7 +70,7 @@ public class HalServerTestCase {
       final byte[] buffer = new byte[8196];
       int read;
       try {
-        InputStream input = request.getInputStream();
+        InputStream input = request.get().getInputStream();
         while ((read = input.read(buffer)) != -1)
           content.write(buffer, 0, read);
       } catch (IOException e) {
@@ -86,7 +86,7 @@ public class HalServerTestCase {
      */
     protected void write(String value) {
       try {
-        response.getWriter().print(value);
+        response.get().getWriter().print(value);
       } catch (IOException e) {
         throw new RuntimeException(e);
       }
@@ -99,7 +99,7 @@ public class HalServerTestCase {
      */
     protected void writeln(String value) {
       try {
-        response.getWriter().println(value);
+        response.get().getWriter().println(value);
       } catch (IOException e) {
         throw new RuntimeException(e);
       }
@@ -113,7 +113,7 @@ public class HalServerTestCase {
     protected void writeFile(final String fileName) {
       InputStream input = getClass().getResourceAsStream(fileName);
       try {
-        OutputStream output = response.getOutputStream();
+        OutputStream output = response.get().getOutputStream();
         byte[] buffer = new byte[8192];
         int read;
         while ((read = input.read(buffer)) != -1)
@@ -132,10 +132,15 @@ public class HalServerTestCase {
     public void handle(String target, Request baseRequest,
         HttpServletRequest request, HttpServletResponse response)
         throws IOException, ServletException {
-      this.request = (Request) request;
-      this.response = response;
-      this.request.setHandled(true);
-      handle(this.request, response);
+      this.request.set((Request) request);
+      this.response.set(response);
+      try {
+        ((Request) request).setHandled(true);
+        handle((Request) request, response);
+      } finally {
+        this.request.remove();
+        this.response.remove();
+      }
     }
 
   }
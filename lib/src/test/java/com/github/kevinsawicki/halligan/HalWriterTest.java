@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package com.github.kevinsawicki.halligan;
+
+import static com.github.kevinsawicki.halligan.Fixtures.parse;
+import static com.github.kevinsawicki.halligan.Fixtures.parseFile;
+import static com.github.kevinsawicki.halligan.ResourceCodecTest.assertResourceEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+/**
+ * Unit tests of {@link HalWriter}
+ */
+public class HalWriterTest {
+
+  /**
+   * Write resource with embedded resources and parse it back
+   *
+   * @throws Exception
+   */
+  @Test
+  public void roundTripEmbedded() throws Exception {
+    Resource resource = parseFile("/response.json");
+    String json = HalWriter.toJson(resource);
+    assertTrue(json.startsWith("{\"_links\":{\"self\":"));
+    assertResourceEquals(resource, parse(json));
+    assertEquals(json, HalWriter.toJson(parse(json)));
+  }
+
+  /**
+   * Write resource with extra link properties and parse it back
+   *
+   * @throws Exception
+   */
+  @Test
+  public void roundTripLinkProperties() throws Exception {
+    Resource resource = parseFile("/link_properties.json");
+    String json = HalWriter.toJson(resource);
+    assertEquals(
+        "{\"_links\":{\"large\":{\"href\":\"/orders/picture_large.jpg\","
+            + "\"type\":\"application/jpg\",\"height\":902,\"width\":1024}",
+        json.substring(0, json.indexOf('}') + 1));
+    assertResourceEquals(resource, parse(json));
+  }
+
+  /**
+   * Write embedded object and embedded array through snapshots and the
+   * binary codec
+   *
+   * @throws Exception
+   */
+  @Test
+  public void embeddedObjectAndArray() throws Exception {
+    Resource resource = parse("{\"_embedded\":{\"one\":{\"a\":1},"
+        + "\"many\":[{\"b\":2.5}]}}");
+    String expected = "{\"_embedded\":{\"many\":[{\"b\":2.5}],"
+        + "\"one\":{\"a\":1}}}";
+    assertEquals(expected, HalWriter.toJson(resource));
+    assertEquals(expected, HalWriter.toJson(ImmutableResource.of(resource)));
+    assertEquals(expected, HalWriter.toJson(ResourceCodec
+        .fromBytes(ResourceCodec.toBytes(resource))));
+  }
+
+  /**
+   * Write strings requiring escapes
+   *
+   * @throws Exception
+   */
+  @Test
+  public void escapes() throws Exception {
+    Resource resource = parse(
+        "{\"text\":\"a\\\"b\\\\c\\n\\u0001\\u2028\u00e9\"}");
+    String json = HalWriter.toJson(resource);
+    assertEquals("{\"text\":\"a\\\"b\\\\c\\n\\u0001\\u2028\u00e9\"}", json);
+    assertEquals("a\"b\\c\n\u0001\u2028\u00e9", parse(json).getString("text"));
+  }
+
+  /**
+   * Write to UTF-8 stream and through a {@link JsonWriter}
+   *
+   * @throws Exception
+   */
+  @Test
+  public void streamAndJsonWriter() throws Exception {
+    Resource resource = parseFile("/response.json");
+    String expected = HalWriter.toJson(resource);
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    new HalWriter(bytes).write(resource).close();
+    assertEquals(expected, new String(bytes.toByteArray(), "UTF-8"));
+
+    StringWriter output = new StringWriter();
+    HalWriter.write(resource, new JsonWriter(output));
+    assertEquals(expected, output.toString());
+  }
+
+  /**
+   * Both serializers produce identical output for links without an href,
+   * null values, and nested values
+   *
+   * @throws Exception
+   */
+  @Test
+  public void serializersAgree() throws Exception {
+    Resource resource = parse("{\"_links\":{\"self\":{\"href\":\"/a\"},"
+        + "\"items\":[{\"href\":\"/b\",\"title\":\"B\"},{\"href\":\"/c\"}]},"
+        + "\"ratio\":0.25,\"count\":3,\"text\":\"x\\u2028\\\"\","
+        + "\"nested\":{\"list\":[1,2.5,true,null,\"y\"]},"
+        + "\"_embedded\":{\"one\":{\"a\":1},\"many\":[{\"b\":-0.0}]}}");
+    resource.links.put("empty", new Link(null, null, null, null, true, null,
+        null));
+    resource.setProperty("missing", null);
+    resource.setProperty("big", Double.valueOf(1e20));
+    resource.setProperty("values", new int[] { 1, 2 });
+
+    String expected = HalWriter.toJson(resource);
+    StringWriter output = new StringWriter();
+    HalWriter.write(resource, new JsonWriter(output));
+    assertEquals(expected, output.toString());
+    assertTrue(expected.contains("\"empty\":{\"templated\":true}"));
+  }
+}
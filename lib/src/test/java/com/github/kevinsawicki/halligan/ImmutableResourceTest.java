@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package com.github.kevinsawicki.halligan;
+
+import static com.github.kevinsawicki.halligan.Fixtures.parseFile;
+import static com.github.kevinsawicki.halligan.ResourceCodecTest.assertResourceEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+/**
+ * Unit tests of {@link ImmutableResource}
+ */
+public class ImmutableResourceTest {
+
+  /**
+   * Snapshot has the same values as the resource
+   *
+   * @throws Exception
+   */
+  @Test
+  public void snapshot() throws Exception {
+    Resource resource = parseFile("/response.json");
+    ImmutableResource snapshot = ImmutableResource.of(resource);
+    assertResourceEquals(resource, snapshot);
+    assertSame(snapshot, ImmutableResource.of(snapshot));
+    assertTrue(snapshot.getResource("orders") instanceof ImmutableResource);
+    assertEquals(HalWriter.toJson(resource), HalWriter.toJson(snapshot));
+
+    resource.setProperty("ratio", 1.5);
+    assertEquals(4.5, snapshot.getDouble("ratio"), 0);
+  }
+
+  /**
+   * Snapshot can't be modified
+   *
+   * @throws Exception
+   */
+  @Test
+  public void unmodifiable() throws Exception {
+    ImmutableResource snapshot = ImmutableResource.of(parseFile(
+        "/response.json"));
+    try {
+      snapshot.setProperty("ratio", 1.5);
+      fail("Exception not thrown");
+    } catch (UnsupportedOperationException expected) {
+      // Expected
+    }
+    try {
+      snapshot.getResources("orders").clear();
+      fail("Exception not thrown");
+    } catch (UnsupportedOperationException expected) {
+      // Expected
+    }
+    Map<String, Object> regions = snapshot.getMap("regions");
+    try {
+      regions.put("US", 3);
+      fail("Exception not thrown");
+    } catch (UnsupportedOperationException expected) {
+      // Expected
+    }
+    @SuppressWarnings("unchecked")
+    Map<String, Object> emea = (Map<String, Object>) regions.get("EMEA");
+    try {
+      emea.remove("Europe");
+      fail("Exception not thrown");
+    } catch (UnsupportedOperationException expected) {
+      // Expected
+    }
+  }
+
+  /**
+   * Snapshot keeps link arrays
+   *
+   * @throws Exception
+   */
+  @Test
+  public void linkArrays() throws Exception {
+    ImmutableResource snapshot = ImmutableResource.of(parseFile(
+        "/link_arrays.json"));
+    assertEquals(3, snapshot.getLinkCount("item"));
+    assertTrue(snapshot.isLinkArray("none"));
+    assertEquals("Second", snapshot.getLinks("item").get(1).title);
+    assertEquals(HalWriter.toJson(parseFile("/link_arrays.json")),
+        HalWriter.toJson(snapshot));
+  }
+
+  /**
+   * Bulk loaded resources can't be attached to a snapshot
+   *
+   * @throws Exception
+   */
+  @Test
+  public void bulkLoadUnsupported() throws Exception {
+    ImmutableResource snapshot = ImmutableResource.of(parseFile(
+        "/response.json"));
+    try {
+      snapshot.loadAll("orders", "customer", 2);
+      fail("Exception not thrown");
+    } catch (UnsupportedOperationException expected) {
+      // Expected
+    }
+    try {
+      snapshot.getResource("orders").attach("customer", snapshot);
+      fail("Exception not thrown");
+    } catch (UnsupportedOperationException expected) {
+      // Expected
+    }
+    assertNull(snapshot.getResource("orders").getLoaded("customer"));
+  }
+
+  /**
+   * Snapshot can be serialized
+   *
+   * @throws Exception
+   */
+  @Test
+  public void serialize() throws Exception {
+    ImmutableResource snapshot = ImmutableResource.of(parseFile(
+        "/response.json"));
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ObjectOutputStream output = new ObjectOutputStream(bytes);
+    output.writeObject(snapshot);
+    output.close();
+    Object read = new ObjectInputStream(new ByteArrayInputStream(
+        bytes.toByteArray())).readObject();
+    assertResourceEquals(snapshot, (Resource) read);
+  }
+
+  /**
+   * Snapshot is read concurrently by many threads
+   *
+   * @throws Exception
+   */
+  @Test
+  public void concurrentReads() throws Exception {
+    final ImmutableResource snapshot = ImmutableResource.of(parseFile(
+        "/response.json"));
+    final String expected = HalWriter.toJson(snapshot);
+    ExecutorService pool = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<String>> results = new ArrayList<Future<String>>();
+      for (int i = 0; i < 64; i++)
+        results.add(pool.submit(new Callable<String>() {
+
+          public String call() throws Exception {
+            return HalWriter.toJson(snapshot);
+          }
+        }));
+      for (Future<String> result : results)
+        assertEquals(expected, result.get());
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package com.github.kevinsawicki.halligan;
+
+import static com.github.kevinsawicki.halligan.Fixtures.parse;
+import static com.github.kevinsawicki.halligan.Fixtures.parseFile;
+import static java.net.HttpURLConnection.HTTP_OK;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Request;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests of link relations whose value is an array of links
+ */
+public class LinkArraysTest extends HalServerTestCase {
+
+  private static final String LINK_ARRAYS = "/link_arrays.json";
+
+  private static final AtomicInteger orderRequests = new AtomicInteger();
+
+  private static void assertLinks(final Resource resource) {
+    assertEquals(3, resource.getLinkCount("item"));
+    assertTrue(resource.isLinkArray("item"));
+    assertEquals("First", resource.getLink("item").title);
+    assertEquals("Second", resource.getLinks("item").get(1).title);
+    assertEquals(Arrays.asList("/orders/123", "/orders/124", "/orders/123"),
+        resource.getLinkUris("item"));
+
+    assertEquals(1, resource.getLinkCount("curies"));
+    assertTrue(resource.isLinkArray("curies"));
+    assertEquals("ea", resource.getLinks("curies").get(0).name);
+
+    assertEquals(1, resource.getLinkCount("self"));
+    assertFalse(resource.isLinkArray("self"));
+    assertEquals("/orders", resource.getLinks("self").get(0).href);
+
+    assertEquals(0, resource.getLinkCount("none"));
+    assertTrue(resource.isLinkArray("none"));
+    assertNull(resource.getLink("none"));
+    assertTrue(resource.getLinks("none").isEmpty());
+    assertTrue(resource.getLinks("missing").isEmpty());
+    assertEquals(3, resource.getInt("total"));
+  }
+
+  /**
+   * Setup server
+   *
+   * @throws Exception
+   */
+  @Before
+  public void setup() throws Exception {
+    orderRequests.set(0);
+    handler = new RequestHandler() {
+
+      @Override
+      public void handle(Request request, HttpServletResponse response) {
+        String uri = request.getRequestURI();
+        if (uri.startsWith("/orders/")) {
+          orderRequests.incrementAndGet();
+          write("{\"_links\":{\"self\":{\"href\":\"" + uri + "\"}},\"id\":\""
+              + uri.substring(8) + "\"}");
+        } else
+          writeFile("/link_arrays.json");
+        response.setStatus(HTTP_OK);
+      }
+    };
+  }
+
+  /**
+   * Parse link arrays with and without a string pool
+   *
+   * @throws Exception
+   */
+  @Test
+  public void parseArrays() throws Exception {
+    assertLinks(parseFile(LINK_ARRAYS));
+    assertLinks(parseFile(LINK_ARRAYS,
+        new RequestPolicy().stringPool(new StringPool())));
+  }
+
+  /**
+   * Iterating over all links includes the first link of each array
+   *
+   * @throws Exception
+   */
+  @Test
+  public void firstLinks() throws Exception {
+    int count = 0;
+    for (Map.Entry<String, Link> link : parseFile(LINK_ARRAYS).getLinks())
+      if (link.getKey().equals("item")) {
+        assertEquals("First", link.getValue().title);
+        count++;
+      }
+    assertEquals(1, count);
+  }
+
+  /**
+   * Expand templated links of an array
+   *
+   * @throws Exception
+   */
+  @Test
+  public void expand() throws Exception {
+    Map<String, Object> values = Collections.<String, Object> singletonMap(
+        "rel", "find");
+    assertEquals(Collections.singletonList("/docs/rels/find"),
+        parseFile(LINK_ARRAYS).getLinkUris("curies", values));
+  }
+
+  /**
+   * Write arrays back as arrays with both writers
+   *
+   * @throws Exception
+   */
+  @Test
+  public void writeArrays() throws Exception {
+    Resource resource = parseFile(LINK_ARRAYS);
+    assertLinks(parse(HalWriter.toJson(resource)));
+
+    StringWriter output = new StringWriter();
+    HalWriter.write(resource, new JsonWriter(output));
+    assertLinks(parse(output.toString()));
+    assertEquals(HalWriter.toJson(resource), output.toString());
+  }
+
+  /**
+   * Round trip arrays through the binary codec
+   *
+   * @throws Exception
+   */
+  @Test
+  public void codec() throws Exception {
+    Resource decoded = ResourceCodec.fromBytes(ResourceCodec
+        .toBytes(parseFile(LINK_ARRAYS)));
+    assertLinks(decoded);
+    assertEquals("/orders{?id}", decoded.getLink("ea:find").href);
+  }
+
+  /**
+   * Select array links with a path expression
+   *
+   * @throws Exception
+   */
+  @Test
+  public void path() throws Exception {
+    assertEquals("/orders/124", ResourcePath.compile("_links.item[1].href")
+        .getValue(parseFile(LINK_ARRAYS)));
+    assertEquals("/orders", ResourcePath.compile("_links.self.href")
+        .getValue(parseFile(LINK_ARRAYS)));
+  }
+
+  /**
+   * Load every link of an array requesting duplicates once
+   *
+   * @throws Exception
+   */
+  @Test
+  public void loadLinks() throws Exception {
+    Resource resource = new Resource(url);
+    Map<String, Resource> loaded = resource.loadLinks("item", 4);
+    assertEquals(2, loaded.size());
+    assertEquals(2, orderRequests.get());
+    assertEquals("124", loaded.get(resource.resolveUri("/orders/124"))
+        .getString("id"));
+    assertEquals(0, resource.loadLinks("none", 4).size());
+    assertEquals(2, orderRequests.get());
+  }
+}
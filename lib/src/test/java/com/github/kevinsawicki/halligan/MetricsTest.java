@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package com.github.kevinsawicki.halligan;
+
+import static com.github.kevinsawicki.halligan.DefaultGsonFactory.GSON_FACTORY;
+import static java.net.HttpURLConnection.HTTP_OK;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Request;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests of {@link HalMetrics} and {@link HistogramMetrics}
+ */
+public class MetricsTest extends HalServerTestCase {
+
+  /**
+   * Setup server
+   *
+   * @throws Exception
+   */
+  @Before
+  public void setup() throws Exception {
+    handler = new RequestHandler() {
+
+      @Override
+      public void handle(Request request, HttpServletResponse response) {
+        if (request.getParameter("page") == null)
+          writeFile("/response.json");
+        else
+          writeFile("/response_next.json");
+        response.setStatus(HTTP_OK);
+      }
+    };
+  }
+
+  /**
+   * Record metrics of requests, documents, and iterations
+   *
+   * @throws Exception
+   */
+  @Test
+  public void histogramMetrics() throws Exception {
+    HistogramMetrics metrics = new HistogramMetrics();
+    Resource resource = new Resource(GSON_FACTORY,
+        new RequestPolicy().metrics(metrics), url);
+    int pages = 0;
+    for (Resource page : resource)
+      pages++;
+    assertEquals(2, pages);
+
+    assertEquals(2, metrics.getConnect().getCount());
+    assertEquals(2, metrics.getFirstByte().getCount());
+    assertEquals(2, metrics.getRead().getCount());
+    assertEquals(2, metrics.getParse().getCount());
+    assertTrue(metrics.getParse().getMax() > 0);
+    assertTrue(metrics.getBytesRead() > 0);
+    assertEquals(metrics.getBytesRead(), metrics.getDocumentBytes().getSum());
+    assertEquals(3 + 1, metrics.getResources().getSum());
+    assertEquals(3 + 6 + 1, metrics.getLinks().getSum());
+    assertEquals(1, metrics.getPages().getCount());
+    assertEquals(2, metrics.getPages().getMax());
+  }
+
+  /**
+   * Adapter only overriding some methods
+   *
+   * @throws Exception
+   */
+  @Test
+  public void adapter() throws Exception {
+    final List<String> urls = new CopyOnWriteArrayList<String>();
+    HalMetrics metrics = new HalMetrics() {
+
+      @Override
+      public void documentParsed(String url, long bytes, long readNanos,
+          long parseNanos, int resources, int links) {
+        urls.add(url);
+      }
+    };
+    new Resource(GSON_FACTORY, new RequestPolicy().metrics(metrics), url);
+    assertEquals(1, urls.size());
+    assertEquals(url, urls.get(0));
+  }
+
+  /**
+   * Histogram percentiles
+   */
+  @Test
+  public void histogram() {
+    Histogram histogram = new Histogram();
+    assertEquals(0, histogram.getPercentile(50));
+    for (int i = 1; i <= 1000; i++)
+      histogram.record(i);
+    assertEquals(1000, histogram.getCount());
+    assertEquals(1000, histogram.getMax());
+    assertEquals(500.5, histogram.getMean(), 0);
+    long median = histogram.getPercentile(50);
+    assertTrue(Long.toString(median), median >= 500 && median <= 500 * 1.125);
+    long p99 = histogram.getPercentile(99);
+    assertTrue(Long.toString(p99), p99 >= 990 && p99 <= 1000);
+    assertEquals(1000, histogram.getPercentile(100));
+    histogram.record(-5);
+    assertEquals(0, histogram.getPercentile(0.05));
+    histogram.reset();
+    assertEquals(0, histogram.getCount());
+  }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package com.github.kevinsawicki.halligan;
+
+import static com.github.kevinsawicki.halligan.DefaultGsonFactory.GSON_FACTORY;
+import static com.github.kevinsawicki.halligan.Fixtures.parseFile;
+import static java.net.HttpURLConnection.HTTP_OK;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Request;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests of {@link PageStats}
+ */
+public class PageStatsTest extends HalServerTestCase {
+
+  /**
+   * Setup server
+   *
+   * @throws Exception
+   */
+  @Before
+  public void setup() throws Exception {
+    handler = new RequestHandler() {
+
+      @Override
+      public void handle(Request request, HttpServletResponse response) {
+        if (request.getParameter("page") == null)
+          writeFile("/response.json");
+        else
+          writeFile("/response_next.json");
+        response.setStatus(HTTP_OK);
+      }
+    };
+  }
+
+  /**
+   * Statistics observed from a single page
+   *
+   * @throws Exception
+   */
+  @Test
+  public void observe() throws Exception {
+    PageStats stats = new PageStats(null,
+        parseFile("/response.json"), 897);
+    assertEquals(897, stats.bodyBytes);
+    assertEquals(5, stats.properties);
+    assertEquals(3, stats.links);
+    assertEquals(1, stats.rels);
+    assertEquals(2, stats.items("orders"));
+    assertEquals(0, stats.items("customers"));
+    assertEquals(3, stats.itemProperties);
+    assertEquals(3, stats.itemLinks);
+    assertEquals(0, stats.itemRels);
+  }
+
+  /**
+   * Sizes from earlier pages decay when later pages are smaller
+   *
+   * @throws Exception
+   */
+  @Test
+  public void decay() throws Exception {
+    PageStats first = new PageStats(null,
+        parseFile("/response.json"), 1000);
+    PageStats second = new PageStats(first,
+        parseFile("/response_next.json"), 100);
+    assertEquals(750, second.bodyBytes);
+    assertEquals(4, second.properties);
+    assertEquals(3, second.links);
+    assertEquals(2, second.items("orders"));
+    assertEquals(3, second.itemProperties);
+
+    PageStats third = new PageStats(second,
+        parseFile("/response.json"), 2000);
+    assertEquals(2000, third.bodyBytes);
+    assertEquals(5, third.properties);
+  }
+
+  /**
+   * Statistics are only passed to the page requested from the next link
+   *
+   * @throws Exception
+   */
+  @Test
+  public void unrelatedResource() throws Exception {
+    RequestPolicy policy = new RequestPolicy().metrics(new HistogramMetrics());
+    Resource first = new Resource(GSON_FACTORY, policy, url);
+    assertEquals(897 - (897 >> 2), first.next().getPageStats().bodyBytes);
+    Resource other = new Resource(GSON_FACTORY, policy, url + "?page=2");
+    assertEquals(113, other.getPageStats().bodyBytes);
+  }
+
+  /**
+   * Next page is parsed with statistics from the previous page
+   *
+   * @throws Exception
+   */
+  @Test
+  public void nextPage() throws Exception {
+    Resource first = new Resource(GSON_FACTORY, new RequestPolicy(), url);
+    Resource second = first.next();
+    assertEquals(350, second.getInt("shippedToday"));
+
+    PageStats stats = second.getPageStats();
+    assertEquals(4, stats.properties);
+    assertEquals(2, stats.items("orders"));
+    assertEquals(3, stats.itemLinks);
+  }
+
+  /**
+   * Body size is observed when the body is read completely
+   *
+   * @throws Exception
+   */
+  @Test
+  public void bodyBytes() throws Exception {
+    Resource first = new Resource(GSON_FACTORY,
+        new RequestPolicy().metrics(new HistogramMetrics()), url);
+    Resource second = first.next();
+    assertEquals(Math.max(113, 897 - (897 >> 2)),
+        second.getPageStats().bodyBytes);
+  }
+
+  /**
+   * Body size is observed when the body is streamed to the parser
+   *
+   * @throws Exception
+   */
+  @Test
+  public void bodyBytesStreamed() throws Exception {
+    Resource first = new Resource(GSON_FACTORY, new RequestPolicy(), url);
+    assertEquals(897, first.getPageStats().bodyBytes);
+    Resource second = first.next();
+    assertEquals(Math.max(113, 897 - (897 >> 2)),
+        second.getPageStats().bodyBytes);
+  }
+
+  /**
+   * Map capacities hold the size without rehashing
+   */
+  @Test
+  public void capacity() {
+    for (int size = 0; size < 1000; size++)
+      assertTrue(PageStats.capacity(size) * 0.75 >= size);
+  }
+}
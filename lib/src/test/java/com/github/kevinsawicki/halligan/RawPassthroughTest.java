@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package com.github.kevinsawicki.halligan;
+
+import static com.github.kevinsawicki.halligan.DefaultGsonFactory.GSON_FACTORY;
+import static com.github.kevinsawicki.halligan.Fixtures.parse;
+import static com.github.kevinsawicki.halligan.ResourceCodecTest.assertResourceEquals;
+import static java.net.HttpURLConnection.HTTP_OK;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.InputStreamReader;
+import java.io.Reader;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Request;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests of writing resources parsed with their original JSON retained
+ */
+public class RawPassthroughTest extends HalServerTestCase {
+
+  private static String readFile(final String name) throws Exception {
+    Reader reader = new InputStreamReader(
+        RawPassthroughTest.class.getResourceAsStream(name), "UTF-8");
+    StringBuilder content = new StringBuilder();
+    char[] buffer = new char[1024];
+    int read;
+    while ((read = reader.read(buffer)) != -1)
+      content.append(buffer, 0, read);
+    reader.close();
+    return content.toString().trim();
+  }
+
+  private final RequestPolicy policy = new RequestPolicy().retainRaw(true);
+
+  /**
+   * Setup server
+   *
+   * @throws Exception
+   */
+  @Before
+  public void setup() throws Exception {
+    handler = new RequestHandler() {
+
+      @Override
+      public void handle(Request request, HttpServletResponse response) {
+        writeFile("/response.json");
+        response.setStatus(HTTP_OK);
+      }
+    };
+  }
+
+  /**
+   * Unmodified resource is written as the original JSON
+   *
+   * @throws Exception
+   */
+  @Test
+  public void unmodified() throws Exception {
+    Resource resource = new Resource(GSON_FACTORY, policy, url);
+    assertEquals(readFile("/response.json"), HalWriter.toJson(resource));
+  }
+
+  /**
+   * Modified embedded resource is encoded while unmodified siblings are copied
+   *
+   * @throws Exception
+   */
+  @Test
+  public void modifiedEmbedded() throws Exception {
+    String original = readFile("/response.json");
+    Resource resource = new Resource(GSON_FACTORY, policy, url);
+    Resource order = resource.getResources("orders").get(0);
+    order.setProperty("status", "returned");
+    assertFalse(resource.isRawIntact());
+    assertTrue(resource.getResources("orders").get(1).isRawIntact());
+
+    String json = HalWriter.toJson(resource);
+    String unchanged = original.substring(original.indexOf("{",
+        original.indexOf("}, {") + 1), original.indexOf("}]") + 1);
+    assertTrue(json.contains("[{\"_links\":{\"self\""));
+    assertTrue(json.contains("," + unchanged + "]"));
+
+    Resource expected = parse(original);
+    expected.getResources("orders").get(0).setProperty("status", "returned");
+    assertResourceEquals(expected, parse(json));
+  }
+
+  /**
+   * Resources are encoded when the original JSON isn't retained
+   *
+   * @throws Exception
+   */
+  @Test
+  public void notRetained() throws Exception {
+    Resource resource = new Resource(url);
+    assertFalse(resource.isRawIntact());
+    String json = HalWriter.toJson(resource);
+    assertTrue(json.startsWith("{\"_links\":{\"self\":{\"href\":\"/orders\"}"));
+    assertResourceEquals(parse(readFile("/response.json")), parse(json));
+  }
+
+  /**
+   * Embedded relation names with escapes are matched to their resources
+   *
+   * @throws Exception
+   */
+  @Test
+  public void escapedRelation() throws Exception {
+    String json = "{ \"_embedded\" : { \"a\\u0062\" : "
+        + "{ \"x\" : {\"y\":[\"}\\\"\", 1]} } } }";
+    Resource resource = parse(json);
+    RawScanner.attach(resource, json);
+    assertEquals(json, HalWriter.toJson(resource));
+    assertEquals("{ \"x\" : {\"y\":[\"}\\\"\", 1]} }",
+        HalWriter.toJson(resource.getResource("ab")));
+  }
+}
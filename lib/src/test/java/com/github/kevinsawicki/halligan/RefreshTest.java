@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package com.github.kevinsawicki.halligan;
+
+import static java.net.HttpURLConnection.HTTP_OK;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Request;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests of {@link Resource#refresh()}
+ */
+public class RefreshTest extends HalServerTestCase {
+
+  private static volatile String body;
+
+  private static String item(final String id, final String status) {
+    return "{\"_links\":{\"self\":{\"href\":\"/items/" + id
+        + "\"}},\"status\":\"" + status + "\"}";
+  }
+
+  private static String page(final int total, final String... items) {
+    StringBuilder json = new StringBuilder(
+        "{\"_links\":{\"self\":{\"href\":\"/items\"}},\"total\":");
+    json.append(total).append(",\"_embedded\":{\"items\":[");
+    for (int i = 0; i < items.length; i++) {
+      if (i > 0)
+        json.append(',');
+      json.append(items[i]);
+    }
+    json.append("],\"summary\":{\"note\":\"daily\"}}}");
+    return json.toString();
+  }
+
+  /**
+   * Setup server
+   *
+   * @throws Exception
+   */
+  @Before
+  public void setup() throws Exception {
+    handler = new RequestHandler() {
+
+      @Override
+      public void handle(Request request, HttpServletResponse response) {
+        write(body);
+        response.setStatus(HTTP_OK);
+      }
+    };
+  }
+
+  private Resource load(final String json) throws Exception {
+    body = json;
+    return new Resource(url);
+  }
+
+  /**
+   * Refresh with no changes keeps all embedded resources
+   *
+   * @throws Exception
+   */
+  @Test
+  public void unchanged() throws Exception {
+    Resource resource = load(page(2, item("1", "new"), item("2", "new")));
+    List<Resource> items = resource.getResources("items");
+    Resource summary = resource.getResource("summary");
+    body = page(2, item("1", "new"), item("2", "new"));
+    ChangeSet changes = resource.refresh();
+    assertTrue(changes.toString(), changes.isEmpty());
+    assertSame(items.get(0), resource.getResources("items").get(0));
+    assertSame(items.get(1), resource.getResources("items").get(1));
+    assertSame(summary, resource.getResource("summary"));
+  }
+
+  /**
+   * Refresh reports added, removed, and modified embedded resources
+   *
+   * @throws Exception
+   */
+  @Test
+  public void changed() throws Exception {
+    Resource resource = load(page(3, item("1", "new"), item("2", "new"),
+        item("3", "new")));
+    List<Resource> items = resource.getResources("items");
+    Resource item1 = items.get(0);
+    Resource item2 = items.get(1);
+    Resource item3 = items.get(2);
+
+    body = page(3, item("1", "new"), item("2", "shipped"), item("4", "new"));
+    ChangeSet changes = resource.refresh();
+
+    assertEquals(1, changes.getAdded().size());
+    assertEquals("/items/4", changes.getAdded().get(0).getSelfUri());
+    assertEquals(1, changes.getRemoved().size());
+    assertSame(item3, changes.getRemoved().get(0));
+    assertEquals(1, changes.getModified().size());
+    assertSame(item2, changes.getModified().get(0));
+    assertEquals("shipped", item2.getString("status"));
+
+    items = resource.getResources("items");
+    assertEquals(3, items.size());
+    assertSame(item1, items.get(0));
+    assertSame(item2, items.get(1));
+    assertSame(changes.getAdded().get(0), items.get(2));
+    assertTrue(resource.getResource("summary") != null);
+  }
+
+  /**
+   * Refresh reports modified top-level properties and items without self
+   * links
+   *
+   * @throws Exception
+   */
+  @Test
+  public void withoutSelfLinks() throws Exception {
+    Resource resource = load(page(1, "{\"id\":1}", "{\"id\":2}"));
+    Resource first = resource.getResources("items").get(0);
+    body = page(5, "{\"id\":1}", "{\"id\":3}");
+    ChangeSet changes = resource.refresh();
+    assertEquals(1, changes.getAdded().size());
+    assertEquals(3, changes.getAdded().get(0).getInt("id"));
+    assertEquals(1, changes.getRemoved().size());
+    assertEquals(2, changes.getRemoved().get(0).getInt("id"));
+    assertEquals(1, changes.getModified().size());
+    assertSame(resource, changes.getModified().get(0));
+    assertEquals(5, resource.getInt("total"));
+    assertSame(first, resource.getResources("items").get(0));
+  }
+
+  /**
+   * Refresh moves raw spans of kept resources to the refreshed response
+   *
+   * @throws Exception
+   */
+  @Test
+  public void rawSpansRebased() throws Exception {
+    body = page(1, "{\"id\":1}", item("2", "new"));
+    Resource resource = new Resource(DefaultGsonFactory.GSON_FACTORY,
+        new RequestPolicy().retainRaw(true), url);
+    Resource first = resource.getResources("items").get(0);
+    Resource second = resource.getResources("items").get(1);
+    String previous = resource.raw;
+
+    body = page(1, "{\"id\":1}", item("2", "shipped"));
+    resource.refresh();
+    assertSame(first, resource.getResources("items").get(0));
+    assertSame(second, resource.getResources("items").get(1));
+    assertNotSame(previous, resource.raw);
+    assertSame(resource.raw, first.raw);
+    assertSame(resource.raw, second.raw);
+    assertSame(resource.raw, resource.getResource("summary").raw);
+    assertEquals(body, HalWriter.toJson(resource));
+  }
+}
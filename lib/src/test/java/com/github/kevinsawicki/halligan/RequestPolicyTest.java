@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package com.github.kevinsawicki.halligan;
+
+import static java.net.HttpURLConnection.HTTP_OK;
+import static java.net.HttpURLConnection.HTTP_UNAVAILABLE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.github.kevinsawicki.http.HttpRequest;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Request;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests of {@link RequestPolicy}
+ */
+public class RequestPolicyTest extends HalServerTestCase {
+
+  private static final AtomicInteger requests = new AtomicInteger();
+
+  private static volatile int failures;
+
+  private static volatile int slowRequest;
+
+  /**
+   * Setup server
+   *
+   * @throws Exception
+   */
+  @Before
+  public void setup() throws Exception {
+    requests.set(0);
+    failures = 0;
+    slowRequest = -1;
+    handler = new RequestHandler() {
+
+      @Override
+      public void handle(Request request, HttpServletResponse response) {
+        int number = requests.incrementAndGet();
+        if (number <= failures) {
+          response.setStatus(HTTP_UNAVAILABLE);
+          return;
+        }
+        if (number == slowRequest)
+          try {
+            Thread.sleep(2000);
+          } catch (InterruptedException e) {
+            return;
+          }
+        writeFile("/response.json");
+        response.setStatus(HTTP_OK);
+      }
+    };
+  }
+
+  /**
+   * Default policy does not retry
+   *
+   * @throws Exception
+   */
+  @Test
+  public void noRetries() throws Exception {
+    failures = 1;
+    RequestPolicy policy = new RequestPolicy();
+    try {
+      new Resource(DefaultGsonFactory.GSON_FACTORY, policy, url);
+      fail("Exception not thrown");
+    } catch (IOException expected) {
+      // Expected
+    }
+    assertEquals(1, policy.getRequestCount());
+    assertEquals(0, policy.getRetryCount());
+  }
+
+  /**
+   * Retry unavailable responses until success
+   *
+   * @throws Exception
+   */
+  @Test
+  public void retryUntilSuccess() throws Exception {
+    failures = 2;
+    RequestPolicy policy = new RequestPolicy().retries(3, 1, 10);
+    Resource resource = new Resource(DefaultGsonFactory.GSON_FACTORY, policy,
+        url);
+    assertEquals(HTTP_OK, resource.code());
+    assertEquals(14, resource.getInt("currentlyProcessing"));
+    assertEquals(3, policy.getRequestCount());
+    assertEquals(2, policy.getRetryCount());
+  }
+
+  /**
+   * Retries exhausted fail with the last response
+   *
+   * @throws Exception
+   */
+  @Test
+  public void retriesExhausted() throws Exception {
+    failures = 5;
+    RequestPolicy policy = new RequestPolicy().retries(2, 1, 10);
+    try {
+      new Resource(DefaultGsonFactory.GSON_FACTORY, policy, url);
+      fail("Exception not thrown");
+    } catch (IOException expected) {
+      // Expected
+    }
+    assertEquals(3, policy.getRequestCount());
+    assertEquals(2, policy.getRetryCount());
+  }
+
+  /**
+   * Failed requests are only retried for idempotent methods
+   *
+   * @throws Exception
+   */
+  @Test
+  public void failedPostNotRetried() throws Exception {
+    RequestPolicy policy = new RequestPolicy().retries(2, 1, 10);
+    Resource post = new Resource(DefaultGsonFactory.GSON_FACTORY, policy) {
+
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected HttpRequest createRequest(final String url) {
+        return HttpRequest.post(url);
+      }
+    };
+    try {
+      policy.execute(post, "http://localhost:1/orders", null);
+      fail("Exception not thrown");
+    } catch (IOException expected) {
+      // Expected
+    }
+    assertEquals(0, policy.getRetryCount());
+
+    try {
+      policy.execute(new Resource(DefaultGsonFactory.GSON_FACTORY, policy),
+          "http://localhost:1/orders", null);
+      fail("Exception not thrown");
+    } catch (IOException expected) {
+      // Expected
+    }
+    assertEquals(2, policy.getRetryCount());
+  }
+
+  /**
+   * Read timeout fails request
+   *
+   * @throws Exception
+   */
+  @Test(expected = IOException.class)
+  public void readTimeout() throws Exception {
+    slowRequest = 1;
+    new Resource(DefaultGsonFactory.GSON_FACTORY,
+        new RequestPolicy().readTimeout(100), url);
+  }
+
+  /**
+   * Slow request is hedged and the hedge responds first
+   *
+   * @throws Exception
+   */
+  @Test
+  public void hedgeWins() throws Exception {
+    RequestPolicy policy = new RequestPolicy().hedge(90);
+    for (int i = 0; i < 20; i++)
+      new Resource(DefaultGsonFactory.GSON_FACTORY, policy, url);
+    assertEquals(0, policy.getHedgeCount());
+
+    slowRequest = requests.get() + 1;
+    long start = System.currentTimeMillis();
+    Resource resource = new Resource(DefaultGsonFactory.GSON_FACTORY, policy,
+        url);
+    assertTrue(System.currentTimeMillis() - start < 2000);
+    assertEquals(HTTP_OK, resource.code());
+    assertEquals(14, resource.getInt("currentlyProcessing"));
+    assertEquals(1, policy.getHedgeCount());
+    assertEquals(1, policy.getHedgeWinCount());
+    assertEquals(22, policy.getRequestCount());
+  }
+
+  /**
+   * Shared default policy can't be configured and copies of it have their
+   * own counters
+   *
+   * @throws Exception
+   */
+  @Test
+  public void defaultPolicyUnmodifiable() throws Exception {
+    RequestPolicy policy = new Resource(url).getPolicy();
+    try {
+      policy.retries(5, 1, 10);
+      fail("Exception not thrown");
+    } catch (UnsupportedOperationException expected) {
+      // Expected
+    }
+    RequestPolicy copy = policy.withPriority(Priority.INTERACTIVE);
+    assertEquals(0, copy.getRequestCount());
+    copy.readTimeout(1000);
+    new Resource(DefaultGsonFactory.GSON_FACTORY, copy, url);
+    assertEquals(1, copy.getRequestCount());
+  }
+
+  /**
+   * Linked resources are requested with the same policy
+   *
+   * @throws Exception
+   */
+  @Test
+  public void policyInherited() throws Exception {
+    RequestPolicy policy = new RequestPolicy();
+    Resource resource = new Resource(DefaultGsonFactory.GSON_FACTORY, policy,
+        url);
+    assertEquals(policy, resource.getResource("orders").getPolicy());
+    assertEquals(policy, resource.next().getPolicy());
+    assertEquals(2, policy.getRequestCount());
+  }
+}
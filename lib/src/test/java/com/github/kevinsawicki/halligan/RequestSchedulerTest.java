@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package com.github.kevinsawicki.halligan;
+
+import static com.github.kevinsawicki.halligan.Priority.BACKGROUND;
+import static com.github.kevinsawicki.halligan.Priority.INTERACTIVE;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.junit.Assert.assertEquals;
+
+import com.github.kevinsawicki.halligan.RequestScheduler.Ticket;
+
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+/**
+ * Unit tests of {@link RequestScheduler}
+ */
+public class RequestSchedulerTest {
+
+  private final List<Priority> order = new CopyOnWriteArrayList<Priority>();
+
+  private CountDownLatch done;
+
+  private void enqueue(final RequestScheduler scheduler,
+      final Priority priority) throws InterruptedException {
+    final int waiting = scheduler.getWaiting(priority);
+    new Thread() {
+
+      public void run() {
+        try {
+          Ticket ticket = scheduler.acquire(priority);
+          order.add(priority);
+          scheduler.release(ticket);
+        } catch (InterruptedIOException e) {
+          order.add(null);
+        }
+        done.countDown();
+      }
+    }.start();
+    while (scheduler.getWaiting(priority) == waiting)
+      Thread.sleep(5);
+  }
+
+  /**
+   * Interactive requests start before earlier background requests
+   *
+   * @throws Exception
+   */
+  @Test(timeout = 10000)
+  public void interactiveFirst() throws Exception {
+    RequestScheduler scheduler = new RequestScheduler(1);
+    done = new CountDownLatch(3);
+    Ticket held = scheduler.acquire(INTERACTIVE);
+    enqueue(scheduler, BACKGROUND);
+    enqueue(scheduler, BACKGROUND);
+    enqueue(scheduler, INTERACTIVE);
+    scheduler.release(held);
+    done.await();
+    assertEquals(INTERACTIVE, order.get(0));
+    assertEquals(BACKGROUND, order.get(1));
+    assertEquals(BACKGROUND, order.get(2));
+  }
+
+  /**
+   * Background requests are limited to their share
+   *
+   * @throws Exception
+   */
+  @Test(timeout = 10000)
+  public void backgroundShare() throws Exception {
+    RequestScheduler scheduler = new RequestScheduler(3).share(BACKGROUND, 1);
+    done = new CountDownLatch(1);
+    Ticket background = scheduler.acquire(BACKGROUND);
+    enqueue(scheduler, BACKGROUND);
+    Ticket interactive1 = scheduler.acquire(INTERACTIVE);
+    Ticket interactive2 = scheduler.acquire(INTERACTIVE);
+    assertEquals(2, scheduler.getInFlight(INTERACTIVE));
+    assertEquals(1, scheduler.getWaiting(BACKGROUND));
+    scheduler.release(background);
+    done.await();
+    assertEquals(BACKGROUND, order.get(0));
+    scheduler.release(interactive1);
+    scheduler.release(interactive2);
+    assertEquals(0, scheduler.getInFlight(INTERACTIVE));
+    assertEquals(0, scheduler.getInFlight(BACKGROUND));
+  }
+
+  /**
+   * Requests waiting longer than the maximum wait are not starved
+   *
+   * @throws Exception
+   */
+  @Test(timeout = 10000)
+  public void noStarvation() throws Exception {
+    RequestScheduler scheduler = new RequestScheduler(1).maxWait(50,
+        MILLISECONDS);
+    done = new CountDownLatch(2);
+    Ticket held = scheduler.acquire(INTERACTIVE);
+    enqueue(scheduler, BACKGROUND);
+    Thread.sleep(100);
+    enqueue(scheduler, INTERACTIVE);
+    scheduler.release(held);
+    done.await();
+    assertEquals(BACKGROUND, order.get(0));
+    assertEquals(INTERACTIVE, order.get(1));
+  }
+
+  /**
+   * Acquiring times out when no slot is available
+   *
+   * @throws Exception
+   */
+  @Test(expected = InterruptedIOException.class)
+  public void acquireTimeout() throws Exception {
+    RequestScheduler scheduler = new RequestScheduler(1);
+    scheduler.acquire(BACKGROUND);
+    try {
+      scheduler.acquire(INTERACTIVE, 10, MILLISECONDS);
+    } finally {
+      assertEquals(0, scheduler.getWaiting(INTERACTIVE));
+    }
+  }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package com.github.kevinsawicki.halligan;
+
+import static com.github.kevinsawicki.halligan.DefaultGsonFactory.GSON_FACTORY;
+import static com.github.kevinsawicki.halligan.Fixtures.parseFile;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map.Entry;
+
+import org.junit.Test;
+
+/**
+ * Unit tests of {@link ResourceCodec}
+ */
+public class ResourceCodecTest {
+
+  private static void assertLinkEquals(final Link expected, final Link actual) {
+    assertEquals(expected, actual);
+    assertEquals(expected.hreflang, actual.hreflang);
+    assertEquals(expected.name, actual.name);
+    assertEquals(expected.profile, actual.profile);
+    assertEquals(expected.title, actual.title);
+    assertEquals(expected.type, actual.type);
+    assertEquals(expected.properties, actual.properties);
+  }
+
+  /**
+   * Assert resources have equal properties, links, and embedded resources
+   *
+   * @param expected
+   * @param actual
+   */
+  static void assertResourceEquals(final Resource expected,
+      final Resource actual) {
+    assertEquals(expected.code(), actual.code());
+    assertEquals(expected.properties, actual.properties);
+    assertEquals(expected.links.keySet(), actual.links.keySet());
+    for (Entry<String, Link> link : expected.links.entrySet())
+      assertLinkEquals(link.getValue(), actual.getLink(link.getKey()));
+    assertEquals(expected.resources.keySet(), actual.resources.keySet());
+    for (Entry<String, List<Resource>> entry : expected.resources.entrySet()) {
+      List<Resource> actualResources = actual.getResources(entry.getKey());
+      assertEquals(expected.isEmbeddedObject(entry.getKey()),
+          actual.isEmbeddedObject(entry.getKey()));
+      assertEquals(entry.getValue().size(), actualResources.size());
+      for (int i = 0; i < actualResources.size(); i++)
+        assertResourceEquals(entry.getValue().get(i), actualResources.get(i));
+    }
+  }
+
+  /**
+   * Round trip resource with embedded resources
+   *
+   * @throws Exception
+   */
+  @Test
+  public void roundTrip() throws Exception {
+    Resource resource = parseFile("/response.json");
+    Resource decoded = ResourceCodec.fromBytes(ResourceCodec
+        .toBytes(resource));
+    assertResourceEquals(resource, decoded);
+    assertEquals(14, decoded.getInt("currentlyProcessing"));
+    assertEquals(4.5D, decoded.getDouble("ratio"), 0);
+    assertEquals(5D, decoded.getMap("regions").get("AP"));
+    assertEquals("/customers/7809", decoded.getResource("orders")
+        .getLinkUri("customer"));
+  }
+
+  /**
+   * Round trip links with additional properties
+   *
+   * @throws Exception
+   */
+  @Test
+  public void linkProperties() throws Exception {
+    Resource resource = parseFile("/link_properties.json");
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    ResourceCodec.write(resource, output);
+    Resource decoded = ResourceCodec.read(new ByteArrayInputStream(output
+        .toByteArray()));
+    assertResourceEquals(resource, decoded);
+    assertEquals("#F00", decoded.getLink("small").getString("background"));
+    assertTrue(decoded.getLink("small").getBoolean("dither"));
+  }
+
+  /**
+   * Round trip numbers that are not integral doubles
+   *
+   * @throws Exception
+   */
+  @Test
+  public void numbers() throws Exception {
+    Resource resource = new Resource(GSON_FACTORY);
+    resource.properties.put("negative", -12D);
+    resource.properties.put("negativeZero", -0D);
+    resource.properties.put("fraction", 0.125D);
+    resource.properties.put("large", 1e300D);
+    resource.properties.put("int", Integer.valueOf(Integer.MIN_VALUE));
+    resource.properties.put("long", Long.valueOf(Long.MAX_VALUE));
+    resource.properties.put("list", Collections.singletonList(3D));
+    resource.properties.put("null", null);
+    Resource decoded = ResourceCodec.fromBytes(ResourceCodec
+        .toBytes(resource));
+    assertEquals(resource.properties, decoded.properties);
+    assertEquals(Double.doubleToRawLongBits(-0D),
+        Double.doubleToRawLongBits((Double) decoded.properties
+            .get("negativeZero")));
+  }
+
+  /**
+   * Encoded resource is smaller than Java serialization
+   *
+   * @throws Exception
+   */
+  @Test
+  public void smallerThanSerialization() throws Exception {
+    Resource resource = parseFile("/response.json");
+    ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+    ObjectOutputStream output = new ObjectOutputStream(serialized);
+    output.writeObject(resource);
+    output.close();
+    assertTrue(ResourceCodec.toBytes(resource).length * 4 < serialized.size());
+  }
+
+  /**
+   * Decode bytes that are not an encoded resource
+   *
+   * @throws Exception
+   */
+  @Test(expected = IOException.class)
+  public void invalidBytes() throws Exception {
+    ResourceCodec.fromBytes(new byte[] { 1, 2, 3 });
+  }
+}
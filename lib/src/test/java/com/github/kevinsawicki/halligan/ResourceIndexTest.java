@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package com.github.kevinsawicki.halligan;
+
+import static com.github.kevinsawicki.halligan.DefaultGsonFactory.GSON_FACTORY;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.google.gson.stream.JsonReader;
+
+import java.io.StringReader;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests of finding embedded resources by property values
+ */
+public class ResourceIndexTest {
+
+  private Resource resource;
+
+  /**
+   * Create resource with embedded items
+   *
+   * @throws Exception
+   */
+  @Before
+  public void setup() throws Exception {
+    StringBuilder json = new StringBuilder("{\"_embedded\":{\"items\":[");
+    for (int i = 0; i < 1000; i++) {
+      if (i > 0)
+        json.append(',');
+      json.append("{\"id\":").append(999 - i).append(",\"sku\":\"sku-")
+          .append(String.format("%04d", i)).append("\",\"dims\":{\"weight\":")
+          .append(i % 10).append("}}");
+    }
+    json.append(",{\"id\":\"text\"},{\"sku\":null}]}}");
+    resource = new Resource(GSON_FACTORY).parse(new JsonReader(
+        new StringReader(json.toString())));
+  }
+
+  /**
+   * Find resources by equal values
+   */
+  @Test
+  public void findEqual() {
+    Resource item = resource.findResource("items", "id", 7);
+    assertEquals("sku-0992", item.getString("sku"));
+    assertSame(item, resource.findResource("items", "sku", "sku-0992"));
+    assertSame(item, resource.findResource("items", "id", 7L));
+    assertEquals("text", resource.findResource("items", "id", "text")
+        .getString("id"));
+    assertNull(resource.findResource("items", "id", 1000));
+    assertNull(resource.findResource("missing", "id", 7));
+    assertEquals(100, resource.findResources("items", "dims.weight", 3).size());
+    assertSame(resource.findResources("items", "dims.weight", 3),
+        resource.findResources("items", "dims.weight", 3));
+  }
+
+  /**
+   * Find resources by range of values
+   */
+  @Test
+  public void findRange() {
+    List<Resource> items = resource.findResources("items", "id", 10, 19.5);
+    assertEquals(10, items.size());
+    for (int i = 0; i < items.size(); i++)
+      assertEquals(10 + i, items.get(i).getInt("id"));
+
+    assertEquals(5, resource.findResources("items", "id", 995, null).size());
+    assertEquals(3, resource.findResources("items", "id", null, 2).size());
+    assertEquals(1, resource.findResources("items", "id", "a", "z").size());
+    assertEquals(1001, resource.findResources("items", "id", null, null)
+        .size());
+    assertTrue(resource.findResources("items", "id", 20, 10).isEmpty());
+    assertTrue(resource.findResources("items", "id", 1, "z").isEmpty());
+
+    items = resource.findResources("items", "sku", "sku-0100", "sku-0109");
+    assertEquals(10, items.size());
+    assertEquals("sku-0100", items.get(0).getString("sku"));
+
+    items = resource.findResources("items", "dims.weight", 9, 9);
+    assertEquals(100, items.size());
+    assertEquals("sku-0009", items.get(0).getString("sku"));
+    assertEquals("sku-0019", items.get(1).getString("sku"));
+  }
+
+  /**
+   * Indexes are rebuilt after resource is modified
+   */
+  @Test
+  public void rebuildAfterModified() {
+    Resource item = resource.findResource("items", "id", 7);
+    item.setProperty("id", 5000);
+    assertSame(item, resource.findResource("items", "id", 7));
+    resource.markModified();
+    assertNull(resource.findResource("items", "id", 7));
+    assertSame(item, resource.findResource("items", "id", 5000));
+  }
+
+  /**
+   * Indexes of names and paths containing colons are cached separately
+   *
+   * @throws Exception
+   */
+  @Test
+  public void distinctCacheKeys() throws Exception {
+    Resource resource = new Resource(GSON_FACTORY).parse(new JsonReader(
+        new StringReader("{\"_embedded\":{\"z\":[{\"x:y\":1,\"n\":1}],"
+            + "\"y:z\":[{\"x\":1,\"n\":2}]}}")));
+    assertEquals(1, resource.findResource("z", "x:y", 1).getInt("n"));
+    assertEquals(2, resource.findResource("y:z", "x", 1).getInt("n"));
+  }
+
+  /**
+   * Null values match no resources in both index types
+   */
+  @Test
+  public void findNull() {
+    List<Resource> items = resource.getResources("items");
+    ResourcePath path = ResourcePath.compile("sku");
+    assertTrue(new ResourceIndex.Hash(items, path).find(null).isEmpty());
+    assertTrue(new ResourceIndex.Sorted(items, path).find(null).isEmpty());
+    assertTrue(resource.findResources("items", "sku", null).isEmpty());
+  }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package com.github.kevinsawicki.halligan;
+
+import static com.github.kevinsawicki.halligan.Fixtures.parseFile;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Unit tests of {@link ResourcePath}
+ */
+public class ResourcePathTest {
+
+  /**
+   * Evaluate paths into properties and nested maps
+   *
+   * @throws Exception
+   */
+  @Test
+  public void properties() throws Exception {
+    Resource resource = parseFile("/response.json");
+    assertEquals(10, ResourcePath.compile("regions.EMEA.Europe")
+        .getInt(resource));
+    assertEquals(5L, ResourcePath.compile("regions.AP").getLong(resource));
+    assertEquals(4.5, ResourcePath.compile("ratio").getDouble(resource), 0);
+    assertTrue(ResourcePath.compile("onTime").getBoolean(resource));
+    assertEquals(3, ResourcePath.compile("regions.EMEA").getMap(resource)
+        .size());
+    assertNull(ResourcePath.compile("regions.US.total").getValue(resource));
+    assertEquals(-1, ResourcePath.compile("regions.US").getInt(resource));
+    assertFalse(ResourcePath.compile("ratio.value").has(resource));
+  }
+
+  /**
+   * Evaluate paths into links and embedded resources
+   *
+   * @throws Exception
+   */
+  @Test
+  public void linksAndEmbedded() throws Exception {
+    Resource resource = parseFile("/response.json");
+    assertEquals("/orders?page=2", ResourcePath.compile("_links.next.href")
+        .getString(resource));
+    assertTrue(ResourcePath.compile("_links.find.templated")
+        .getBoolean(resource));
+    assertEquals(20, ResourcePath.compile("orders[1].total").getInt(resource));
+    assertEquals("/customers/12369",
+        ResourcePath.compile("orders[1]._links.customer.href").getString(
+            resource));
+    assertSame(resource.getResources("orders").get(0), ResourcePath.compile(
+        "orders[0]").getResource(resource));
+    assertNull(ResourcePath.compile("orders[2].total").getValue(resource));
+    assertTrue(ResourcePath.compile("orders").getValue(
+        resource) instanceof List);
+  }
+
+  /**
+   * Evaluate path against link properties
+   *
+   * @throws Exception
+   */
+  @Test
+  public void link() throws Exception {
+    Resource resource = parseFile("/link_properties.json");
+    Link small = resource.getLink("small");
+    assertEquals("#F00", ResourcePath.compile("background").getString(small));
+    assertEquals("application/jpg", ResourcePath.compile("type")
+        .getString(small));
+    assertEquals(Double.valueOf(210), ResourcePath.compile("width").getValue(
+        small));
+    assertEquals(1024, ResourcePath.compile("_links.large.width").getInt(
+        resource));
+  }
+
+  /**
+   * Compile and reuse path
+   */
+  @Test
+  public void compile() {
+    ResourcePath path = ResourcePath.compile("a[0][1].b");
+    assertEquals("a[0][1].b", path.toString());
+    assertEquals(path, ResourcePath.compile("a[0][1].b"));
+    assertEquals(path.hashCode(), ResourcePath.compile("a[0][1].b")
+        .hashCode());
+  }
+
+  /**
+   * Compiling malformed expressions fails
+   */
+  @Test
+  public void malformed() {
+    String[] expressions = new String[] { "", "a.", ".a", "a..b", "a[",
+        "a[x]", "a[-1]", "a[0]b", "[0]" };
+    for (String expression : expressions)
+      try {
+        ResourcePath.compile(expression);
+        throw new AssertionError("Exception not thrown for: " + expression);
+      } catch (IllegalArgumentException expected) {
+        // Expected
+      }
+  }
+}
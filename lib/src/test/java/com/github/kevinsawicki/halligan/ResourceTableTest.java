@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package com.github.kevinsawicki.halligan;
+
+import static com.github.kevinsawicki.halligan.Fixtures.parseFile;
+import static java.net.HttpURLConnection.HTTP_OK;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Request;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests of {@link ResourceTable}
+ */
+public class ResourceTableTest extends HalServerTestCase {
+
+  private static final int PAGES = 5;
+
+  private static final int PAGE_SIZE = 2000;
+
+  /**
+   * Setup server
+   *
+   * @throws Exception
+   */
+  @Before
+  public void setup() throws Exception {
+    handler = new RequestHandler() {
+
+      @Override
+      public void handle(Request request, HttpServletResponse response) {
+        String page = request.getParameter("page");
+        int number = page != null ? Integer.parseInt(page) : 1;
+        StringBuilder json = new StringBuilder("{\"_links\":{");
+        if (number < PAGES)
+          json.append("\"next\":{\"href\":\"/items?page=")
+              .append(number + 1).append("\"}");
+        json.append("},\"_embedded\":{\"items\":[");
+        for (int i = 0; i < PAGE_SIZE; i++) {
+          int id = (number - 1) * PAGE_SIZE + i;
+          if (i > 0)
+            json.append(',');
+          json.append("{\"_links\":{\"self\":{\"href\":\"/items/").append(id)
+              .append("\"}},\"id\":").append(id).append(",\"even\":")
+              .append(id % 2 == 0).append(",\"color\":\"")
+              .append(id % 3 == 0 ? "red" : "blue").append("\"}");
+        }
+        json.append("]}}");
+        write(json.toString());
+        response.setStatus(HTTP_OK);
+      }
+    };
+  }
+
+  /**
+   * Add embedded resources from fixture
+   *
+   * @throws Exception
+   */
+  @Test
+  public void addEmbedded() throws Exception {
+    Resource resource = parseFile("/response.json");
+    ResourceTable table = new ResourceTable();
+    for (Resource order : resource.getResources("orders"))
+      table.add(order);
+    assertEquals(2, table.size());
+    assertEquals(new HashSet<String>(Arrays.asList("total", "currency",
+        "status")), table.getColumns());
+    assertEquals(30.0, table.getDouble(0, "total"), 0);
+    assertEquals("processing", table.getString(1, "status"));
+    assertEquals("/orders/124", table.getSelfUri(1));
+    assertNull(table.get(0, "missing"));
+
+    ResourceTable.Row row = table.get(0);
+    assertEquals(0, row.getIndex());
+    assertEquals(30, row.getInt("total"));
+    assertEquals(30, row.getLong("total"));
+    assertEquals("USD", row.getString("currency"));
+    assertEquals("/orders/123", row.getSelfUri());
+    assertTrue(row.hasProperty("status"));
+    assertFalse(row.hasProperty("missing"));
+    assertEquals(-1, row.getInt("missing"));
+    assertFalse(row.getBoolean("currency"));
+  }
+
+  /**
+   * Mismatched and nested values aren't stored
+   *
+   * @throws Exception
+   */
+  @Test
+  public void mismatchedValues() throws Exception {
+    ResourceTable table = new ResourceTable();
+    table.add(parseFile("/response.json"));
+    Resource resource = new Resource(DefaultGsonFactory.GSON_FACTORY);
+    resource.setProperty("ratio", "high");
+    resource.setProperty("onTime", false);
+    table.add(resource);
+    assertEquals(2, table.size());
+    assertFalse(table.getColumns().contains("regions"));
+    assertNull(table.get(1, "ratio"));
+    assertEquals(Boolean.FALSE, table.get(1, "onTime"));
+    assertNull(table.getSelfUri(1));
+    assertNull(table.get(1).getSelfUri());
+  }
+
+  /**
+   * Reads past the written rows don't allocate memory
+   */
+  @Test
+  public void readPastCapacity() {
+    OffHeapBuffer buffer = new OffHeapBuffer();
+    assertEquals(0, buffer.getLong(1 << 20));
+    assertEquals(0, buffer.getDouble(1 << 20), 0);
+    assertFalse(buffer.getBit(1 << 20));
+    assertEquals(0, buffer.capacity());
+
+    ResourceTable table = new ResourceTable();
+    table.add(new Resource(DefaultGsonFactory.GSON_FACTORY));
+    assertNull(table.getSelfUri(0));
+    assertEquals(-1, table.getDouble(0, "missing"), 0);
+  }
+
+  /**
+   * Add items from all pages
+   *
+   * @throws Exception
+   */
+  @Test
+  public void addAllPages() throws Exception {
+    ResourceTable table = new ResourceTable().addAll(new Resource(url),
+        "items");
+    assertEquals(PAGES * PAGE_SIZE, table.size());
+
+    Iterator<ResourceTable.Row> rows = table.iterator();
+    for (int i = 0; i < table.size(); i++) {
+      ResourceTable.Row row = rows.next();
+      assertEquals(i, row.getIndex());
+      assertEquals(i, row.getInt("id"));
+      assertEquals(i % 2 == 0, row.getBoolean("even"));
+      assertEquals(i % 3 == 0 ? "red" : "blue", row.getString("color"));
+      assertEquals("/items/" + i, row.getSelfUri());
+    }
+    assertFalse(rows.hasNext());
+
+    table.clear();
+    assertEquals(0, table.size());
+    assertTrue(table.getColumns().isEmpty());
+  }
+}
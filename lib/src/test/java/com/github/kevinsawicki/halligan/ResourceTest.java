@@ -32,6 +32,7 @@ import com.github.kevinsawicki.http.HttpRequest;
 import com.github.kevinsawicki.http.HttpRequest.HttpRequestException;
 
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -78,6 +79,26 @@ public class ResourceTest extends HalServerTestCase {
         assertEquals(200, child.code());
   }
 
+  /**
+   * Unsupported response charset fails with an I/O exception
+   *
+   * @throws Exception
+   */
+  @Test(expected = UnsupportedEncodingException.class)
+  public void unsupportedCharset() throws Exception {
+    handler = new RequestHandler() {
+
+      @Override
+      public void handle(Request request, HttpServletResponse response) {
+        response.setHeader("Content-Type",
+            "application/hal+json; charset=x-no-such-charset");
+        writeFile("/response.json");
+        response.setStatus(HTTP_OK);
+      }
+    };
+    new Resource(url);
+  }
+
   /**
    * Get self link href
    *
@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package com.github.kevinsawicki.halligan;
+
+import static com.github.kevinsawicki.halligan.Fixtures.parseFile;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import com.google.gson.JsonDeserializationContext;
+import com.google.gson.JsonElement;
+import com.google.gson.stream.JsonReader;
+
+import java.io.StringReader;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+
+import org.junit.Test;
+
+/**
+ * Unit tests of {@link StringPool}
+ */
+public class StringPoolTest {
+
+  private static String key(final Resource resource, final String name) {
+    for (Entry<String, Object> entry : resource.properties.entrySet())
+      if (entry.getKey().equals(name))
+        return entry.getKey();
+    return null;
+  }
+
+  /**
+   * Equal strings resolve to the first pooled instance
+   */
+  @Test
+  public void intern() {
+    StringPool pool = new StringPool(16, 8);
+    String first = new String("self");
+    String second = new String("self");
+    assertSame(first, pool.intern(first));
+    assertSame(first, pool.intern(second));
+    assertNull(pool.intern(null));
+    assertEquals(16, pool.getCapacity());
+  }
+
+  /**
+   * Strings longer than the maximum length are not pooled
+   */
+  @Test
+  public void maxLength() {
+    StringPool pool = new StringPool(16, 4);
+    String first = new String("customer");
+    pool.intern(first);
+    assertNotSame(first, pool.intern(new String("customer")));
+  }
+
+  /**
+   * Colliding strings replace each other so the pool stays bounded
+   */
+  @Test
+  public void directMapped() {
+    StringPool pool = new StringPool(1, 16);
+    String first = new String("first");
+    String second = new String("second");
+    assertSame(first, pool.intern(first));
+    assertSame(second, pool.intern(second));
+    assertNotSame(first, pool.intern(new String("first")));
+    pool.clear();
+    assertNotSame(second, pool.intern(new String("second")));
+  }
+
+  /**
+   * Parsed resources share pooled rels, hrefs, property names, and values
+   *
+   * @throws Exception
+   */
+  @Test
+  public void sharedAcrossResources() throws Exception {
+    StringPool pool = new StringPool();
+    RequestPolicy policy = new RequestPolicy().stringPool(pool);
+    Resource first = parseFile("/response.json", policy);
+    Resource second = parseFile("/response.json", policy);
+    assertSame(first.getSelfUri(), second.getSelfUri());
+    assertSame(key(first, "currentlyProcessing"), key(second,
+        "currentlyProcessing"));
+
+    Resource order = first.getResources("orders").get(0);
+    Resource other = second.getResources("orders").get(1);
+    assertSame(order.getString("currency"), other.getString("currency"));
+    for (Entry<String, Link> link : order.getLinks())
+      assertSame(link.getKey(), pool.intern(new String(link.getKey())));
+  }
+
+  /**
+   * Links parsed with a pool equal links parsed by the deserializer
+   *
+   * @throws Exception
+   */
+  @Test
+  public void sameLinks() throws Exception {
+    ResourceCodecTest.assertResourceEquals(parseFile("/response.json"),
+        parseFile("/response.json", new RequestPolicy()
+            .stringPool(new StringPool())));
+    ResourceCodecTest.assertResourceEquals(
+        parseFile("/link_properties.json"), parseFile(
+            "/link_properties.json", new RequestPolicy()
+                .stringPool(new StringPool())));
+  }
+
+  /**
+   * Links parsed with a pool use the Link deserializer of the Gson factory
+   *
+   * @throws Exception
+   */
+  @Test
+  public void customDeserializer() throws Exception {
+    final List<Link> created = new ArrayList<Link>();
+    GsonFactory gson = new DefaultGsonFactory() {
+
+      private static final long serialVersionUID = 1L;
+
+      public Link deserialize(JsonElement json, Type typeOfT,
+          JsonDeserializationContext context) {
+        Link link = super.deserialize(json, typeOfT, context);
+        link = new Link(link.href, null, null, null, false, "custom", null);
+        created.add(link);
+        return link;
+      }
+    };
+    StringPool pool = new StringPool();
+    String json = "{\"_links\":{\"self\":{\"href\":\"/a\"}}}";
+    RequestPolicy policy = new RequestPolicy().stringPool(pool);
+    Resource first = new Resource(gson, policy).parse(new JsonReader(
+        new StringReader(json)));
+    Resource second = new Resource(gson, policy).parse(new JsonReader(
+        new StringReader(json)));
+    assertEquals("custom", first.getLink("self").title);
+    assertSame(first.getSelfUri(), second.getSelfUri());
+    assertSame(created.get(0), first.getLink("self"));
+    assertSame(created.get(1), second.getLink("self"));
+  }
+}
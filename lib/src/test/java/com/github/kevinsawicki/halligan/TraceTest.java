@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package com.github.kevinsawicki.halligan;
+
+import static com.github.kevinsawicki.halligan.DefaultGsonFactory.GSON_FACTORY;
+import static java.net.HttpURLConnection.HTTP_OK;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.github.kevinsawicki.halligan.TraceEvent.Type;
+import com.github.kevinsawicki.halligan.TraceSpan.Kind;
+
+import java.io.IOException;
+import java.util.List;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Request;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests of {@link HalTracer} and {@link TraceRecorder}
+ */
+public class TraceTest extends HalServerTestCase {
+
+  /**
+   * Setup server
+   *
+   * @throws Exception
+   */
+  @Before
+  public void setup() throws Exception {
+    handler = new RequestHandler() {
+
+      @Override
+      public void handle(Request request, HttpServletResponse response) {
+        if (request.getParameter("page") == null)
+          writeFile("/response.json");
+        else
+          writeFile("/response_next.json");
+        response.setStatus(HTTP_OK);
+      }
+    };
+  }
+
+  private static void assertEvent(final TraceEvent event, final Type type,
+      final Kind kind, final String rel) {
+    assertEquals(type, event.getType());
+    assertEquals(kind, event.getSpan().getKind());
+    assertEquals(rel, event.getSpan().getRel());
+  }
+
+  /**
+   * Trace iterating through pages
+   *
+   * @throws Exception
+   */
+  @Test
+  public void iteration() throws Exception {
+    TraceRecorder recorder = new TraceRecorder();
+    Resource resource = new Resource(GSON_FACTORY,
+        new RequestPolicy().tracer(recorder), url);
+    int pages = 0;
+    for (Resource page : resource)
+      pages++;
+    assertEquals(2, pages);
+    assertNull(TraceSpan.current());
+
+    List<TraceEvent> events = recorder.getEvents();
+    assertEquals(8, events.size());
+    assertEvent(events.get(0), Type.START, Kind.PARSE, null);
+    assertEvent(events.get(1), Type.END, Kind.PARSE, null);
+    assertEvent(events.get(2), Type.START, Kind.PAGE, "next");
+    assertEvent(events.get(3), Type.START, Kind.HOP, "next");
+    assertEvent(events.get(4), Type.START, Kind.PARSE, "next");
+    assertEvent(events.get(5), Type.END, Kind.PARSE, "next");
+    assertEvent(events.get(6), Type.END, Kind.HOP, "next");
+    assertEvent(events.get(7), Type.END, Kind.PAGE, "next");
+    for (int i = 0; i < events.size(); i++)
+      assertEquals(i, events.get(i).getSequence());
+
+    TraceSpan first = events.get(1).getSpan();
+    assertEquals(0, first.getParentId());
+    assertEquals(url, first.getUri());
+    assertEquals(HTTP_OK, first.getCode());
+    assertTrue(first.getBytes() > 0);
+
+    TraceSpan page = events.get(7).getSpan();
+    TraceSpan hop = events.get(6).getSpan();
+    TraceSpan parse = events.get(5).getSpan();
+    assertEquals(0, page.getParentId());
+    assertEquals(page.getId(), hop.getParentId());
+    assertEquals(hop.getId(), parse.getParentId());
+    assertEquals(url + "/orders?page=2", page.getUri());
+    assertEquals(page.getUri(), hop.getUri());
+    assertEquals(page.getUri(), parse.getUri());
+    assertEquals(HTTP_OK, page.getCode());
+    assertEquals(HTTP_OK, hop.getCode());
+    assertTrue(parse.getBytes() > 0);
+    assertEquals(parse.getBytes(), hop.getBytes());
+    assertEquals(parse.getBytes(), page.getBytes());
+    assertTrue(page.getDurationNanos() >= hop.getDurationNanos());
+    assertTrue(hop.getDurationNanos() >= parse.getDurationNanos());
+    assertEquals(4, recorder.getEndedSpans().size());
+  }
+
+  /**
+   * Trace loading a link from an embedded resource
+   *
+   * @throws Exception
+   */
+  @Test
+  public void embeddedHop() throws Exception {
+    TraceRecorder recorder = new TraceRecorder();
+    Resource resource = new Resource(GSON_FACTORY,
+        new RequestPolicy().tracer(recorder), url);
+    recorder.clear();
+    resource.getResource("orders").load("customer");
+
+    List<TraceSpan> spans = recorder.getEndedSpans();
+    assertEquals(2, spans.size());
+    TraceSpan parse = spans.get(0);
+    TraceSpan hop = spans.get(1);
+    assertEquals(Kind.HOP, hop.getKind());
+    assertEquals("customer", hop.getRel());
+    assertEquals(url + "/customers/7809", hop.getUri());
+    assertEquals(hop.getId(), parse.getParentId());
+    assertEquals("customer", parse.getRel());
+  }
+
+  /**
+   * Trace failed hop
+   *
+   * @throws Exception
+   */
+  @Test
+  public void failedHop() throws Exception {
+    TraceRecorder recorder = new TraceRecorder();
+    Resource resource = new Resource(GSON_FACTORY,
+        new RequestPolicy().tracer(recorder));
+    resource.links.put("broken", new Link("http://localhost:1/broken", null,
+        null, null, false, null, null));
+    try {
+      resource.load("broken");
+      fail("Exception not thrown");
+    } catch (IOException expected) {
+      // Expected
+    }
+    assertNull(TraceSpan.current());
+
+    List<TraceSpan> spans = recorder.getEndedSpans();
+    assertEquals(2, spans.size());
+    assertEquals(Kind.PARSE, spans.get(0).getKind());
+    assertNotNull(spans.get(0).getError());
+    assertEquals(Kind.HOP, spans.get(1).getKind());
+    assertEquals(-1, spans.get(1).getCode());
+    assertNotNull(spans.get(1).getError());
+  }
+
+  /**
+   * Ring buffer keeps most recent events
+   */
+  @Test
+  public void ringBuffer() {
+    TraceRecorder recorder = new TraceRecorder(3);
+    assertEquals(4, recorder.getCapacity());
+    HalTracer tracer = recorder;
+    for (int i = 0; i < 5; i++)
+      TraceSpan.start(tracer, Kind.HOP, "rel" + i, "/" + i).end(HTTP_OK, null);
+    assertNull(TraceSpan.current());
+    assertEquals(10, recorder.getRecordedCount());
+    List<TraceEvent> events = recorder.getEvents();
+    assertEquals(4, events.size());
+    assertEquals(6, events.get(0).getSequence());
+    assertEvent(events.get(0), Type.START, Kind.HOP, "rel3");
+    assertEvent(events.get(3), Type.END, Kind.HOP, "rel4");
+    assertEquals(0, events.get(3).getSpan().getParentId());
+  }
+
+  /**
+   * Spans are not created without a tracer
+   */
+  @Test
+  public void noTracer() {
+    assertNull(TraceSpan.start(null, Kind.HOP, "self", "/"));
+    assertNull(TraceSpan.current());
+  }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package com.github.kevinsawicki.halligan;
+
+import static java.net.HttpURLConnection.HTTP_INTERNAL_ERROR;
+import static java.net.HttpURLConnection.HTTP_OK;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Request;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests of {@link WatchScheduler}
+ */
+public class WatchSchedulerTest extends HalServerTestCase {
+
+  private static volatile String body;
+
+  private static volatile boolean failing;
+
+  private static String page(final int total) {
+    return "{\"_links\":{\"self\":{\"href\":\"/items\"}},\"total\":" + total
+        + "}";
+  }
+
+  private final BlockingQueue<Object> events = new LinkedBlockingQueue<Object>();
+
+  private final WatchScheduler.Listener listener = new WatchScheduler.Listener() {
+
+    public void changed(Resource resource, ChangeSet changes) {
+      events.add(changes);
+    }
+
+    public void failed(Resource resource, IOException error) {
+      events.add(error);
+    }
+  };
+
+  private WatchScheduler scheduler;
+
+  /**
+   * Setup server and scheduler
+   *
+   * @throws Exception
+   */
+  @Before
+  public void setup() throws Exception {
+    body = page(1);
+    failing = false;
+    handler = new RequestHandler() {
+
+      @Override
+      public void handle(Request request, HttpServletResponse response) {
+        if (failing) {
+          response.setStatus(HTTP_INTERNAL_ERROR);
+          return;
+        }
+        write(body);
+        response.setStatus(HTTP_OK);
+      }
+    };
+    scheduler = new WatchScheduler(5, TimeUnit.MILLISECONDS, 16, 2)
+        .interval(20, 80, TimeUnit.MILLISECONDS).backoff(2).jitter(0);
+  }
+
+  /**
+   * Close scheduler
+   */
+  @After
+  public void close() {
+    scheduler.close();
+  }
+
+  private static void awaitPolls(final WatchScheduler.Watch watch,
+      final long polls) throws InterruptedException {
+    long end = System.currentTimeMillis() + 5000;
+    while (watch.getPollCount() < polls && System.currentTimeMillis() < end)
+      Thread.sleep(5);
+    assertTrue(watch.getPollCount() >= polls);
+  }
+
+  /**
+   * Polls without changes back off and don't notify
+   *
+   * @throws Exception
+   */
+  @Test
+  public void backoffWithoutChanges() throws Exception {
+    WatchScheduler.Watch watch = scheduler.watch(new Resource(url), listener);
+    awaitPolls(watch, 4);
+    assertEquals(80, watch.getInterval(TimeUnit.MILLISECONDS));
+    assertTrue(events.isEmpty());
+  }
+
+  /**
+   * Changes notify listener and reset interval
+   *
+   * @throws Exception
+   */
+  @Test
+  public void changeNotifies() throws Exception {
+    Resource resource = new Resource(url);
+    WatchScheduler.Watch watch = scheduler.watch(resource, listener);
+    assertEquals(1, watch.getSnapshot().getInt("total"));
+    awaitPolls(watch, 3);
+    body = page(2);
+    Object event = events.poll(5, TimeUnit.SECONDS);
+    assertTrue(event instanceof ChangeSet);
+    assertEquals(1, ((ChangeSet) event).getModified().size());
+    assertEquals(2, watch.getSnapshot().getInt("total"));
+    long polls = watch.getPollCount();
+    awaitPolls(watch, polls + 1);
+    assertTrue(watch.getInterval(TimeUnit.MILLISECONDS) <= 40);
+  }
+
+  /**
+   * Failed polls notify listener
+   *
+   * @throws Exception
+   */
+  @Test
+  public void failureNotifies() throws Exception {
+    Resource resource = new Resource(url);
+    failing = true;
+    scheduler.watch(resource, listener);
+    assertTrue(events.poll(5, TimeUnit.SECONDS) instanceof IOException);
+  }
+
+  /**
+   * Cancelled watches stop polling
+   *
+   * @throws Exception
+   */
+  @Test
+  public void cancel() throws Exception {
+    WatchScheduler.Watch watch = scheduler.watch(new Resource(url), listener);
+    awaitPolls(watch, 1);
+    watch.cancel();
+    Thread.sleep(50);
+    long polls = watch.getPollCount();
+    Thread.sleep(200);
+    assertEquals(polls, watch.getPollCount());
+    assertTrue(watch.isCancelled());
+  }
+}